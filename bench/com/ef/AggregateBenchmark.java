@@ -0,0 +1,117 @@
+package com.ef;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * In-memory threshold counting over already parsed entries, time per whole set of entries. hashMap is the baseline of
+ * counting IP Strings in a HashMap, heavyHitterCounter includes its exact verification pass.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AggregateBenchmark
+{
+
+    @Param({"100000"})
+    public int lines;
+
+    @Param({"100", "10000"})
+    public int ipCardinality;
+
+    @Param({"1.0"})
+    public double skew;
+
+    private ParserModel parser;
+    private LocalDateTime startDate;
+    private LogEntryBatch batch;
+    private List<LogEntry> entries;
+    private List<ThresholdWindow> windows;
+
+    @Setup
+    public void setUp()
+    {
+        List<String> logLines = new SyntheticLogGenerator()
+            .lines(lines)
+            .ipCardinality(ipCardinality)
+            .skew(skew)
+            .generateLines();
+
+        parser = new ParserModel();
+        ParserModel.LineParser lineParser = parser.newLineParser();
+
+        batch = new LogEntryBatch(lines);
+        for (String line : logLines) {
+            lineParser.parse(line, batch);
+        }
+        entries = new ArrayList<>(batch);
+
+        startDate = LocalDateTime.parse("2017-01-01T00:00:00");
+        windows = ThresholdWindow.every(startDate, startDate.plusDays(1), Duration.HOURLY, 100);
+    }
+
+    @Benchmark
+    public IpCountMap thresholdCounterBatch()
+    {
+        ThresholdCounter counter = parser.newThresholdCounter(startDate, Duration.DAILY, 100);
+        counter.handle(batch);
+
+        return counter.getAboveThresholdIPCounts();
+    }
+
+    @Benchmark
+    public IpCountMap thresholdCounterEntries()
+    {
+        ThresholdCounter counter = parser.newThresholdCounter(startDate, Duration.DAILY, 100);
+        counter.handle(entries);
+
+        return counter.getAboveThresholdIPCounts();
+    }
+
+    @Benchmark
+    public IpCountMap heavyHitterCounter()
+    {
+        HeavyHitterCounter counter = parser.newHeavyHitterCounter(
+            startDate, Duration.DAILY, 100, Config.HEAVY_HITTER_CAPACITY, Config.SKETCH_EPSILON
+        );
+        counter.handle(batch);
+
+        HeavyHitterCounter.Verifier verifier = counter.newVerifier();
+        verifier.handle(batch);
+
+        return verifier.getAboveThresholdIPCounts();
+    }
+
+    @Benchmark
+    public Map<ThresholdWindow, IpCountMap> multiWindowCounter()
+    {
+        MultiWindowCounter counter = parser.newMultiWindowCounter(windows);
+        counter.handle(batch);
+
+        return counter.getAboveThresholdIPCounts();
+    }
+
+    @Benchmark
+    public Map<String, Integer> hashMap()
+    {
+        Map<String, Integer> counts = new HashMap<>();
+        for (LogEntry item : entries) {
+            counts.merge(item.ip, 1, Integer::sum);
+        }
+        counts.values().removeIf(cnt -> cnt <= 100);
+
+        return counts;
+    }
+}
@@ -0,0 +1,129 @@
+package com.ef;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing throughput. Line benchmarks report lines/sec of single-line parsing, file benchmarks report time to parse
+ * a whole generated file with each reader. Run with "-prof gc" (default of ant bench) to see allocation per line:
+ * gc.alloc.rate.norm of a line benchmark is bytes allocated per parsed line.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ParseBenchmark
+{
+
+    @Param({"100000"})
+    public int lines;
+
+    @Param({"1000"})
+    public int ipCardinality;
+
+    @Param({"1.0"})
+    public double skew;
+
+    private ParserModel parser;
+    private ParserModel.LineParser lineParser;
+    private String[] logLines;
+    private LogEntryBatch batch;
+    private File logFile;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp()
+        throws IOException
+    {
+        SyntheticLogGenerator generator = new SyntheticLogGenerator()
+            .lines(lines)
+            .ipCardinality(ipCardinality)
+            .skew(skew);
+
+        List<String> list = generator.generateLines();
+        logLines = list.toArray(new String[0]);
+
+        logFile = File.createTempFile("bench", ".log");
+        logFile.deleteOnExit();
+        generator.write(logFile.toPath());
+
+        // no database is touched, default pool connects lazily
+        parser = new ParserModel();
+        lineParser = parser.newLineParser();
+        batch = new LogEntryBatch(ParserModel.DEFAULT_CHUNK_SIZE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+        throws IOException
+    {
+        Files.deleteIfExists(logFile.toPath());
+    }
+
+    @Benchmark
+    public LogEntry parseLine()
+    {
+        return parser.parseLine(nextLine());
+    }
+
+    @Benchmark
+    public int parseLineIntoBatch()
+    {
+        if (batch.size() == ParserModel.DEFAULT_CHUNK_SIZE) {
+            batch = new LogEntryBatch(ParserModel.DEFAULT_CHUNK_SIZE);
+        }
+        lineParser.parse(nextLine(), batch);
+
+        return batch.size();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void parseFileStream(Blackhole blackhole)
+        throws SQLException
+    {
+        parser.parse(logFile.getAbsolutePath(), ParserModel.DEFAULT_CHUNK_SIZE, blackhole::consume);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void parseFileMapped(Blackhole blackhole)
+        throws SQLException
+    {
+        parser.parseMapped(logFile.getAbsolutePath(), ParserModel.DEFAULT_CHUNK_SIZE, blackhole::consume);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void parseFileParallel(Blackhole blackhole)
+        throws SQLException
+    {
+        int threads = Runtime.getRuntime().availableProcessors();
+        parser.parse(logFile.getAbsolutePath(), ParserModel.DEFAULT_CHUNK_SIZE, threads, true, blackhole::consume);
+    }
+
+    private String nextLine()
+    {
+        String line = logLines[next];
+        next = next + 1 == logLines.length ? 0 : next + 1;
+
+        return line;
+    }
+}
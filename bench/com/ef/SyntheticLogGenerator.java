@@ -0,0 +1,293 @@
+package com.ef;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates access log files of given size and shape for benchmarks, in the same format as real log files.
+ * IPs and user agents are drawn from fixed-size pools with Zipf-like skew, so that a few bots make most requests the
+ * way they do in real traffic. Output is fully determined by the settings and seed.
+ *
+ * Run from Ant: ant generate-log -Dgenerate.args="--lines=1000000 --out=/tmp/access.log"
+ */
+public class SyntheticLogGenerator
+{
+
+    private static final String[] REQUESTS = new String[]{
+        "GET / HTTP/1.1", "POST / HTTP/1.1", "GET /index.html HTTP/1.1", "GET /favicon.ico HTTP/1.1",
+        "GET /api/items?page=2 HTTP/1.1", "POST /api/login HTTP/1.1"
+    };
+    private static final int[] STATUSES = new int[]{200, 200, 200, 200, 301, 304, 404, 500};
+
+    private int lines = 100_000;
+    private int ipCardinality = 1_000;
+    private int userAgentCardinality = 100;
+    private double skew = 1.0;
+    private long seed = 42;
+    private LocalDateTime startDate = LocalDateTime.parse("2017-01-01T00:00:00");
+    private long spanMillis = 24 * 3600 * 1000L;
+
+    /**
+     * @param lines Number of lines to generate
+     * @return This generator
+     */
+    public SyntheticLogGenerator lines(int lines)
+    {
+        this.lines = requirePositive(lines, "Number of lines");
+        return this;
+    }
+
+    /**
+     * @param ipCardinality Number of distinct IPs
+     * @return This generator
+     */
+    public SyntheticLogGenerator ipCardinality(int ipCardinality)
+    {
+        this.ipCardinality = requirePositive(ipCardinality, "IP cardinality");
+        return this;
+    }
+
+    /**
+     * @param userAgentCardinality Number of distinct user agents
+     * @return This generator
+     */
+    public SyntheticLogGenerator userAgentCardinality(int userAgentCardinality)
+    {
+        this.userAgentCardinality = requirePositive(userAgentCardinality, "User agent cardinality");
+        return this;
+    }
+
+    /**
+     * @param skew Zipf exponent of IP and user agent popularity, 0 for uniform distribution
+     * @return This generator
+     */
+    public SyntheticLogGenerator skew(double skew)
+    {
+        if (skew < 0) {
+            throw new IllegalArgumentException("Skew must not be negative, actual: " + skew);
+        }
+
+        this.skew = skew;
+        return this;
+    }
+
+    /**
+     * @param seed Random seed
+     * @return This generator
+     */
+    public SyntheticLogGenerator seed(long seed)
+    {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * @param startDate Date of the first line
+     * @param spanMillis Time between the first and the last line
+     * @return This generator
+     */
+    public SyntheticLogGenerator dates(LocalDateTime startDate, long spanMillis)
+    {
+        this.startDate = startDate;
+        this.spanMillis = spanMillis;
+        return this;
+    }
+
+    /**
+     * Generate lines in memory
+     *
+     * @return Log file lines in date order, without line breaks
+     */
+    public List<String> generateLines()
+    {
+        List<String> list = new ArrayList<>(lines);
+        generate(list::add);
+
+        return list;
+    }
+
+    /**
+     * Generate log file
+     *
+     * @param path File to write, replaced if exists
+     * @throws IOException If file can not be written
+     */
+    public void write(Path path)
+        throws IOException
+    {
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            IOException[] error = new IOException[1];
+            generate(line -> {
+                if (error[0] != null) {
+                    return;
+                }
+                try {
+                    out.write(line);
+                    out.write('\n');
+                } catch (IOException e) {
+                    error[0] = e;
+                }
+            });
+            if (error[0] != null) {
+                throw error[0];
+            }
+        }
+    }
+
+    private void generate(LineConsumer consumer)
+    {
+        Random random = new Random(seed);
+        ZipfSampler ips = new ZipfSampler(ipCardinality, skew);
+        ZipfSampler userAgents = new ZipfSampler(userAgentCardinality, skew);
+        long start = TimestampParser.toEpochMillis(startDate);
+
+        StringBuilder sb = new StringBuilder(256);
+        for (int i = 0; i < lines; i++) {
+            long millis = start + (lines == 1 ? 0 : spanMillis * i / (lines - 1));
+
+            sb.setLength(0);
+            sb.append(LogEntry.formatter.format(TimestampParser.toLocalDateTime(millis))).append('|');
+            appendIp(sb, ips.next(random));
+            sb.append("|\"").append(REQUESTS[random.nextInt(REQUESTS.length)]).append("\"|");
+            sb.append(STATUSES[random.nextInt(STATUSES.length)]).append("|\"");
+            appendUserAgent(sb, userAgents.next(random));
+            sb.append('"');
+
+            consumer.accept(sb.toString());
+        }
+    }
+
+    /**
+     * Append IP of given rank, every tenth one is IPv6
+     */
+    private static void appendIp(StringBuilder sb, int rank)
+    {
+        if (rank % 10 == 9) {
+            sb.append("2001:db8::").append(Integer.toHexString(rank));
+            return;
+        }
+
+        sb.append("10.").append(rank >>> 16 & 0xFF).append('.').append(rank >>> 8 & 0xFF).append('.').append(rank & 0xFF);
+    }
+
+    private static void appendUserAgent(StringBuilder sb, int rank)
+    {
+        sb.append("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/60.0.")
+            .append(rank)
+            .append(" Safari/537.36");
+    }
+
+    private static int requirePositive(int value, String name)
+    {
+        if (value < 1) {
+            throw new IllegalArgumentException(name + " must be positive, actual: " + value);
+        }
+
+        return value;
+    }
+
+    @FunctionalInterface
+    private interface LineConsumer
+    {
+
+        void accept(String line);
+    }
+
+    /**
+     * Draws ranks 0..n-1 with probability proportional to 1 / (rank + 1)^skew
+     */
+    private static final class ZipfSampler
+    {
+
+        private final double[] cumulative;
+
+        ZipfSampler(int n, double skew)
+        {
+            cumulative = new double[n];
+            double sum = 0;
+            for (int rank = 0; rank < n; rank++) {
+                sum += 1 / Math.pow(rank + 1, skew);
+                cumulative[rank] = sum;
+            }
+            for (int rank = 0; rank < n; rank++) {
+                cumulative[rank] /= sum;
+            }
+        }
+
+        int next(Random random)
+        {
+            double value = random.nextDouble();
+            int low = 0;
+            int high = cumulative.length - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (cumulative[mid] < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+
+            return low;
+        }
+    }
+
+    /**
+     * Write a log file, e.g. --lines=1000000 --ips=5000 --agents=200 --skew=1.1 --seed=7 --out=/tmp/access.log
+     *
+     * @param args Command-line arguments
+     * @throws IOException If file can not be written
+     */
+    public static void main(String[] args)
+        throws IOException
+    {
+        SyntheticLogGenerator generator = new SyntheticLogGenerator();
+        Path out = null;
+
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Expected --name=value argument, actual: " + arg);
+            }
+
+            String name = arg.substring(2, eq);
+            String value = arg.substring(eq + 1);
+            switch (name) {
+                case "lines":
+                    generator.lines(Integer.parseInt(value));
+                    break;
+                case "ips":
+                    generator.ipCardinality(Integer.parseInt(value));
+                    break;
+                case "agents":
+                    generator.userAgentCardinality(Integer.parseInt(value));
+                    break;
+                case "skew":
+                    generator.skew(Double.parseDouble(value));
+                    break;
+                case "seed":
+                    generator.seed(Long.parseLong(value));
+                    break;
+                case "out":
+                    out = Paths.get(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument: " + name);
+            }
+        }
+
+        if (out == null) {
+            throw new IllegalArgumentException("Output file is required, e.g. --out=/tmp/access.log");
+        }
+
+        generator.write(out);
+    }
+}
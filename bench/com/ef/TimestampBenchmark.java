@@ -0,0 +1,67 @@
+package com.ef;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Timestamp parsing throughput, timestamps/sec. dateTimeFormatter is the baseline LogEntry.setDate() used to have.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TimestampBenchmark
+{
+
+    private static final int TIMESTAMPS = 10_000;
+
+    private String[] timestamps;
+    private int next;
+
+    @Setup
+    public void setUp()
+    {
+        List<String> lines = new SyntheticLogGenerator().lines(TIMESTAMPS).generateLines();
+
+        timestamps = new String[TIMESTAMPS];
+        for (int i = 0; i < TIMESTAMPS; i++) {
+            timestamps[i] = lines.get(i).substring(0, lines.get(i).indexOf('|'));
+        }
+    }
+
+    @Benchmark
+    public LocalDateTime dateTimeFormatter()
+    {
+        return LocalDateTime.parse(nextTimestamp(), LogEntry.formatter);
+    }
+
+    @Benchmark
+    public LogEntry setDate()
+    {
+        LogEntry item = new LogEntry();
+        item.setDate(nextTimestamp());
+
+        return item;
+    }
+
+    @Benchmark
+    public long parseEpochMillis()
+    {
+        return TimestampParser.parseEpochMillis(nextTimestamp());
+    }
+
+    private String nextTimestamp()
+    {
+        String timestamp = timestamps[next];
+        next = next + 1 == timestamps.length ? 0 : next + 1;
+
+        return timestamp;
+    }
+}
@@ -0,0 +1,223 @@
+package com.ef;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import javax.sql.DataSource;
+
+/**
+ * Inserts LogEntry items to ip_activity_logs in JDBC batches of fixed size, committing every commitInterval items.
+ * Holds a single connection until closed, so any number of chunks can be written without holding them in memory,
+ * and a failure only loses items written since the last commit.
+ * With rewriteBatchedStatements=true in JDBC URL (see Config) each batch is sent as a multi-row INSERT.
+ * Per-minute counts of written items are added to ip_activity_counts rollup table right before each commit.
+ */
+public class BatchLogEntryWriter implements LogEntrySink
+{
+
+    private final Connection conn;
+    private final PreparedStatement ps;
+    private final int batchSize;
+    private final int commitInterval;
+    private final MinuteRollup rollup = new MinuteRollup();
+    private final ParserMetrics metrics;
+
+    /**
+     * Scratch buffer for parsing IPs of LogEntry items
+     */
+    private final long[] parsed = new long[2];
+
+    private int batched;
+    private int uncommitted;
+    private long committed;
+    private boolean failed;
+
+    /**
+     * @param dataSource Source of database connection
+     * @param batchSize Number of items sent to database at once
+     * @param commitInterval Number of items after which transaction is committed
+     * @throws SQLException
+     */
+    public BatchLogEntryWriter(DataSource dataSource, int batchSize, int commitInterval)
+        throws SQLException
+    {
+        this(dataSource, batchSize, commitInterval, ParserMetrics.getDefault());
+    }
+
+    /**
+     * @param dataSource Source of database connection
+     * @param batchSize Number of items sent to database at once
+     * @param commitInterval Number of items after which transaction is committed
+     * @param metrics Metrics batches and commits are recorded in
+     * @throws SQLException
+     */
+    public BatchLogEntryWriter(DataSource dataSource, int batchSize, int commitInterval, ParserMetrics metrics)
+        throws SQLException
+    {
+        if (batchSize < 1 || commitInterval < 1) {
+            throw new IllegalArgumentException(
+                "Batch size and commit interval must be positive, actual: " + batchSize + ", " + commitInterval
+            );
+        }
+
+        this.batchSize = batchSize;
+        this.commitInterval = commitInterval;
+        this.metrics = metrics;
+
+        conn = dataSource.getConnection();
+        try {
+            conn.setAutoCommit(false);
+            ps = conn.prepareStatement(
+                "INSERT INTO ip_activity_logs (date, ip, request, status, user_agent) VALUES (?, ?, ?, ?, ?)"
+            );
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void handle(List<LogEntry> entries)
+        throws SQLException
+    {
+        if (failed) {
+            throw new IllegalStateException("Writer has failed before.");
+        }
+
+        // stays set if anything below throws, so that close() does not commit a partial chunk
+        failed = true;
+        try {
+            if (entries instanceof LogEntryBatch) {
+                // columns are read directly, without creating a LogEntry view of each row
+                LogEntryBatch batch = (LogEntryBatch) entries;
+                for (int i = 0; i < batch.size(); i++) {
+                    addRow(
+                        batch.getEpochMillis(i), batch.getIpHigh(i), batch.getIpLow(i), batch.getRequest(i),
+                        batch.getStatus(i), batch.getUserAgent(i)
+                    );
+                }
+            } else {
+                for (LogEntry item : entries) {
+                    // binary form of IpAddress, the same as rollup counts, also for IPv4-mapped IPv6 text
+                    IpAddress.parse(item.ip, parsed);
+                    addRow(
+                        TimestampParser.toEpochMillis(item.date), parsed[0], parsed[1], item.request,
+                        item.getStatus(), item.userAgent
+                    );
+                }
+            }
+            failed = false;
+        } catch (SQLException e) {
+            throw new SQLException(
+                "Unable to insert list of LogEntry items to database. " + committed + " items were committed before.", e
+            );
+        }
+    }
+
+    /**
+     * Get number of items committed so far
+     *
+     * @return Committed items count
+     */
+    public long getCommittedCount()
+    {
+        return committed;
+    }
+
+    /**
+     * Insert and commit pending items, unless writing has failed before, then release connection
+     *
+     * @throws SQLException
+     */
+    @Override
+    public void close()
+        throws SQLException
+    {
+        try {
+            if (!failed) {
+                executeBatch();
+                commit();
+            }
+        } catch (SQLException e) {
+            throw new SQLException(
+                "Unable to insert list of LogEntry items to database. " + committed + " items were committed before.", e
+            );
+        } finally {
+            try {
+                ps.close();
+            } finally {
+                // returning connection to pool rolls back anything uncommitted
+                conn.close();
+            }
+        }
+    }
+
+    /**
+     * Release connection, rolling back items written since the last commit
+     *
+     * @throws SQLException
+     */
+    @Override
+    public void abort()
+        throws SQLException
+    {
+        failed = true;
+        close();
+    }
+
+    /**
+     * Add a row to the current batch, sending the batch once it is full
+     *
+     * @param epochMillis Request date as milliseconds since epoch (UTC)
+     * @param ipHigh Upper 64 bits of IP address
+     * @param ipLow Lower 64 bits of IP address
+     * @param request Request
+     * @param status HTTP status
+     * @param userAgent User agent
+     * @throws SQLException
+     */
+    private void addRow(long epochMillis, long ipHigh, long ipLow, String request, int status, String userAgent)
+        throws SQLException
+    {
+        ps.setObject(1, TimestampParser.format(epochMillis));
+        ps.setBytes(2, IpAddress.toBytes(ipHigh, ipLow));
+        ps.setString(3, request);
+        ps.setInt(4, status);
+        ps.setString(5, userAgent);
+
+        ps.addBatch();
+        rollup.add(epochMillis, ipHigh, ipLow);
+
+        if (++batched == batchSize) {
+            executeBatch();
+            if (uncommitted >= commitInterval) {
+                commit();
+            }
+        }
+    }
+
+    private void executeBatch()
+        throws SQLException
+    {
+        if (batched > 0) {
+            long start = System.nanoTime();
+            ps.executeBatch();
+            metrics.recordBatchInsert(System.nanoTime() - start);
+            uncommitted += batched;
+            batched = 0;
+        }
+    }
+
+    private void commit()
+        throws SQLException
+    {
+        long start = System.nanoTime();
+        rollup.write(conn, batchSize);
+        conn.commit();
+        metrics.recordCommit(System.nanoTime() - start);
+        committed += uncommitted;
+        metrics.addRowsCommitted(uncommitted);
+        uncommitted = 0;
+    }
+}
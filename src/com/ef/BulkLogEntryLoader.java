@@ -0,0 +1,343 @@
+package com.ef;
+
+import com.mysql.cj.jdbc.JdbcStatement;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import javax.sql.DataSource;
+
+/**
+ * Loads LogEntry items to ip_activity_logs with MySQL native bulk loader (LOAD DATA LOCAL INFILE), which is much
+ * faster than INSERT batches for large imports. Items are serialized as tab-separated rows into an in-memory stream
+ * that is handed to Connector/J instead of a local file. Every batchSize rows are loaded with a LOAD DATA statement,
+ * so memory use does not depend on commit interval, and every commitInterval items are committed at once.
+ * Holds a single connection from the first load until closed.
+ *
+ * Per-minute counts of loaded items are added to ip_activity_counts rollup table in the same transaction.
+ *
+ * Requires allowLoadLocalInfile=true in JDBC URL of given data source (see Config.BULK_LOAD_JDBC_URL) and
+ * local_infile enabled on the server.
+ */
+public class BulkLogEntryLoader implements LogEntrySink
+{
+
+    private static final String LOAD_QUERY
+        = "LOAD DATA LOCAL INFILE 'ip_activity_logs.tsv'"
+        + " INTO TABLE ip_activity_logs"
+        + " CHARACTER SET utf8"
+        + " FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\'"
+        + " LINES TERMINATED BY '\\n'"
+        + " (date, @ip, request, status, user_agent)"
+        + " SET ip = INET6_ATON(@ip)";
+
+    private final DataSource dataSource;
+    private final int batchSize;
+    private final int commitInterval;
+    private final MinuteRollup rollup = new MinuteRollup();
+    private final ParserMetrics metrics;
+
+    private final RowBuffer buffer = new RowBuffer();
+    private final Writer writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
+    private Connection conn;
+    private int buffered;
+    private int uncommitted;
+    private long committed;
+    private boolean failed;
+
+    /**
+     * @param dataSource Source of database connection, allowing LOAD DATA LOCAL INFILE
+     * @param batchSize Number of rows sent to database at once, by a LOAD DATA statement or as rollup rows batch
+     * @param commitInterval Number of items after which transaction is committed
+     */
+    public BulkLogEntryLoader(DataSource dataSource, int batchSize, int commitInterval)
+    {
+        this(dataSource, batchSize, commitInterval, ParserMetrics.getDefault());
+    }
+
+    /**
+     * @param dataSource Source of database connection, allowing LOAD DATA LOCAL INFILE
+     * @param batchSize Number of rows sent to database at once, by a LOAD DATA statement or as rollup rows batch
+     * @param commitInterval Number of items after which transaction is committed
+     * @param metrics Metrics LOAD DATA statements and commits are recorded in
+     */
+    public BulkLogEntryLoader(DataSource dataSource, int batchSize, int commitInterval, ParserMetrics metrics)
+    {
+        if (batchSize < 1 || commitInterval < 1) {
+            throw new IllegalArgumentException(
+                "Batch size and commit interval must be positive, actual: " + batchSize + ", " + commitInterval
+            );
+        }
+
+        this.dataSource = dataSource;
+        this.batchSize = batchSize;
+        this.commitInterval = commitInterval;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void handle(List<LogEntry> entries)
+        throws SQLException
+    {
+        if (failed) {
+            throw new IllegalStateException("Loader has failed before.");
+        }
+
+        // stays set if anything below throws, so that close() does not commit a partial chunk
+        failed = true;
+        try {
+            if (entries instanceof LogEntryBatch) {
+                // columns are read directly, without creating a LogEntry view of each row
+                LogEntryBatch batch = (LogEntryBatch) entries;
+                for (int i = 0; i < batch.size(); i++) {
+                    writeRow(writer, batch, i);
+                    rollup.add(batch.getEpochMillis(i), batch.getIpHigh(i), batch.getIpLow(i));
+                    rowWritten();
+                }
+            } else {
+                for (LogEntry item : entries) {
+                    writeRow(writer, item);
+                    rollup.add(item);
+                    rowWritten();
+                }
+            }
+            failed = false;
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to serialize LogEntry items.", e);
+        } catch (SQLException e) {
+            throw new SQLException(
+                "Unable to bulk load list of LogEntry items to database. "
+                + committed + " items were committed before.", e
+            );
+        }
+    }
+
+    /**
+     * Get number of items committed so far
+     *
+     * @return Committed items count
+     */
+    public long getCommittedCount()
+    {
+        return committed;
+    }
+
+    /**
+     * Load and commit pending items, unless loading has failed before, then release connection
+     *
+     * @throws SQLException
+     */
+    @Override
+    public void close()
+        throws SQLException
+    {
+        try {
+            if (!failed) {
+                load();
+                commit();
+            }
+        } catch (SQLException e) {
+            throw new SQLException(
+                "Unable to bulk load list of LogEntry items to database. "
+                + committed + " items were committed before.", e
+            );
+        } finally {
+            failed = true;
+            buffered = 0;
+            buffer.reset();
+            if (conn != null) {
+                // returning connection to pool rolls back anything uncommitted
+                conn.close();
+                conn = null;
+            }
+        }
+    }
+
+    /**
+     * Release connection, rolling back items loaded since the last commit
+     *
+     * @throws SQLException
+     */
+    @Override
+    public void abort()
+        throws SQLException
+    {
+        failed = true;
+        close();
+    }
+
+    /**
+     * Load buffered rows once there are batchSize of them, committing every commitInterval items
+     *
+     * @throws SQLException
+     */
+    private void rowWritten()
+        throws SQLException
+    {
+        if (++buffered == batchSize) {
+            load();
+            if (uncommitted >= commitInterval) {
+                commit();
+            }
+        }
+    }
+
+    /**
+     * Load buffered rows with a single LOAD DATA statement, within the current transaction
+     *
+     * @throws SQLException
+     */
+    private void load()
+        throws SQLException
+    {
+        if (buffered == 0) {
+            return;
+        }
+
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to serialize LogEntry items.", e);
+        }
+
+        if (conn == null) {
+            conn = dataSource.getConnection();
+            conn.setAutoCommit(false);
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.unwrap(JdbcStatement.class).setLocalInfileInputStream(buffer.toInputStream());
+            long start = System.nanoTime();
+            stmt.execute(LOAD_QUERY);
+            metrics.recordBatchInsert(System.nanoTime() - start);
+        }
+
+        uncommitted += buffered;
+        buffered = 0;
+        buffer.reset();
+    }
+
+    private void commit()
+        throws SQLException
+    {
+        if (conn == null) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        rollup.write(conn, batchSize);
+        conn.commit();
+        metrics.recordCommit(System.nanoTime() - start);
+        committed += uncommitted;
+        metrics.addRowsCommitted(uncommitted);
+        uncommitted = 0;
+    }
+
+    /**
+     * Write given item as a tab-separated row, in the order of LOAD_QUERY columns
+     *
+     * @param out Writer to write row to
+     * @param item Item to write
+     * @throws IOException
+     */
+    static void writeRow(Writer out, LogEntry item)
+        throws IOException
+    {
+        out.write(item.getFormattedDate());
+        out.write('\t');
+        // text of IpAddress, so that INET6_ATON() stores IPv4-mapped IPv6 text as IPv4, the same as rollup counts it
+        writeField(out, IpAddress.parse(item.ip).toString());
+        out.write('\t');
+        writeField(out, item.request);
+        out.write('\t');
+        out.write(Integer.toString(item.getStatus()));
+        out.write('\t');
+        writeField(out, item.userAgent);
+        out.write('\n');
+    }
+
+    /**
+     * Write given row of batch as a tab-separated row, the same as writeRow() of its LogEntry view
+     *
+     * @param out Writer to write row to
+     * @param batch Batch holding the row
+     * @param index Row index
+     * @throws IOException
+     */
+    static void writeRow(Writer out, LogEntryBatch batch, int index)
+        throws IOException
+    {
+        out.write(TimestampParser.format(batch.getEpochMillis(index)));
+        out.write('\t');
+        out.write(IpAddress.toString(batch.getIpHigh(index), batch.getIpLow(index)));
+        out.write('\t');
+        writeField(out, batch.getRequest(index));
+        out.write('\t');
+        out.write(Integer.toString(batch.getStatus(index)));
+        out.write('\t');
+        writeField(out, batch.getUserAgent(index));
+        out.write('\n');
+    }
+
+    /**
+     * Write field value escaping chars having special meaning for LOAD DATA
+     *
+     * @param out Writer to write value to
+     * @param value Field value, null is written as \N
+     * @throws IOException
+     */
+    private static void writeField(Writer out, String value)
+        throws IOException
+    {
+        if (value == null) {
+            out.write("\\N");
+            return;
+        }
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\0':
+                    out.write("\\0");
+                    break;
+                default:
+                    out.write(c);
+            }
+        }
+    }
+
+    /**
+     * Buffer of serialized rows, read by LOAD DATA without copying
+     */
+    private static class RowBuffer extends ByteArrayOutputStream
+    {
+
+        RowBuffer()
+        {
+            super(64 * 1024);
+        }
+
+        InputStream toInputStream()
+        {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.ef;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable CharSequence view of a line stored as bytes, e.g. in a memory-mapped log file.
+ * charAt() returns raw byte values, which is enough to find ASCII delimiters, quotes and digits (UTF-8 multi-byte
+ * sequences never contain ASCII bytes). subSequence() decodes given part as UTF-8, so Strings are only created for
+ * fields that are actually kept.
+ */
+public final class ByteSequence implements CharSequence
+{
+
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Point this sequence to given part of buffer
+     *
+     * @param buffer Buffer holding line bytes
+     * @param offset Index of the first byte of line
+     * @param length Number of bytes in line
+     * @return This sequence
+     */
+    public ByteSequence reset(ByteBuffer buffer, int offset, int length)
+    {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+
+        return this;
+    }
+
+    @Override
+    public int length()
+    {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index)
+    {
+        return (char) (buffer.get(offset + index) & 0xFF);
+    }
+
+    /**
+     * Find index of given ASCII char
+     *
+     * @param c Char to look for
+     * @param from Index to start looking from
+     * @return Index of char or -1 if not found
+     */
+    public int indexOf(char c, int from)
+    {
+        for (int i = from; i < length; i++) {
+            if (buffer.get(offset + i) == c) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Decode given part of this sequence
+     *
+     * @param start Start index, inclusive
+     * @param end End index, exclusive
+     * @return String holding decoded part of this sequence
+     */
+    @Override
+    public String subSequence(int start, int end)
+    {
+        int len = end - start;
+        if (scratch.length < len) {
+            scratch = new byte[Math.max(len, scratch.length * 2)];
+        }
+
+        for (int i = 0; i < len; i++) {
+            scratch[i] = buffer.get(offset + start + i);
+        }
+
+        return new String(scratch, 0, len, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString()
+    {
+        return subSequence(0, length);
+    }
+}
@@ -0,0 +1,133 @@
+package com.ef;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+
+/**
+ * Reads LogEntry items back from a columnar file written by ColumnarLogWriter. Each block becomes a LogEntryBatch
+ * chunk passed to handler, so memory is bounded by the chunk size the file was written with.
+ *
+ * IPs are read back in their canonical text form, e.g. IPv6 addresses are compressed.
+ */
+public class ColumnarLogReader
+{
+
+    /**
+     * Read given columnar file and feed LogEntry items to given handler, one block at a time
+     *
+     * @param path Columnar file written by ColumnarLogWriter
+     * @param handler Receives chunks of LogEntry items in the order they were written
+     * @throws IOException If file can not be read or is not a columnar log file
+     * @throws SQLException If handler fails to process a chunk
+     */
+    public void read(Path path, LogEntryHandler handler)
+        throws IOException, SQLException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 64 * 1024))) {
+            if (in.readInt() != ColumnarLogWriter.MAGIC) {
+                throw new IOException("File (" + path + ") is not a columnar log file.");
+            }
+            int version = in.readInt();
+            if (version != ColumnarLogWriter.VERSION) {
+                throw new IOException("Unsupported columnar log file version: " + version);
+            }
+
+            int rowCount;
+            while ((rowCount = readRowCount(in)) >= 0) {
+                handler.handle(readBlock(in, rowCount));
+            }
+        }
+    }
+
+    /**
+     * Read row count of the next block
+     *
+     * @param in File stream
+     * @return Row count or -1 at the end of file
+     * @throws IOException
+     */
+    private static int readRowCount(DataInputStream in)
+        throws IOException
+    {
+        int b = in.read();
+        if (b < 0) {
+            return -1;
+        }
+
+        int rowCount = (b << 24) | (in.readUnsignedByte() << 16) | (in.readUnsignedByte() << 8) | in.readUnsignedByte();
+        if (rowCount < 0) {
+            throw new IOException("Columnar log file is corrupted.");
+        }
+
+        return rowCount;
+    }
+
+    private static LogEntryBatch readBlock(DataInputStream in, int rowCount)
+        throws IOException
+    {
+        long[] epochMillis = new long[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            epochMillis[i] = in.readLong();
+        }
+
+        long[] ipHighs = new long[rowCount];
+        long[] ipLows = new long[rowCount];
+        byte[] ipv4 = new byte[4];
+        byte[] ipv6 = new byte[16];
+        for (int i = 0; i < rowCount; i++) {
+            int length = in.readUnsignedByte();
+            byte[] bytes = length == 4 ? ipv4 : length == 16 ? ipv6 : null;
+            if (bytes == null) {
+                throw new IOException("Columnar log file is corrupted.");
+            }
+            in.readFully(bytes);
+
+            IpAddress ip = IpAddress.fromBytes(bytes);
+            ipHighs[i] = ip.high;
+            ipLows[i] = ip.low;
+        }
+
+        String[] requests = readDictionaryColumn(in, rowCount);
+
+        short[] statuses = new short[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            statuses[i] = in.readShort();
+        }
+
+        String[] userAgents = readDictionaryColumn(in, rowCount);
+
+        LogEntryBatch batch = new LogEntryBatch(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            batch.add(epochMillis[i], ipHighs[i], ipLows[i], requests[i], statuses[i], userAgents[i]);
+        }
+
+        return batch;
+    }
+
+    private static String[] readDictionaryColumn(DataInputStream in, int rowCount)
+        throws IOException
+    {
+        String[] dictionary = new String[in.readInt()];
+        for (int i = 0; i < dictionary.length; i++) {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        String[] values = new String[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            int index = in.readInt();
+            if (index >= dictionary.length || index < -1) {
+                throw new IOException("Columnar log file is corrupted.");
+            }
+            values[i] = index < 0 ? null : dictionary[index];
+        }
+
+        return values;
+    }
+}
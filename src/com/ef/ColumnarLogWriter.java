@@ -0,0 +1,201 @@
+package com.ef;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes parsed LogEntry items to a compact columnar binary file, so that an already parsed log can be analyzed again
+ * by a sequential read (see ColumnarLogReader) instead of re-parsing it or querying the database.
+ *
+ * File starts with MAGIC and VERSION ints followed by one block per handled chunk. A block is its row count followed
+ * by columns, each holding a value of every row:
+ * - date: epoch millis (UTC) longs
+ * - ip: address length byte (4 or 16) and address bytes, same as INET6_ATON()
+ * - request: block dictionary (count, then length-prefixed UTF-8 strings) and dictionary index ints, -1 for null
+ * - status: shorts
+ * - user agent: same as request
+ * Dictionaries are per block, so writer memory is bounded by chunk size.
+ */
+public class ColumnarLogWriter implements LogEntrySink
+{
+
+    /**
+     * "EFLC"
+     */
+    public static final int MAGIC = 0x45464C43;
+    public static final int VERSION = 1;
+
+    private final DataOutputStream out;
+    private long written;
+    private boolean failed;
+
+    /**
+     * @param path File to write, replaced if exists
+     * @throws IOException If file can not be created
+     */
+    public ColumnarLogWriter(Path path)
+        throws IOException
+    {
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 64 * 1024));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Write given entries as a single block
+     *
+     * @param entries Chunk of LogEntry items
+     */
+    @Override
+    public void handle(List<LogEntry> entries)
+    {
+        if (failed) {
+            throw new IllegalStateException("Writer has failed before.");
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        try {
+            writeBlock(entries);
+        } catch (IOException e) {
+            failed = true;
+            throw new IllegalStateException("Unable to write columnar log file.", e);
+        }
+        written += entries.size();
+    }
+
+    /**
+     * Get number of items written so far
+     *
+     * @return Written items count
+     */
+    public long getWrittenCount()
+    {
+        return written;
+    }
+
+    /**
+     * Flush written blocks and close file
+     *
+     * @throws SQLException Never, declared by LogEntrySink
+     */
+    @Override
+    public void close()
+        throws SQLException
+    {
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to write columnar log file.", e);
+        }
+    }
+
+    /**
+     * Close file, which stays readable up to the last block written
+     *
+     * @throws SQLException Never, declared by LogEntrySink
+     */
+    @Override
+    public void abort()
+        throws SQLException
+    {
+        close();
+    }
+
+    private void writeBlock(List<LogEntry> entries)
+        throws IOException
+    {
+        LogEntryBatch batch;
+        if (entries instanceof LogEntryBatch) {
+            batch = (LogEntryBatch) entries;
+        } else {
+            batch = new LogEntryBatch(entries.size());
+            batch.addAll(entries);
+        }
+        int rowCount = batch.size();
+
+        out.writeInt(rowCount);
+
+        for (int i = 0; i < rowCount; i++) {
+            out.writeLong(batch.getEpochMillis(i));
+        }
+
+        for (int i = 0; i < rowCount; i++) {
+            byte[] bytes = IpAddress.toBytes(batch.getIpHigh(i), batch.getIpLow(i));
+            out.writeByte(bytes.length);
+            out.write(bytes);
+        }
+
+        List<String> requests = new ArrayList<>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            requests.add(batch.getRequest(i));
+        }
+        writeDictionaryColumn(requests);
+
+        for (int i = 0; i < rowCount; i++) {
+            out.writeShort(batch.getStatus(i));
+        }
+
+        List<String> userAgents = new ArrayList<>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            userAgents.add(batch.getUserAgent(i));
+        }
+        writeDictionaryColumn(userAgents);
+    }
+
+    /**
+     * Write distinct values followed by index of each row value among them
+     *
+     * @param values Row values, may contain nulls
+     * @throws IOException
+     */
+    private void writeDictionaryColumn(List<String> values)
+        throws IOException
+    {
+        Map<String, Integer> indexes = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+        int[] rows = new int[values.size()];
+
+        for (int i = 0; i < rows.length; i++) {
+            String value = values.get(i);
+            if (value == null) {
+                rows[i] = -1;
+                continue;
+            }
+
+            Integer index = indexes.get(value);
+            if (index == null) {
+                index = dictionary.size();
+                indexes.put(value, index);
+                dictionary.add(value);
+            }
+            rows[i] = index;
+        }
+
+        out.writeInt(dictionary.size());
+        for (String value : dictionary) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        for (int row : rows) {
+            out.writeInt(row);
+        }
+    }
+}
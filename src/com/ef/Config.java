@@ -2,7 +2,23 @@ package com.ef;
 
 public class Config
 {
-    public static final String JDBC_URL = "jdbc:mysql://127.0.0.1:3306/ef";
+    public static final String JDBC_URL = "jdbc:mysql://127.0.0.1:3306/ef"
+        + "?rewriteBatchedStatements=true&allowLoadLocalInfile=false";
+    public static final String BULK_LOAD_JDBC_URL = "jdbc:mysql://127.0.0.1:3306/ef"
+        + "?rewriteBatchedStatements=true&allowLoadLocalInfile=true";
     public static final String DB_USERNAME = "root";
     public static final String DB_PASSWORD = "";
+    public static final int POOL_SIZE = 8;
+    public static final int BULK_LOAD_POOL_SIZE = 2;
+    public static final int POOL_TIMEOUT_SECONDS = 30;
+    public static final int BATCH_SIZE = 1_000;
+    public static final int COMMIT_INTERVAL = 50_000;
+    public static final long INGEST_RUN_BYTES = 64 * 1024 * 1024;
+    public static final int INTERN_CAPACITY = 4096;
+    public static final int REQUESTS_CACHE_SIZE = 32;
+    public static final int REQUESTS_CACHE_TTL_SECONDS = 60;
+    public static final int REQUESTS_CACHE_MAX_ROWS = 100_000;
+    public static final int HEAVY_HITTER_CAPACITY = 10_000;
+    public static final double SKETCH_EPSILON = 0.0001;
+    public static final double SKETCH_DELTA = 0.01;
 }
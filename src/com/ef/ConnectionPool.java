@@ -0,0 +1,276 @@
+package com.ef;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * Small built-in pool of JDBC connections.
+ * Connections are opened lazily, up to a fixed number, and reused after being closed by the caller, so repeated
+ * ParserModel calls do not pay a MySQL handshake each time and never hold more than maxSize server connections.
+ */
+public class ConnectionPool implements DataSource, AutoCloseable
+{
+
+    private static ConnectionPool defaultPool;
+    private static ConnectionPool bulkLoadPool;
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<Connection> idle = new LinkedBlockingDeque<>();
+    private volatile boolean closed;
+    private int loginTimeout = Config.POOL_TIMEOUT_SECONDS;
+
+    /**
+     * @param url JDBC URL
+     * @param username Database user name
+     * @param password Database user password
+     * @param maxSize Max number of open connections
+     */
+    public ConnectionPool(String url, String username, String password, int maxSize)
+    {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be positive, actual: " + maxSize);
+        }
+
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Get pool shared by all ParserModel instances created without explicit DataSource. Configured by Config values.
+     *
+     * @return Shared connection pool
+     */
+    public static synchronized ConnectionPool getDefault()
+    {
+        if (defaultPool == null || defaultPool.closed) {
+            defaultPool = new ConnectionPool(Config.JDBC_URL, Config.DB_USERNAME, Config.DB_PASSWORD, Config.POOL_SIZE);
+        }
+
+        return defaultPool;
+    }
+
+    /**
+     * Get pool of connections allowing LOAD DATA LOCAL INFILE, shared by bulk loaders of all ParserModel instances
+     * created without explicit DataSource. Other connections do not allow it, so that a server can not read local
+     * files through them.
+     *
+     * @return Shared bulk load connection pool
+     */
+    public static synchronized ConnectionPool getBulkLoadDefault()
+    {
+        if (bulkLoadPool == null || bulkLoadPool.closed) {
+            bulkLoadPool = new ConnectionPool(
+                Config.BULK_LOAD_JDBC_URL, Config.DB_USERNAME, Config.DB_PASSWORD, Config.BULK_LOAD_POOL_SIZE
+            );
+        }
+
+        return bulkLoadPool;
+    }
+
+    /**
+     * Get connection from pool, opening a new one if there are no idle connections.
+     * Waits for a connection to be returned if maxSize connections are in use.
+     * Closing returned connection puts it back to pool.
+     *
+     * @return Pooled connection
+     * @throws SQLException If connection can not be opened or none is returned in time
+     */
+    @Override
+    public Connection getConnection()
+        throws SQLException
+    {
+        if (closed) {
+            throw new SQLException("Connection pool is closed.");
+        }
+
+        try {
+            if (!permits.tryAcquire(loginTimeout, TimeUnit.SECONDS)) {
+                throw new SQLException("Timed out waiting for a free connection in pool.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a free connection in pool.", e);
+        }
+
+        try {
+            Connection physical = idle.pollFirst();
+            while (physical != null && !physical.isValid(1)) {
+                closeQuietly(physical);
+                physical = idle.pollFirst();
+            }
+            if (physical == null) {
+                physical = DriverManager.getConnection(url, username, password);
+            }
+
+            return wrap(physical);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("Pooled connections always use configured credentials.");
+    }
+
+    /**
+     * Close all idle connections. Connections in use are closed once they are returned.
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+
+        Connection physical;
+        while ((physical = idle.pollFirst()) != null) {
+            closeQuietly(physical);
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter()
+    {
+        return DriverManager.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out)
+    {
+        DriverManager.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds)
+    {
+        loginTimeout = seconds;
+    }
+
+    @Override
+    public int getLoginTimeout()
+    {
+        return loginTimeout;
+    }
+
+    @Override
+    public Logger getParentLogger()
+        throws SQLFeatureNotSupportedException
+    {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface)
+        throws SQLException
+    {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface)
+    {
+        return iface.isInstance(this);
+    }
+
+    /**
+     * Wrap physical connection, so that closing it returns it to pool
+     *
+     * @param physical Physical connection
+     * @return Pooled connection proxy
+     */
+    private Connection wrap(Connection physical)
+    {
+        boolean[] released = new boolean[1];
+
+        return (Connection) Proxy.newProxyInstance(
+            Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "close":
+                        synchronized (released) {
+                            if (!released[0]) {
+                                released[0] = true;
+                                release(physical);
+                            }
+                        }
+                        return null;
+                    case "isClosed":
+                        return released[0] || physical.isClosed();
+                    case "unwrap":
+                        return ((Class<?>) args[0]).isInstance(proxy) ? proxy : physical.unwrap((Class<?>) args[0]);
+                    case "isWrapperFor":
+                        return ((Class<?>) args[0]).isInstance(proxy) || physical.isWrapperFor((Class<?>) args[0]);
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "Pooled" + physical;
+                    default:
+                        if (released[0]) {
+                            throw new SQLException("Connection is closed.");
+                        }
+                        try {
+                            return method.invoke(physical, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                }
+            }
+        );
+    }
+
+    /**
+     * Return physical connection to pool, resetting transaction state left by the caller
+     *
+     * @param physical Physical connection
+     */
+    private void release(Connection physical)
+    {
+        try {
+            if (closed || physical.isClosed()) {
+                closeQuietly(physical);
+                return;
+            }
+
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            idle.addFirst(physical);
+        } catch (SQLException e) {
+            closeQuietly(physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static void closeQuietly(Connection physical)
+    {
+        try {
+            physical.close();
+        } catch (SQLException e) {
+            // connection is dropped anyway
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.ef;
+
+/**
+ * Count-Min Sketch of request counts per IP, keyed by the two longs of IpAddress. Memory is fixed by the error bounds,
+ * not by the number of distinct IPs: estimate of an IP count never undercounts, and overcounts by more than
+ * epsilon * total count with probability of at most delta.
+ *
+ * Counters are updated conservatively (only those below the new estimate are raised), which keeps the bounds and
+ * makes overcounting much smaller on skewed traffic.
+ */
+public class CountMinSketch
+{
+
+    private final int width;
+    private final int depth;
+    private final int[] counters;
+    private final long[] seeds;
+
+    /**
+     * Scratch buffer of counter indexes of add()
+     */
+    private final int[] indexes;
+    private long total;
+
+    /**
+     * @param epsilon Max overcount relative to total count, e.g. 0.0001
+     * @param delta Probability of exceeding epsilon, e.g. 0.01
+     */
+    public CountMinSketch(double epsilon, double delta)
+    {
+        if (!(epsilon > 0 && epsilon < 1)) {
+            throw new IllegalArgumentException("Epsilon must be between 0 and 1, actual: " + epsilon);
+        }
+        if (!(delta > 0 && delta < 1)) {
+            throw new IllegalArgumentException("Delta must be between 0 and 1, actual: " + delta);
+        }
+
+        double size = Math.ceil(Math.E / epsilon) * Math.ceil(Math.log(1 / delta));
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException(
+                "Epsilon " + epsilon + " and delta " + delta + " need too many counters, please raise them"
+            );
+        }
+
+        width = (int) Math.ceil(Math.E / epsilon);
+        depth = (int) Math.ceil(Math.log(1 / delta));
+        counters = new int[width * depth];
+        indexes = new int[depth];
+
+        seeds = new long[depth];
+        long seed = 0x2545_F491_4F6C_DD1DL;
+        for (int row = 0; row < depth; row++) {
+            seed = mix(seed + row);
+            seeds[row] = seed;
+        }
+    }
+
+    /**
+     * Add given number of requests of given IP
+     *
+     * @param high Upper 64 bits of address
+     * @param low Lower 64 bits of address
+     * @param count Number of requests to add, not negative
+     * @return New estimate of IP count
+     */
+    public int add(long high, long low, int count)
+    {
+        total += count;
+
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            indexes[row] = index(row, high, low);
+            estimate = Math.min(estimate, counters[indexes[row]]);
+        }
+
+        int raised = (int) Math.min((long) estimate + count, Integer.MAX_VALUE);
+        for (int row = 0; row < depth; row++) {
+            if (counters[indexes[row]] < raised) {
+                counters[indexes[row]] = raised;
+            }
+        }
+
+        return raised;
+    }
+
+    /**
+     * Estimate count of given IP
+     *
+     * @param high Upper 64 bits of address
+     * @param low Lower 64 bits of address
+     * @return Estimate, never less than the actual count
+     */
+    public int estimate(long high, long low)
+    {
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters[index(row, high, low)]);
+        }
+
+        return estimate;
+    }
+
+    /**
+     * Get sum of all counts added so far
+     *
+     * @return Total count
+     */
+    public long getTotal()
+    {
+        return total;
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    private int index(int row, long high, long low)
+    {
+        long h = mix(high ^ seeds[row]) ^ low;
+        h = mix(h + seeds[row]);
+
+        return row * width + (int) ((h >>> 1) % width);
+    }
+
+    /**
+     * Finalizer of 64-bit MurmurHash3, spreads every input bit over all output bits
+     */
+    private static long mix(long h)
+    {
+        h ^= h >>> 33;
+        h *= 0xFF51_AFD7_ED55_8CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CE_B9FE_1A85_EC53L;
+        h ^= h >>> 33;
+
+        return h;
+    }
+}
@@ -1,22 +1,129 @@
 package com.ef;
 
 /**
- * Contains possible values for "duration" to calculate range of dates to check log records against
+ * Contains possible values for "duration" to calculate range of dates to check log records against: HOURLY, DAILY or
+ * any number of seconds, minutes, hours or days, e.g. "90s", "5m", "12h"
  */
-public enum Duration
+public final class Duration
 {
-    HOURLY(60 * 1),
-    DAILY(60 * 24);
 
-    public final int minutes;
-    
+    public static final Duration HOURLY = new Duration("HOURLY", 60 * 60);
+    public static final Duration DAILY = new Duration("DAILY", 60 * 60 * 24);
+
+    private static final Duration[] NAMED = new Duration[]{HOURLY, DAILY};
+
+    private final String name;
+    public final long seconds;
+
+    /**
+     * Construct Duration with given time in seconds
+     *
+     * @param name Duration name
+     * @param seconds How long this duration is
+     */
+    private Duration(String name, long seconds)
+    {
+        this.name = name;
+        this.seconds = seconds;
+    }
+
+    /**
+     * Get duration of given length. Lengths of named durations are returned as named ones.
+     *
+     * @param seconds How long duration is
+     * @return Duration
+     */
+    public static Duration ofSeconds(long seconds)
+    {
+        if (seconds < 1) {
+            throw new IllegalArgumentException("Duration must be positive, actual: " + seconds + "s");
+        }
+
+        for (Duration d : NAMED) {
+            if (d.seconds == seconds) {
+                return d;
+            }
+        }
+
+        if (seconds % (60 * 60 * 24) == 0) {
+            return new Duration(seconds / (60 * 60 * 24) + "d", seconds);
+        } else if (seconds % (60 * 60) == 0) {
+            return new Duration(seconds / (60 * 60) + "h", seconds);
+        } else if (seconds % 60 == 0) {
+            return new Duration(seconds / 60 + "m", seconds);
+        }
+
+        return new Duration(seconds + "s", seconds);
+    }
+
+    /**
+     * Parse duration argument
+     *
+     * @param text Duration name (case insensitive) or positive number followed by unit: s, m, h or d
+     * @return Duration
+     * @throws IllegalArgumentException If text is not a valid duration
+     */
+    public static Duration parse(String text)
+    {
+        for (Duration d : NAMED) {
+            if (d.name.equalsIgnoreCase(text)) {
+                return d;
+            }
+        }
+
+        if (text.length() < 2) {
+            throw new IllegalArgumentException("Unknown duration: " + text);
+        }
+
+        long unit;
+        switch (Character.toLowerCase(text.charAt(text.length() - 1))) {
+            case 's':
+                unit = 1;
+                break;
+            case 'm':
+                unit = 60;
+                break;
+            case 'h':
+                unit = 60 * 60;
+                break;
+            case 'd':
+                unit = 60 * 60 * 24;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown duration: " + text);
+        }
+
+        long amount;
+        try {
+            amount = Long.parseLong(text.substring(0, text.length() - 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Unknown duration: " + text);
+        }
+        if (amount < 1 || amount > Integer.MAX_VALUE / unit) {
+            throw new IllegalArgumentException("Unknown duration: " + text);
+        }
+
+        return ofSeconds(amount * unit);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        return obj instanceof Duration && ((Duration) obj).seconds == seconds;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Long.hashCode(seconds);
+    }
+
     /**
-     * Construct Duration with given time in minutes
-     * 
-     * @param minutes How long this duration is
+     * @return Duration name, e.g. "HOURLY" or "5m"
      */
-    private Duration(int minutes)
+    @Override
+    public String toString()
     {
-        this.minutes = minutes;
+        return name;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,122 @@
+package com.ef;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Small cache keeping at most maxSize recently used values, each for at most ttl after it was put.
+ * Used to answer repeated lookups of the same keys (e.g. requests of the same offending IP) without querying the
+ * database again. Thread-safe.
+ *
+ * @param <K> Key type
+ * @param <V> Value type
+ */
+public class ExpiringLruCache<K, V>
+{
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final LinkedHashMap<K, Cached<V>> entries;
+
+    /**
+     * @param maxSize Max number of cached values, 0 disables caching
+     * @param ttl Time a value is kept for
+     * @param unit Unit of ttl
+     */
+    public ExpiringLruCache(int maxSize, long ttl, TimeUnit unit)
+    {
+        this(maxSize, ttl, unit, System::nanoTime);
+    }
+
+    /**
+     * @param maxSize Max number of cached values, 0 disables caching
+     * @param ttl Time a value is kept for
+     * @param unit Unit of ttl
+     * @param clock Source of current time in nanoseconds
+     */
+    ExpiringLruCache(int maxSize, long ttl, TimeUnit unit, LongSupplier clock)
+    {
+        if (maxSize < 0 || ttl < 0) {
+            throw new IllegalArgumentException(
+                "Cache size and TTL must not be negative, actual: " + maxSize + ", " + ttl
+            );
+        }
+
+        this.maxSize = maxSize;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.clock = clock;
+
+        // access order, so that the eldest entry is the least recently used one
+        entries = new LinkedHashMap<K, Cached<V>>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Cached<V>> eldest)
+            {
+                return size() > ExpiringLruCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Get cached value of given key
+     *
+     * @param key Key
+     * @return Value or null if it is not cached or has expired
+     */
+    public synchronized V get(K key)
+    {
+        Cached<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        if (clock.getAsLong() - entry.createdNanos >= ttlNanos) {
+            entries.remove(key);
+            return null;
+        }
+
+        return entry.value;
+    }
+
+    /**
+     * Cache given value, evicting the least recently used value if cache is full
+     *
+     * @param key Key
+     * @param value Value
+     */
+    public synchronized void put(K key, V value)
+    {
+        if (maxSize > 0) {
+            entries.put(key, new Cached<>(value, clock.getAsLong()));
+        }
+    }
+
+    /**
+     * Remove all cached values, e.g. when underlying data has changed
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    private static final class Cached<V>
+    {
+
+        final V value;
+        final long createdNanos;
+
+        Cached(V value, long createdNanos)
+        {
+            this.value = value;
+            this.createdNanos = createdNanos;
+        }
+    }
+}
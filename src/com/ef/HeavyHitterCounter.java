@@ -0,0 +1,195 @@
+package com.ef;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Bounded-memory alternative to ThresholdCounter for date ranges with huge numbers of distinct IPs (e.g. a DDoS with
+ * spoofed addresses). Requests are counted in a CountMinSketch and a SpaceSavingTopK summary, whose memory depends on
+ * the configured error bounds only. IPs whose count may exceed threshold by both of them are candidates, and exact
+ * counts of candidates only are taken from a second pass over the log, see newVerifier().
+ *
+ * Every IP having more than threshold requests is a candidate as long as threshold is not below
+ * SpaceSavingTopK.getGuaranteedThreshold(), see isComplete().
+ */
+public class HeavyHitterCounter implements LogEntryHandler
+{
+
+    private final LocalDateTime startDate;
+    private final LocalDateTime endDate;
+    private final long startMillis;
+    private final long endMillis;
+    private final int threshold;
+    private final CountMinSketch sketch;
+    private final SpaceSavingTopK topK;
+
+    /**
+     * Scratch buffer for parsing IPs of LogEntry items
+     */
+    private final long[] parsed = new long[2];
+
+    /**
+     * @param startDate Date range start, inclusive
+     * @param endDate Date range end, exclusive
+     * @param threshold Look for IPs having more requests than given threshold in given date range
+     * @param capacity Max number of IPs tracked by top-K summary
+     * @param epsilon Max overcount of sketch relative to total count of date range
+     * @param delta Probability of sketch exceeding epsilon
+     */
+    public HeavyHitterCounter(
+        LocalDateTime startDate, LocalDateTime endDate, int threshold, int capacity, double epsilon, double delta
+    )
+    {
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.startMillis = TimestampParser.toEpochMillis(startDate);
+        this.endMillis = TimestampParser.toEpochMillis(endDate);
+        this.threshold = threshold;
+        this.sketch = new CountMinSketch(epsilon, delta);
+        this.topK = new SpaceSavingTopK(capacity);
+    }
+
+    /**
+     * Count requests of given entries which are within the date range
+     *
+     * @param entries Chunk of parsed LogEntry items
+     */
+    @Override
+    public void handle(List<LogEntry> entries)
+    {
+        if (entries instanceof LogEntryBatch) {
+            LogEntryBatch batch = (LogEntryBatch) entries;
+            for (int i = 0; i < batch.size(); i++) {
+                long millis = batch.getEpochMillis(i);
+                if (millis >= startMillis && millis < endMillis) {
+                    count(batch.getIpHigh(i), batch.getIpLow(i));
+                }
+            }
+            return;
+        }
+
+        for (LogEntry item : entries) {
+            if (!item.date.isBefore(startDate) && item.date.isBefore(endDate)) {
+                IpAddress.parse(item.ip, parsed);
+                count(parsed[0], parsed[1]);
+            }
+        }
+    }
+
+    /**
+     * Get IPs which may have more than threshold requests among all entries handled so far
+     *
+     * @return Map of IP to upper bound of its requests count
+     */
+    public IpCountMap getCandidates()
+    {
+        IpCountMap candidates = new IpCountMap();
+        topK.forEach((long high, long low, int count) -> {
+            int estimate = Math.min(count, sketch.estimate(high, low));
+            if (estimate > threshold) {
+                candidates.add(high, low, estimate);
+            }
+        });
+
+        return candidates;
+    }
+
+    /**
+     * Check if every IP having more than threshold requests is guaranteed to be among candidates
+     *
+     * @return false if top-K summary is too small for the number of requests counted, so that IPs having up to
+     * getGuaranteedThreshold() requests may be missing
+     */
+    public boolean isComplete()
+    {
+        return threshold >= topK.getGuaranteedThreshold();
+    }
+
+    /**
+     * Get count above which an IP is guaranteed to be among candidates
+     *
+     * @return Requests counted divided by top-K capacity
+     */
+    public long getGuaranteedThreshold()
+    {
+        return topK.getGuaranteedThreshold();
+    }
+
+    /**
+     * Create handler counting requests of current candidates exactly. Pass it to one of parse() methods for the same
+     * log file(s) again, then get above-threshold IPs from it.
+     *
+     * @return Exact counter of candidates
+     */
+    public Verifier newVerifier()
+    {
+        return new Verifier(getCandidates());
+    }
+
+    private void count(long high, long low)
+    {
+        sketch.add(high, low, 1);
+        topK.add(high, low, 1);
+    }
+
+    /**
+     * Counts requests of given candidate IPs exactly, so memory depends on the number of candidates only
+     */
+    public class Verifier implements LogEntryHandler
+    {
+
+        private final IpCountMap candidates;
+        private final IpCountMap counts;
+        private final long[] parsed = new long[2];
+
+        private Verifier(IpCountMap candidates)
+        {
+            this.candidates = candidates;
+            this.counts = new IpCountMap(candidates.size());
+        }
+
+        /**
+         * Count requests of candidates among given entries which are within the date range
+         *
+         * @param entries Chunk of parsed LogEntry items
+         */
+        @Override
+        public void handle(List<LogEntry> entries)
+        {
+            if (entries instanceof LogEntryBatch) {
+                LogEntryBatch batch = (LogEntryBatch) entries;
+                for (int i = 0; i < batch.size(); i++) {
+                    long millis = batch.getEpochMillis(i);
+                    if (millis >= startMillis && millis < endMillis) {
+                        count(batch.getIpHigh(i), batch.getIpLow(i));
+                    }
+                }
+                return;
+            }
+
+            for (LogEntry item : entries) {
+                if (!item.date.isBefore(startDate) && item.date.isBefore(endDate)) {
+                    IpAddress.parse(item.ip, parsed);
+                    count(parsed[0], parsed[1]);
+                }
+            }
+        }
+
+        /**
+         * Get candidates having more than threshold requests among all entries handled so far
+         *
+         * @return Map of IP to its exact requests count, same as ParserModel.findAboveThresholdIPCounts() returns
+         */
+        public IpCountMap getAboveThresholdIPCounts()
+        {
+            return counts.aboveThreshold(threshold);
+        }
+
+        private void count(long high, long low)
+        {
+            if (candidates.get(high, low) > 0) {
+                counts.add(high, low, 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.ef;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+/**
+ * Remembers how far a log file has been ingested, so that the next run only parses bytes appended since then.
+ * Stored as a small properties file holding the ingested offset, number of lines before it (so that malformed lines
+ * are numbered from the start of the file) and identity of the log file: its file key (inode on Unix) and checksum of
+ * its first line. If identity does not match on the next run, or the file became shorter than
+ * the offset, log file is considered rotated/truncated and is ingested from the start. The rest of a rotated file can
+ * still be found next to it, e.g. access.log.1 for access.log, see findRotatedFile().
+ */
+public class IngestCheckpoint
+{
+
+    private static final int FIRST_LINE_MAX_BYTES = 4096;
+
+    /**
+     * Checkpoint file or null if checkpoint is not saved
+     */
+    private final Path file;
+    private String fileKey = "";
+    private long firstLineChecksum = -1;
+    private long offset;
+    private long lines;
+
+    private IngestCheckpoint(Path file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * Load checkpoint from given file
+     *
+     * @param file Checkpoint file. If it does not exist, checkpoint starts at the beginning of log file.
+     * @return Loaded checkpoint
+     * @throws IOException If checkpoint file exists but can not be read
+     */
+    public static IngestCheckpoint load(Path file)
+        throws IOException
+    {
+        IngestCheckpoint checkpoint = new IngestCheckpoint(file);
+        if (!Files.exists(file)) {
+            return checkpoint;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+
+        try {
+            checkpoint.fileKey = properties.getProperty("fileKey", "");
+            checkpoint.firstLineChecksum = Long.parseLong(properties.getProperty("firstLineChecksum", "-1"));
+            checkpoint.offset = Long.parseLong(properties.getProperty("offset", "0"));
+            checkpoint.lines = Long.parseLong(properties.getProperty("lines", "0"));
+        } catch (NumberFormatException e) {
+            throw new IOException("Checkpoint file (" + file + ") is corrupted.", e);
+        }
+
+        return checkpoint;
+    }
+
+    /**
+     * Create checkpoint which is kept in memory only, e.g. to follow a log file within a single run. Lines already in
+     * log file are skipped, so that only lines appended from now on are ingested.
+     *
+     * @param logFile Log file
+     * @return Checkpoint at the end of the last complete line of log file
+     * @throws IOException If log file can not be read
+     */
+    public static IngestCheckpoint inMemory(Path logFile)
+        throws IOException
+    {
+        IngestCheckpoint checkpoint = new IngestCheckpoint(null);
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            long end = MappedLogReader.findCompleteLinesEnd(channel, 0);
+            checkpoint.update(logFile, end, MappedLogReader.countLines(channel, 0, end));
+        }
+
+        return checkpoint;
+    }
+
+    /**
+     * Get position given log file should be ingested from
+     *
+     * @param logFile Log file
+     * @return Checkpoint offset or 0 if log file was rotated or truncated since the checkpoint
+     * @throws IOException If log file can not be read
+     */
+    public long getResumeOffset(Path logFile)
+        throws IOException
+    {
+        if (offset == 0) {
+            return 0;
+        }
+
+        return isCheckpointed(logFile) ? offset : 0;
+    }
+
+    /**
+     * Get number of lines preceding the position given log file should be ingested from
+     *
+     * @param logFile Log file
+     * @return Lines ingested up to checkpoint offset or 0 if log file was rotated or truncated since the checkpoint
+     * @throws IOException If log file can not be read
+     */
+    public long getResumeLine(Path logFile)
+        throws IOException
+    {
+        return getResumeOffset(logFile) > 0 ? lines : 0;
+    }
+
+    /**
+     * Find the file given log file was rotated to since the checkpoint, so that lines appended to it before rotation
+     * can be ingested from the checkpoint offset. Only ".1" suffixed file next to log file is checked.
+     *
+     * @param logFile Log file
+     * @return Rotated file having the identity of checkpointed file, or null if log file was not rotated or rotated
+     * file is not found
+     * @throws IOException If log file can not be read
+     */
+    public Path findRotatedFile(Path logFile)
+        throws IOException
+    {
+        if (offset == 0 || isCheckpointed(logFile)) {
+            return null;
+        }
+
+        Path rotated = logFile.resolveSibling(logFile.getFileName() + ".1");
+        if (!Files.isRegularFile(rotated) || !isCheckpointed(rotated)) {
+            return null;
+        }
+
+        return rotated;
+    }
+
+    /**
+     * Remember that given log file is ingested up to given offset and save checkpoint file, if any.
+     * File is replaced atomically, so it is never left half-written.
+     *
+     * @param logFile Log file
+     * @param offset Position right after the last ingested line
+     * @param lines Number of lines before offset
+     * @throws IOException If checkpoint file can not be written
+     */
+    public void update(Path logFile, long offset, long lines)
+        throws IOException
+    {
+        this.fileKey = getFileKey(logFile);
+        this.firstLineChecksum = getFirstLineChecksum(logFile);
+        this.offset = offset;
+        this.lines = lines;
+
+        if (file == null) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty("logFile", logFile.toAbsolutePath().toString());
+        properties.setProperty("fileKey", fileKey);
+        properties.setProperty("firstLineChecksum", Long.toString(firstLineChecksum));
+        properties.setProperty("offset", Long.toString(offset));
+        properties.setProperty("lines", Long.toString(lines));
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            properties.store(out, "Log file ingestion checkpoint");
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public long getOffset()
+    {
+        return offset;
+    }
+
+    public long getLines()
+    {
+        return lines;
+    }
+
+    /**
+     * Check given file is the file checkpoint was saved for, and it is not shorter than checkpoint offset
+     *
+     * @param logFile Log file
+     * @return true if file has the same identity
+     * @throws IOException
+     */
+    private boolean isCheckpointed(Path logFile)
+        throws IOException
+    {
+        return fileKey.equals(getFileKey(logFile))
+            && firstLineChecksum == getFirstLineChecksum(logFile)
+            && Files.size(logFile) >= offset;
+    }
+
+    /**
+     * Get file key (inode and device on Unix) of given file
+     *
+     * @param logFile Log file
+     * @return File key text or empty string if file system does not provide keys
+     * @throws IOException
+     */
+    private static String getFileKey(Path logFile)
+        throws IOException
+    {
+        Object key = Files.readAttributes(logFile, BasicFileAttributes.class).fileKey();
+        return Objects.toString(key, "");
+    }
+
+    /**
+     * Get checksum of the first line of given file, up to FIRST_LINE_MAX_BYTES bytes
+     *
+     * @param logFile Log file
+     * @return CRC32 of the first line or -1 if file has no complete line yet
+     * @throws IOException
+     */
+    private static long getFirstLineChecksum(Path logFile)
+        throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(FIRST_LINE_MAX_BYTES);
+            while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+                // keep reading until buffer is full or file ends
+            }
+
+            int length = MappedLogReader.nextLine(buffer, 0, buffer.position());
+            if (length == buffer.position() && buffer.hasRemaining()
+                && (length == 0 || buffer.get(length - 1) != '\n')) {
+                return -1;
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), 0, length);
+
+            return crc.getValue();
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.ef;
+
+import java.util.Arrays;
+
+/**
+ * Compact IP address: 128 bits held in two longs, the same 16 bytes INET6_ATON() produces for IPv6 addresses.
+ * IPv4 addresses are held as IPv4-mapped IPv6 addresses (::ffff:a.b.c.d), so they still fit into a single int
+ * (the lower 32 bits) and are written back as 4 bytes / dotted text, the same way INET6_ATON() and INET6_NTOA() do.
+ * Text of an IPv4-mapped IPv6 address is the same address as its IPv4 form, so it is written back as 4 bytes too,
+ * while INET6_ATON() returns 16 bytes for it. IP text must therefore go through this class, not INET6_ATON(), before
+ * it is compared with stored addresses.
+ *
+ * Static methods work on (high, low) pairs directly, so hot counting paths do not need to create any objects.
+ */
+public final class IpAddress
+{
+
+    private static final long IPV4_MAPPED_PREFIX = 0xFFFFL << 32;
+
+    public final long high;
+    public final long low;
+
+    /**
+     * @param high Upper 64 bits of address
+     * @param low Lower 64 bits of address
+     */
+    public IpAddress(long high, long low)
+    {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * Parse IPv4 or IPv6 address
+     *
+     * @param text Address in dotted IPv4 or textual IPv6 form
+     * @return Parsed address
+     * @throws IllegalArgumentException If text is not a valid IP address
+     */
+    public static IpAddress parse(CharSequence text)
+    {
+        long[] out = new long[2];
+        parse(text, out);
+
+        return new IpAddress(out[0], out[1]);
+    }
+
+    /**
+     * Parse IPv4 or IPv6 address into given array, without creating any objects for IPv4 addresses
+     *
+     * @param text Address in dotted IPv4 or textual IPv6 form
+     * @param out Receives upper 64 bits at index 0 and lower 64 bits at index 1
+     * @throws IllegalArgumentException If text is not a valid IP address
+     */
+    public static void parse(CharSequence text, long[] out)
+    {
+        parse(text, 0, text.length(), out);
+    }
+
+    /**
+     * Parse IPv4 or IPv6 address located in given range of text, e.g. a field of a log file line
+     *
+     * @param text Text holding address in dotted IPv4 or textual IPv6 form
+     * @param from Address start index, inclusive
+     * @param to Address end index, exclusive
+     * @param out Receives upper 64 bits at index 0 and lower 64 bits at index 1
+     * @throws IllegalArgumentException If range is not a valid IP address
+     */
+    public static void parse(CharSequence text, int from, int to, long[] out)
+    {
+        boolean ipv6 = false;
+        for (int i = from; i < to && !ipv6; i++) {
+            ipv6 = text.charAt(i) == ':';
+        }
+
+        if (!ipv6) {
+            out[0] = 0;
+            out[1] = IPV4_MAPPED_PREFIX | parseIPv4(text, from, to) & 0xFFFF_FFFFL;
+            return;
+        }
+
+        int[] groups = new int[8];
+        int cnt = 0;
+        int gap = -1;
+        int i = from;
+
+        if (to - from >= 2 && text.charAt(from) == ':' && text.charAt(from + 1) == ':') {
+            gap = 0;
+            i = from + 2;
+        }
+
+        while (i < to) {
+            int end = i;
+            boolean dotted = false;
+            while (end < to && text.charAt(end) != ':') {
+                dotted |= text.charAt(end) == '.';
+                end++;
+            }
+
+            if (dotted) {
+                // embedded IPv4 address takes the last two groups
+                if (end != to || cnt > 6) {
+                    throw invalid(text, from, to);
+                }
+                int ipv4 = parseIPv4(text, i, end);
+                groups[cnt++] = ipv4 >>> 16;
+                groups[cnt++] = ipv4 & 0xFFFF;
+                break;
+            }
+
+            if (cnt == 8) {
+                throw invalid(text, from, to);
+            }
+            groups[cnt++] = parseHexGroup(text, i, end);
+
+            i = end;
+            if (i < to) {
+                i++;
+                if (i == to) {
+                    throw invalid(text, from, to);
+                }
+                if (text.charAt(i) == ':') {
+                    if (gap >= 0) {
+                        throw invalid(text, from, to);
+                    }
+                    gap = cnt;
+                    i++;
+                }
+            }
+        }
+
+        if (gap < 0 && cnt != 8 || gap >= 0 && cnt > 7) {
+            throw invalid(text, from, to);
+        }
+
+        // move groups following "::" to the end, zeros in between
+        if (gap >= 0) {
+            int tail = cnt - gap;
+            System.arraycopy(groups, gap, groups, 8 - tail, tail);
+            Arrays.fill(groups, gap, 8 - tail, 0);
+        }
+
+        long high = 0;
+        long low = 0;
+        for (int g = 0; g < 4; g++) {
+            high = high << 16 | groups[g];
+            low = low << 16 | groups[g + 4];
+        }
+
+        out[0] = high;
+        out[1] = low;
+    }
+
+    /**
+     * Create address of given bytes, as stored in VARBINARY(16) columns by INET6_ATON()
+     *
+     * @param bytes 4 bytes of IPv4 address or 16 bytes of IPv6 address
+     * @return Address
+     */
+    public static IpAddress fromBytes(byte[] bytes)
+    {
+        if (bytes.length == 4) {
+            return new IpAddress(0, IPV4_MAPPED_PREFIX | readInt(bytes, 0) & 0xFFFF_FFFFL);
+        }
+        if (bytes.length != 16) {
+            throw new IllegalArgumentException("IP address must have 4 or 16 bytes, actual: " + bytes.length);
+        }
+
+        long high = (long) readInt(bytes, 0) << 32 | readInt(bytes, 4) & 0xFFFF_FFFFL;
+        long low = (long) readInt(bytes, 8) << 32 | readInt(bytes, 12) & 0xFFFF_FFFFL;
+
+        return new IpAddress(high, low);
+    }
+
+    /**
+     * Check if given address is an IPv4 address
+     *
+     * @param high Upper 64 bits of address
+     * @param low Lower 64 bits of address
+     * @return true if address is IPv4, false otherwise
+     */
+    public static boolean isIPv4(long high, long low)
+    {
+        return high == 0 && (low & ~0xFFFF_FFFFL) == IPV4_MAPPED_PREFIX;
+    }
+
+    /**
+     * Get bytes of given address, the same as INET6_ATON() returns for its text, see toString(long, long)
+     *
+     * @param high Upper 64 bits of address
+     * @param low Lower 64 bits of address
+     * @return 4 bytes for IPv4 address or 16 bytes for IPv6 address
+     */
+    public static byte[] toBytes(long high, long low)
+    {
+        if (isIPv4(high, low)) {
+            byte[] bytes = new byte[4];
+            writeLong(bytes, 0, low, 4);
+            return bytes;
+        }
+
+        byte[] bytes = new byte[16];
+        writeLong(bytes, 0, high, 8);
+        writeLong(bytes, 8, low, 8);
+
+        return bytes;
+    }
+
+    /**
+     * Get text of given address, the same as INET6_NTOA() returns for its bytes
+     *
+     * @param high Upper 64 bits of address
+     * @param low Lower 64 bits of address
+     * @return Dotted IPv4 address or compressed lower-case IPv6 address
+     */
+    public static String toString(long high, long low)
+    {
+        if (isIPv4(high, low)) {
+            return ((low >>> 24) & 0xFF) + "." + ((low >>> 16) & 0xFF) + "." + ((low >>> 8) & 0xFF) + "." + (low & 0xFF);
+        }
+
+        int[] groups = new int[8];
+        for (int g = 0; g < 4; g++) {
+            groups[g] = (int) (high >>> (48 - g * 16)) & 0xFFFF;
+            groups[g + 4] = (int) (low >>> (48 - g * 16)) & 0xFFFF;
+        }
+
+        // find the longest run of zero groups (at least two) to replace with "::"
+        int gapStart = -1;
+        int gapLength = 1;
+        for (int g = 0; g < 8; g++) {
+            int end = g;
+            while (end < 8 && groups[end] == 0) {
+                end++;
+            }
+            if (end - g > gapLength) {
+                gapStart = g;
+                gapLength = end - g;
+            }
+            g = Math.max(g, end - 1);
+        }
+
+        StringBuilder sb = new StringBuilder(39);
+        for (int g = 0; g < 8; g++) {
+            if (g == gapStart) {
+                sb.append("::");
+                g += gapLength - 1;
+                continue;
+            }
+            if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ':') {
+                sb.append(':');
+            }
+            sb.append(Integer.toHexString(groups[g]));
+        }
+
+        return sb.toString();
+    }
+
+    public byte[] toBytes()
+    {
+        return toBytes(high, low);
+    }
+
+    public boolean isIPv4()
+    {
+        return isIPv4(high, low);
+    }
+
+    @Override
+    public String toString()
+    {
+        return toString(high, low);
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof IpAddress)) {
+            return false;
+        }
+
+        IpAddress other = (IpAddress) o;
+        return high == other.high && low == other.low;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Long.hashCode(high * 31 + low);
+    }
+
+    /**
+     * Parse dotted IPv4 address located in given range of text
+     *
+     * @return Address as int
+     */
+    private static int parseIPv4(CharSequence text, int from, int to)
+    {
+        int address = 0;
+        int parts = 0;
+        int i = from;
+
+        while (parts < 4) {
+            int value = 0;
+            int digits = 0;
+            while (i < to && text.charAt(i) >= '0' && text.charAt(i) <= '9' && digits < 3) {
+                value = value * 10 + text.charAt(i) - '0';
+                digits++;
+                i++;
+            }
+            if (digits == 0 || value > 255) {
+                throw invalid(text, from, to);
+            }
+
+            address = address << 8 | value;
+            parts++;
+
+            if (parts < 4) {
+                if (i >= to || text.charAt(i) != '.') {
+                    throw invalid(text, from, to);
+                }
+                i++;
+            }
+        }
+
+        if (i != to) {
+            throw invalid(text, from, to);
+        }
+
+        return address;
+    }
+
+    /**
+     * Parse 1-4 hex digits located in given range of text
+     *
+     * @return Group value
+     */
+    private static int parseHexGroup(CharSequence text, int from, int to)
+    {
+        if (to <= from || to - from > 4) {
+            throw invalid(text, from, to);
+        }
+
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = Character.digit(text.charAt(i), 16);
+            if (digit < 0) {
+                throw invalid(text, from, to);
+            }
+            value = value << 4 | digit;
+        }
+
+        return value;
+    }
+
+    private static int readInt(byte[] bytes, int offset)
+    {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16
+            | (bytes[offset + 2] & 0xFF) << 8 | bytes[offset + 3] & 0xFF;
+    }
+
+    private static void writeLong(byte[] bytes, int offset, long value, int cnt)
+    {
+        for (int i = 0; i < cnt; i++) {
+            bytes[offset + i] = (byte) (value >>> ((cnt - 1 - i) * 8));
+        }
+    }
+
+    private static IllegalArgumentException invalid(CharSequence text, int from, int to)
+    {
+        return new IllegalArgumentException("Not a valid IP address: " + text.subSequence(from, to));
+    }
+}
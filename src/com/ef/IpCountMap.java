@@ -0,0 +1,269 @@
+package com.ef;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Map of IP address to request count, keyed by the two longs of IpAddress instead of Strings.
+ * Uses open addressing with linear probing over primitive arrays, so counting does not create any objects and does
+ * not box counters.
+ */
+public class IpCountMap
+{
+
+    private long[] highs;
+    private long[] lows;
+    private int[] counts;
+    private boolean[] used;
+    private int size;
+    private int mask;
+
+    /**
+     * Scratch buffer for parsing IPs of increment()
+     */
+    private final long[] parsed = new long[2];
+
+    public IpCountMap()
+    {
+        this(64);
+    }
+
+    /**
+     * @param expectedSize Expected number of distinct IPs
+     */
+    public IpCountMap(int expectedSize)
+    {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) * 2;
+        allocate(capacity);
+    }
+
+    /**
+     * Add one request of given IP
+     *
+     * @param ip Dotted IPv4 or textual IPv6 address
+     * @return New count of given IP
+     */
+    public int increment(CharSequence ip)
+    {
+        IpAddress.parse(ip, parsed);
+        return add(parsed[0], parsed[1], 1);
+    }
+
+    /**
+     * Add given number of requests to count of given IP. IP is removed once its count drops to zero.
+     *
+     * @param high Upper 64 bits of address
+     * @param low Lower 64 bits of address
+     * @param delta Number of requests to add, may be negative
+     * @return New count of given IP
+     */
+    public int add(long high, long low, int delta)
+    {
+        int slot = find(high, low);
+        if (used[slot]) {
+            int count = counts[slot] + delta;
+            if (count == 0) {
+                removeSlot(slot);
+            } else {
+                counts[slot] = count;
+            }
+            return count;
+        }
+
+        if (delta == 0) {
+            return 0;
+        }
+
+        used[slot] = true;
+        highs[slot] = high;
+        lows[slot] = low;
+        counts[slot] = delta;
+
+        if (++size * 2 > used.length) {
+            rehash(used.length * 2);
+        }
+
+        return delta;
+    }
+
+    /**
+     * Get count of given IP
+     *
+     * @param high Upper 64 bits of address
+     * @param low Lower 64 bits of address
+     * @return Count or 0 if IP is not in map
+     */
+    public int get(long high, long low)
+    {
+        int slot = find(high, low);
+        return used[slot] ? counts[slot] : 0;
+    }
+
+    /**
+     * Get count of given IP
+     *
+     * @param ip Dotted IPv4 or textual IPv6 address
+     * @return Count or 0 if IP is not in map
+     */
+    public int get(CharSequence ip)
+    {
+        IpAddress.parse(ip, parsed);
+        return get(parsed[0], parsed[1]);
+    }
+
+    /**
+     * Add all counts of given map to this map
+     *
+     * @param other Map to add counts of
+     */
+    public void addAll(IpCountMap other)
+    {
+        other.forEach(this::add);
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Pass each IP and its count to given consumer, in no particular order
+     *
+     * @param consumer Receives IP and count
+     */
+    public void forEach(IpCountConsumer consumer)
+    {
+        for (int i = 0; i < used.length; i++) {
+            if (used[i]) {
+                consumer.accept(highs[i], lows[i], counts[i]);
+            }
+        }
+    }
+
+    /**
+     * Get IPs having count above given threshold
+     *
+     * @param threshold Count threshold
+     * @return New map holding IPs having count greater than threshold
+     */
+    public IpCountMap aboveThreshold(int threshold)
+    {
+        IpCountMap map = new IpCountMap();
+        forEach((long high, long low, int count) -> {
+            if (count > threshold) {
+                map.add(high, low, count);
+            }
+        });
+
+        return map;
+    }
+
+    /**
+     * Convert this map to IP text keyed map
+     *
+     * @return Map of IP text, the same as INET6_NTOA() returns, to count
+     */
+    public Map<String, Integer> toMap()
+    {
+        Map<String, Integer> map = new HashMap<>();
+        forEach((long high, long low, int count) -> map.put(IpAddress.toString(high, low), count));
+
+        return map;
+    }
+
+    /**
+     * Find slot holding given IP or empty slot it should be put to
+     */
+    private int find(long high, long low)
+    {
+        int slot = hash(high, low) & mask;
+        while (used[slot] && (highs[slot] != high || lows[slot] != low)) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Remove given slot, shifting back following entries of the same probe sequence
+     */
+    private void removeSlot(int slot)
+    {
+        int gap = slot;
+        int i = slot;
+        while (true) {
+            i = (i + 1) & mask;
+            if (!used[i]) {
+                break;
+            }
+
+            // move entry to the gap unless its home slot lies cyclically in (gap, i]
+            int home = hash(highs[i], lows[i]) & mask;
+            if (gap <= i ? gap < home && home <= i : gap < home || home <= i) {
+                continue;
+            }
+
+            highs[gap] = highs[i];
+            lows[gap] = lows[i];
+            counts[gap] = counts[i];
+            gap = i;
+        }
+
+        used[gap] = false;
+        size--;
+    }
+
+    private void rehash(int capacity)
+    {
+        long[] oldHighs = highs;
+        long[] oldLows = lows;
+        int[] oldCounts = counts;
+        boolean[] oldUsed = used;
+
+        allocate(capacity);
+
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) {
+                int slot = find(oldHighs[i], oldLows[i]);
+                used[slot] = true;
+                highs[slot] = oldHighs[i];
+                lows[slot] = oldLows[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity)
+    {
+        highs = new long[capacity];
+        lows = new long[capacity];
+        counts = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int hash(long high, long low)
+    {
+        long h = high * 0x9E37_79B9_7F4A_7C15L ^ low;
+        h ^= h >>> 33;
+        h *= 0xFF51_AFD7_ED55_8CCDL;
+        h ^= h >>> 33;
+
+        return (int) h;
+    }
+
+    /**
+     * Receives IP address and its count
+     */
+    @FunctionalInterface
+    public interface IpCountConsumer
+    {
+
+        void accept(long high, long low, int count);
+    }
+}
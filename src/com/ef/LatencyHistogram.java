@@ -0,0 +1,102 @@
+package com.ef;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of operation latencies. Bucket i counts latencies of [2^(i-1), 2^i) microseconds, so any
+ * latency from a microsecond to hours is kept in 40 counters, and percentiles are accurate within a factor of two.
+ */
+public class LatencyHistogram
+{
+
+    private static final int BUCKETS = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Record latency of a single operation
+     *
+     * @param nanos Latency in nanoseconds
+     */
+    public void record(long nanos)
+    {
+        long micros = Math.max(nanos, 0) / 1_000;
+        int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+
+        long max;
+        while ((max = maxNanos.get()) < nanos && !maxNanos.compareAndSet(max, nanos)) {
+            // retry until max is updated or another thread recorded a higher latency
+        }
+    }
+
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    public double getMeanMillis()
+    {
+        long cnt = count.get();
+        return cnt == 0 ? 0 : totalNanos.get() / 1e6 / cnt;
+    }
+
+    public double getMaxMillis()
+    {
+        return maxNanos.get() / 1e6;
+    }
+
+    /**
+     * Get latency not exceeded by given share of operations
+     *
+     * @param percentile Share of operations, from 0 to 100
+     * @return Upper bound of latency bucket the percentile falls into, in milliseconds; 0 if nothing was recorded
+     */
+    public double getPercentileMillis(double percentile)
+    {
+        long cnt = count.get();
+        if (cnt == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(cnt * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min((1L << i) / 1e3, getMaxMillis());
+            }
+        }
+
+        return getMaxMillis();
+    }
+
+    /**
+     * Forget all recorded latencies
+     */
+    public void reset()
+    {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format(
+            "count=%d mean=%.3fms p50=%.3fms p99=%.3fms max=%.3fms",
+            getCount(), getMeanMillis(), getPercentileMillis(50), getPercentileMillis(99), getMaxMillis()
+        );
+    }
+}
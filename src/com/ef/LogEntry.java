@@ -15,7 +15,7 @@ public class LogEntry
 
     public void setDate(String dateStr)
     {        
-        this.date = LocalDateTime.parse(dateStr, formatter);
+        this.date = TimestampParser.parse(dateStr);
     }
     
     public String getFormattedDate()
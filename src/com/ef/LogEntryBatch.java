@@ -0,0 +1,207 @@
+package com.ef;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Chunk of log entries kept column by column in primitive arrays instead of one LogEntry object per line: date as
+ * epoch millis (UTC), IP as the two longs of IpAddress, status as a short. Request and user agent are references to
+ * Strings shared through StringInterner, so repeating values cost a reference per row.
+ *
+ * A parsed line takes about 40 bytes plus its distinct Strings, compared to a LogEntry with its LocalDateTime and IP
+ * String taking well over 150 bytes. Handlers aware of this class (ThresholdCounter, SlidingWindowDetector,
+ * ColumnarLogWriter, ...) read the columns directly. For all others it is a read-only List of LogEntry: get() creates
+ * a LogEntry view of a row, so changes made to it are not reflected in the batch. IP of a view is in canonical text
+ * form, see IpAddress.toString().
+ */
+public final class LogEntryBatch extends AbstractList<LogEntry> implements RandomAccess
+{
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] epochMillis;
+    private long[] ipHighs;
+    private long[] ipLows;
+    private short[] statuses;
+    private String[] requests;
+    private String[] userAgents;
+    private int size;
+
+    public LogEntryBatch()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Expected number of rows
+     */
+    public LogEntryBatch(int capacity)
+    {
+        allocate(Math.max(capacity, 1));
+    }
+
+    /**
+     * Append a row
+     *
+     * @param epochMillis Request date as milliseconds since epoch (UTC)
+     * @param ipHigh Upper 64 bits of IP address
+     * @param ipLow Lower 64 bits of IP address
+     * @param request Request, may be null
+     * @param status HTTP status
+     * @param userAgent User agent, may be null
+     * @throws IllegalArgumentException If status is invalid, same as LogEntry.setStatus()
+     */
+    public void add(long epochMillis, long ipHigh, long ipLow, String request, int status, String userAgent)
+    {
+        if (status < 1 || status > 1_000) {
+            throw new IllegalArgumentException("HTTP Status is invalid.");
+        }
+
+        if (size == statuses.length) {
+            grow();
+        }
+
+        this.epochMillis[size] = epochMillis;
+        ipHighs[size] = ipHigh;
+        ipLows[size] = ipLow;
+        statuses[size] = (short) status;
+        requests[size] = request;
+        userAgents[size] = userAgent;
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Append a row holding given item
+     *
+     * @param item Item to copy
+     * @return true
+     * @throws IllegalArgumentException If IP of item is not a valid IP address
+     */
+    @Override
+    public boolean add(LogEntry item)
+    {
+        IpAddress ip = IpAddress.parse(item.ip);
+        add(TimestampParser.toEpochMillis(item.date), ip.high, ip.low, item.request, item.getStatus(), item.userAgent);
+
+        return true;
+    }
+
+    /**
+     * Get LogEntry view of given row
+     *
+     * @param index Row index
+     * @return New LogEntry holding values of given row
+     */
+    @Override
+    public LogEntry get(int index)
+    {
+        checkIndex(index);
+
+        LogEntry item = new LogEntry();
+        item.date = TimestampParser.toLocalDateTime(epochMillis[index]);
+        item.ip = IpAddress.toString(ipHighs[index], ipLows[index]);
+        item.request = requests[index];
+        item.setStatus(statuses[index]);
+        item.userAgent = userAgents[index];
+
+        return item;
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    public long getEpochMillis(int index)
+    {
+        checkIndex(index);
+        return epochMillis[index];
+    }
+
+    public long getIpHigh(int index)
+    {
+        checkIndex(index);
+        return ipHighs[index];
+    }
+
+    public long getIpLow(int index)
+    {
+        checkIndex(index);
+        return ipLows[index];
+    }
+
+    public String getRequest(int index)
+    {
+        checkIndex(index);
+        return requests[index];
+    }
+
+    public int getStatus(int index)
+    {
+        checkIndex(index);
+        return statuses[index];
+    }
+
+    public String getUserAgent(int index)
+    {
+        checkIndex(index);
+        return userAgents[index];
+    }
+
+    /**
+     * Copy given range of rows into a new batch, e.g. to split a batch into smaller chunks
+     *
+     * @param from Range start index, inclusive
+     * @param to Range end index, exclusive
+     * @return New batch holding rows of given range
+     */
+    public LogEntryBatch slice(int from, int to)
+    {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") is out of [0, " + size + ")");
+        }
+
+        LogEntryBatch batch = new LogEntryBatch(to - from);
+        System.arraycopy(epochMillis, from, batch.epochMillis, 0, to - from);
+        System.arraycopy(ipHighs, from, batch.ipHighs, 0, to - from);
+        System.arraycopy(ipLows, from, batch.ipLows, 0, to - from);
+        System.arraycopy(statuses, from, batch.statuses, 0, to - from);
+        System.arraycopy(requests, from, batch.requests, 0, to - from);
+        System.arraycopy(userAgents, from, batch.userAgents, 0, to - from);
+        batch.size = to - from;
+
+        return batch;
+    }
+
+    private void checkIndex(int index)
+    {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+    }
+
+    private void allocate(int capacity)
+    {
+        epochMillis = new long[capacity];
+        ipHighs = new long[capacity];
+        ipLows = new long[capacity];
+        statuses = new short[capacity];
+        requests = new String[capacity];
+        userAgents = new String[capacity];
+    }
+
+    private void grow()
+    {
+        int capacity = statuses.length * 2;
+
+        epochMillis = Arrays.copyOf(epochMillis, capacity);
+        ipHighs = Arrays.copyOf(ipHighs, capacity);
+        ipLows = Arrays.copyOf(ipLows, capacity);
+        statuses = Arrays.copyOf(statuses, capacity);
+        requests = Arrays.copyOf(requests, capacity);
+        userAgents = Arrays.copyOf(userAgents, capacity);
+    }
+}
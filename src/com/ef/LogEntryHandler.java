@@ -0,0 +1,21 @@
+package com.ef;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Receives parsed log entries chunk by chunk, so that a log file never has to be held in memory as a whole
+ */
+@FunctionalInterface
+public interface LogEntryHandler
+{
+
+    /**
+     * Handle next chunk of parsed log entries
+     *
+     * @param entries Chunk of LogEntry items in log file order. Handler is free to keep the list.
+     * @throws SQLException
+     */
+    void handle(List<LogEntry> entries)
+        throws SQLException;
+}
@@ -0,0 +1,30 @@
+package com.ef;
+
+import java.sql.SQLException;
+
+/**
+ * LogEntryHandler writing entries to some storage. Entries handled before close() are guaranteed to be stored once
+ * close() returns without an exception. If producing entries fails, abort() instead of close() keeps pending entries
+ * from being stored.
+ */
+public interface LogEntrySink extends LogEntryHandler, AutoCloseable
+{
+
+    /**
+     * Store all pending entries and release resources
+     *
+     * @throws SQLException
+     */
+    @Override
+    void close()
+        throws SQLException;
+
+    /**
+     * Release resources without storing pending entries, e.g. because parsing has failed. Entries stored before, e.g.
+     * committed every commit interval, are kept.
+     *
+     * @throws SQLException
+     */
+    void abort()
+        throws SQLException;
+}
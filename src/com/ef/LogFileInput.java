@@ -0,0 +1,198 @@
+package com.ef;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens plain and compressed log files and resolves lists of log files, e.g. a set of rotated logs.
+ * Compression is detected by file content, not by its name. Gzip is always supported, zstd only if one of
+ * ZSTD_DECODERS is on the classpath (e.g. the pure-Java decoder of aircompressor).
+ */
+public class LogFileInput
+{
+
+    /**
+     * Decoders of zstd input, tried in order. Each must have a public constructor taking an InputStream.
+     */
+    public static final String[] ZSTD_DECODERS = {
+        "io.airlift.compress.zstd.ZstdInputStream", "com.github.luben.zstd.ZstdInputStream"
+    };
+
+    public enum Compression
+    {
+        NONE, GZIP, ZSTD
+    }
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private LogFileInput()
+    {
+    }
+
+    /**
+     * Detect compression of given file by its first bytes
+     *
+     * @param path Log file
+     * @return Compression of file, NONE for plain and empty files
+     * @throws IOException If file can not be read
+     */
+    public static Compression detect(Path path)
+        throws IOException
+    {
+        ByteBuffer magic = ByteBuffer.allocate(4);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // read until 4 bytes are read or file ends
+            }
+        }
+
+        if (magic.position() >= 2 && (magic.get(0) & 0xff) == 0x1f && (magic.get(1) & 0xff) == 0x8b) {
+            return Compression.GZIP;
+        }
+        if (magic.position() == 4 && magic.getInt(0) == 0x28b52ffd) {
+            return Compression.ZSTD;
+        }
+
+        return Compression.NONE;
+    }
+
+    /**
+     * Open given log file for reading lines, decompressing it if needed. Compressed file is decompressed on a separate
+     * thread (see ReadAheadInputStream), so decompression overlaps with parsing of lines read.
+     *
+     * @param path Log file, plain, gzip or zstd compressed
+     * @return Reader of UTF-8 lines of (decompressed) file, to be closed by the caller
+     * @throws IOException If file can not be read, or it is zstd compressed and no zstd decoder is available
+     */
+    public static BufferedReader newReader(Path path)
+        throws IOException
+    {
+        Compression compression = detect(path);
+        if (compression == Compression.NONE) {
+            return Files.newBufferedReader(path, StandardCharsets.UTF_8);
+        }
+
+        InputStream file = Files.newInputStream(path);
+        try {
+            InputStream decompressed = compression == Compression.GZIP
+                ? new GZIPInputStream(file, GZIP_BUFFER_SIZE)
+                : newZstdInputStream(file);
+            InputStream readAhead = new ReadAheadInputStream(decompressed, "log-decompress");
+
+            return new BufferedReader(new InputStreamReader(readAhead, StandardCharsets.UTF_8.newDecoder()));
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Resolve given list of log files. Each comma-separated item is either a file path or a glob pattern matching
+     * names of files in a directory, e.g. "/var/log/access.log*". Directory part of a pattern can not hold wildcards.
+     *
+     * @param spec Comma-separated file paths and glob patterns
+     * @return Resolved files in the order of given items, files matching a pattern in name order
+     * @throws IllegalArgumentException If a pattern matches no files
+     */
+    public static List<Path> resolve(String spec)
+    {
+        List<Path> paths = new ArrayList<>();
+        for (String item : spec.split(",")) {
+            item = item.trim();
+            if (item.isEmpty()) {
+                continue;
+            }
+
+            if (!isGlob(item)) {
+                paths.add(Paths.get(item));
+                continue;
+            }
+
+            Path pattern = Paths.get(item);
+            Path dir = pattern.getParent() != null ? pattern.getParent() : Paths.get(".");
+            List<Path> matched = new ArrayList<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, pattern.getFileName().toString())) {
+                for (Path file : files) {
+                    if (Files.isRegularFile(file)) {
+                        matched.add(file);
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Unable to list log files matching " + item + ".", e);
+            }
+            if (matched.isEmpty()) {
+                throw new IllegalArgumentException("No log files match " + item + ".");
+            }
+
+            matched.sort(null);
+            paths.addAll(matched);
+        }
+
+        if (paths.isEmpty()) {
+            throw new IllegalArgumentException("No log files given.");
+        }
+
+        return paths;
+    }
+
+    private static boolean isGlob(String item)
+    {
+        for (char c : new char[]{'*', '?', '[', '{'}) {
+            if (item.indexOf(c) >= 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Create zstd decoder of given stream using the first decoder of ZSTD_DECODERS found on the classpath
+     *
+     * @param in Compressed stream
+     * @return Decompressed stream
+     * @throws IOException If no decoder is available or it fails to read stream header
+     */
+    private static InputStream newZstdInputStream(InputStream in)
+        throws IOException
+    {
+        for (String className : ZSTD_DECODERS) {
+            Class<?> decoder;
+            try {
+                decoder = Class.forName(className);
+            } catch (ClassNotFoundException e) {
+                continue;
+            }
+
+            try {
+                return (InputStream) decoder.getConstructor(InputStream.class).newInstance(in);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Unable to create zstd decoder " + className + ".", e.getCause());
+            } catch (ReflectiveOperationException e) {
+                throw new IOException("Unable to create zstd decoder " + className + ".", e);
+            }
+        }
+
+        throw new IOException(
+            "Log file is zstd compressed, but no zstd decoder is available. Please add one of "
+            + String.join(", ", ZSTD_DECODERS) + " to the classpath."
+        );
+    }
+}
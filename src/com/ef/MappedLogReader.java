@@ -0,0 +1,345 @@
+package com.ef;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+
+/**
+ * Parses log file directly from memory-mapped bytes, without decoding whole lines into Strings.
+ * Files larger than a single mapping are mapped window by window, each window ending on a line break.
+ * Lines are parsed straight into LogEntryBatch chunks.
+ */
+public class MappedLogReader
+{
+
+    /**
+     * Max size of mapped file window. Must stay below 2 GB (the limit of a single mapping).
+     */
+    public static final int WINDOW_SIZE = 256 * 1024 * 1024;
+
+    private final ParserModel model;
+    private final int windowSize;
+    private final ParseErrorBudget errors;
+
+    /**
+     * @param model Parses single lines of log file
+     */
+    public MappedLogReader(ParserModel model)
+    {
+        this(model, WINDOW_SIZE);
+    }
+
+    /**
+     * @param model Parses single lines of log file
+     * @param windowSize Max size of mapped file window
+     */
+    MappedLogReader(ParserModel model, int windowSize)
+    {
+        this(model, windowSize, null);
+    }
+
+    /**
+     * @param model Parses single lines of log file
+     * @param windowSize Max size of mapped file window
+     * @param errors Collects malformed lines if parsing is lenient, null to fail on the first malformed line
+     */
+    MappedLogReader(ParserModel model, int windowSize, ParseErrorBudget errors)
+    {
+        this.model = model;
+        this.windowSize = windowSize;
+        this.errors = errors;
+    }
+
+    /**
+     * Parse given log file and feed LogEntry items to given handler in chunks of at most chunkSize items
+     *
+     * @param path Log file to parse
+     * @param chunkSize Max number of LogEntry items passed to handler at once
+     * @param handler Receives chunks of LogEntry items in log file order
+     * @throws IOException If file can not be read
+     * @throws SQLException If handler fails to process a chunk
+     */
+    public void parse(Path path, int chunkSize, LogEntryHandler handler)
+        throws IOException, SQLException
+    {
+        parse(path, 0, Long.MAX_VALUE, chunkSize, handler);
+    }
+
+    /**
+     * Parse given byte range of log file and feed LogEntry items to given handler in chunks of at most chunkSize items
+     *
+     * @param path Log file to parse
+     * @param start Range start position, inclusive. Must be a line start.
+     * @param end Range end position, exclusive. Must be a line start, anything beyond file size means end of file.
+     * @param chunkSize Max number of LogEntry items passed to handler at once
+     * @param handler Receives chunks of LogEntry items in log file order
+     * @throws IOException If file can not be read
+     * @throws SQLException If handler fails to process a chunk
+     */
+    public void parse(Path path, long start, long end, int chunkSize, LogEntryHandler handler)
+        throws IOException, SQLException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = Math.min(end, channel.size());
+            long position = start;
+
+            ByteSequence line = new ByteSequence();
+            ParserModel.LineParser lineParser = model.newLineParser(errors, start);
+            LogEntryBatch chunk = new LogEntryBatch(chunkSize);
+
+            while (position < size) {
+                int length = (int) Math.min(windowSize, size - position);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+                // the last line of a window may continue in the next one, leave it to the next window
+                int windowEnd = length;
+                if (position + length < size) {
+                    windowEnd = lastLineBreak(buffer, length) + 1;
+                    if (windowEnd == 0) {
+                        throw new IOException(
+                            "Line starting at position " + position + " is longer than " + windowSize + " bytes."
+                        );
+                    }
+                }
+
+                int from = 0;
+                while (from < windowEnd) {
+                    int next = nextLine(buffer, from, windowEnd);
+                    lineParser.parse(line.reset(buffer, from, lineLength(buffer, from, next)), chunk);
+
+                    if (chunk.size() == chunkSize) {
+                        handler.handle(chunk);
+                        chunk = new LogEntryBatch(chunkSize);
+                    }
+                    from = next;
+                }
+
+                position += windowEnd;
+            }
+            lineParser.finish();
+
+            if (!chunk.isEmpty()) {
+                handler.handle(chunk);
+            }
+        }
+    }
+
+    /**
+     * Parse all lines of given byte range of a log file
+     *
+     * @param model Parses single lines of log file
+     * @param channel Log file
+     * @param start Range start position, inclusive. Must be a line start.
+     * @param end Range end position, exclusive. Must be a line start or end of file.
+     * @param errors Collects malformed lines if parsing is lenient, null to fail on the first malformed line
+     * @return Parsed items in file order
+     * @throws IOException If file can not be mapped
+     */
+    static LogEntryBatch parseRange(ParserModel model, FileChannel channel, long start, long end,
+        ParseErrorBudget errors)
+        throws IOException
+    {
+        int length = (int) (end - start);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+
+        ByteSequence line = new ByteSequence();
+        ParserModel.LineParser lineParser = model.newLineParser(errors, start);
+        LogEntryBatch list = new LogEntryBatch();
+
+        int from = 0;
+        while (from < length) {
+            int next = nextLine(buffer, from, length);
+            lineParser.parse(line.reset(buffer, from, lineLength(buffer, from, next)), list);
+            from = next;
+        }
+        lineParser.finish();
+
+        return list;
+    }
+
+    /**
+     * Find start of the line following the line starting at given index
+     *
+     * @param buffer Bytes to look in
+     * @param from Line start index
+     * @param limit Index to stop looking at
+     * @return Index right after line break or limit if there is no line break
+     */
+    static int nextLine(ByteBuffer buffer, int from, int limit)
+    {
+        for (int i = from; i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+
+        return limit;
+    }
+
+    /**
+     * Get length of line without its line break
+     *
+     * @param buffer Bytes holding line
+     * @param from Line start index
+     * @param next Start index of the following line
+     * @return Number of bytes in line, not counting "\n" or "\r\n"
+     */
+    static int lineLength(ByteBuffer buffer, int from, int next)
+    {
+        int to = next;
+        if (to > from && buffer.get(to - 1) == '\n') {
+            to--;
+        }
+        if (to > from && buffer.get(to - 1) == '\r') {
+            to--;
+        }
+
+        return to - from;
+    }
+
+    /**
+     * Count line breaks of given byte range of a file
+     *
+     * @param channel File
+     * @param start Range start position, inclusive
+     * @param end Range end position, exclusive
+     * @return Number of line breaks
+     * @throws IOException
+     */
+    static long countLines(FileChannel channel, long start, long end)
+        throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long lines = 0;
+        long position = start;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    lines++;
+                }
+            }
+            position += read;
+        }
+
+        return lines;
+    }
+
+    /**
+     * Find position right after the last line break of given file, i.e. the end of its last complete line
+     *
+     * @param channel Log file
+     * @param start Position to stop looking at
+     * @return End of last complete line or start if there is no line break after start
+     * @throws IOException
+     */
+    static long findCompleteLinesEnd(FileChannel channel, long start)
+        throws IOException
+    {
+        return findCompleteLinesEnd(channel, start, Long.MAX_VALUE);
+    }
+
+    /**
+     * Find end of the last complete line of given file ending at or before given limit. If the line starting at
+     * start is longer than that, end of that line instead.
+     *
+     * @param channel Log file
+     * @param start Position to stop looking at
+     * @param limit Max position to return, unless a single line is longer
+     * @return End of last complete line or start if there is no line break after start
+     * @throws IOException
+     */
+    static long findCompleteLinesEnd(FileChannel channel, long start, long limit)
+        throws IOException
+    {
+        long size = channel.size();
+        long end = findLastLineEnd(channel, start, Math.min(size, limit));
+        if (end > start || limit >= size) {
+            return end;
+        }
+
+        // the first line does not end before limit, look for its end after it
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long position = limit;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+
+            int i = nextLine(buffer, 0, read);
+            if (i < read || buffer.get(read - 1) == '\n') {
+                return position + i;
+            }
+            position += read;
+        }
+
+        return start;
+    }
+
+    /**
+     * Find position right after the last line break between given positions
+     *
+     * @param channel Log file
+     * @param start Position to stop looking at
+     * @param end Position to start looking at, backwards
+     * @return End of last complete line or start if there is no line break between positions
+     * @throws IOException
+     */
+    private static long findLastLineEnd(FileChannel channel, long start, long end)
+        throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long position = end;
+
+        while (position > start) {
+            int length = (int) Math.min(buffer.capacity(), position - start);
+            buffer.clear().limit(length);
+            int read = 0;
+            while (read < length) {
+                int n = channel.read(buffer, position - length + read);
+                if (n < 0) {
+                    throw new IOException("Log file was truncated while being read.");
+                }
+                read += n;
+            }
+
+            int i = lastLineBreak(buffer, length);
+            if (i >= 0) {
+                return position - length + i + 1;
+            }
+            position -= length;
+        }
+
+        return start;
+    }
+
+    /**
+     * Find the last line break of given bytes
+     *
+     * @param buffer Bytes to look in
+     * @param length Number of bytes to look in
+     * @return Index of the last line break or -1 if there is none
+     */
+    private static int lastLineBreak(ByteBuffer buffer, int length)
+    {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
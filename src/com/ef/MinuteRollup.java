@@ -0,0 +1,129 @@
+package com.ef;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-IP per-minute request counts of LogEntry items being written to ip_activity_logs, added to ip_activity_counts
+ * rollup table in the same transaction as the rows themselves. Threshold queries then sum a row per IP and minute
+ * instead of counting every request, see ParserModel.findAboveThresholdIPCounts().
+ */
+public class MinuteRollup
+{
+
+    private static final long MILLIS_PER_MINUTE = 60_000;
+
+    private static final String UPSERT_QUERY
+        = "INSERT INTO ip_activity_counts (minute, ip, cnt) VALUES (?, ?, ?)"
+        + " ON DUPLICATE KEY UPDATE cnt = cnt + VALUES(cnt)";
+
+    /**
+     * Counts by epoch minute, sorted so that rollup rows are always locked in the same order
+     */
+    private final TreeMap<Long, IpCountMap> minutes = new TreeMap<>();
+    private final long[] parsed = new long[2];
+
+    /**
+     * Counts of the last added minute, consecutive items mostly share it
+     */
+    private long lastMinute;
+    private IpCountMap lastCounts;
+
+    /**
+     * Count request of given item
+     *
+     * @param item Item being written to ip_activity_logs
+     */
+    public void add(LogEntry item)
+    {
+        IpAddress.parse(item.ip, parsed);
+        add(TimestampParser.toEpochMillis(item.date), parsed[0], parsed[1]);
+    }
+
+    /**
+     * Count request of given date and IP, e.g. of a LogEntryBatch row
+     *
+     * @param epochMillis Request date as milliseconds since epoch (UTC)
+     * @param ipHigh Upper 64 bits of IP address
+     * @param ipLow Lower 64 bits of IP address
+     */
+    public void add(long epochMillis, long ipHigh, long ipLow)
+    {
+        long minute = Math.floorDiv(epochMillis, MILLIS_PER_MINUTE);
+
+        if (lastCounts == null || minute != lastMinute) {
+            lastCounts = minutes.get(minute);
+            if (lastCounts == null) {
+                lastCounts = new IpCountMap();
+                minutes.put(minute, lastCounts);
+            }
+            lastMinute = minute;
+        }
+
+        lastCounts.add(ipHigh, ipLow, 1);
+    }
+
+    /**
+     * Add counts to ip_activity_counts within the current transaction of given connection and reset them.
+     * Caller commits the transaction together with the counted rows.
+     *
+     * @param conn Connection rows are written with
+     * @param batchSize Number of rollup rows sent to database at once
+     * @throws SQLException
+     */
+    public void write(Connection conn, int batchSize)
+        throws SQLException
+    {
+        if (minutes.isEmpty()) {
+            return;
+        }
+
+        try (PreparedStatement ps = conn.prepareStatement(UPSERT_QUERY)) {
+            int[] batched = new int[1];
+            SQLException[] error = new SQLException[1];
+
+            for (Map.Entry<Long, IpCountMap> entry : minutes.entrySet()) {
+                String minute = LogEntry.formatter.format(toLocalDateTime(entry.getKey()));
+
+                entry.getValue().forEach((long high, long low, int cnt) -> {
+                    if (error[0] != null) {
+                        return;
+                    }
+                    try {
+                        ps.setObject(1, minute);
+                        ps.setBytes(2, IpAddress.toBytes(high, low));
+                        ps.setInt(3, cnt);
+                        ps.addBatch();
+
+                        if (++batched[0] == batchSize) {
+                            ps.executeBatch();
+                            batched[0] = 0;
+                        }
+                    } catch (SQLException e) {
+                        error[0] = e;
+                    }
+                });
+
+                if (error[0] != null) {
+                    throw error[0];
+                }
+            }
+
+            if (batched[0] > 0) {
+                ps.executeBatch();
+            }
+        }
+
+        minutes.clear();
+        lastCounts = null;
+    }
+
+    private static LocalDateTime toLocalDateTime(long minute)
+    {
+        return TimestampParser.toLocalDateTime(minute * MILLIS_PER_MINUTE);
+    }
+}
@@ -0,0 +1,182 @@
+package com.ef;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parses a set of log files (e.g. rotated, possibly compressed logs) concurrently, one file per worker thread.
+ * Each file is read line by line, see LogFileInput.newReader(). Parsed chunks are passed to the handler on the calling
+ * thread in the order they are parsed, so handler never runs concurrently, but chunks of different files interleave.
+ */
+public class MultiFileLogParser
+{
+
+    private static final int CHUNKS_PER_THREAD_IN_FLIGHT = 2;
+
+    /**
+     * Marks the end of a single file in the queue of parsed chunks
+     */
+    private static final LogEntryBatch END = new LogEntryBatch(0);
+
+    private final ParserModel model;
+    private final int threads;
+
+    /**
+     * @param model Parses single lines of log files
+     * @param threads Max number of files parsed at once
+     */
+    public MultiFileLogParser(ParserModel model, int threads)
+    {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive, actual: " + threads);
+        }
+
+        this.model = model;
+        this.threads = threads;
+    }
+
+    /**
+     * Parse given log files and feed LogEntry items to given handler in chunks of at most chunkSize items
+     *
+     * @param paths Log files to parse
+     * @param chunkSize Max number of LogEntry items passed to handler at once
+     * @param handler Receives chunks of LogEntry items
+     * @throws IOException If a file can not be read
+     * @throws SQLException If handler fails to process a chunk
+     */
+    public void parse(List<Path> paths, int chunkSize, LogEntryHandler handler)
+        throws IOException, SQLException
+    {
+        parse(paths, Collections.nCopies(paths.size(), null), chunkSize, handler);
+    }
+
+    /**
+     * Parse given log files and feed LogEntry items to given handler in chunks of at most chunkSize items
+     *
+     * @param paths Log files to parse
+     * @param errors Collector of malformed lines of each file if parsing is lenient, null items to fail on the first
+     * malformed line
+     * @param chunkSize Max number of LogEntry items passed to handler at once
+     * @param handler Receives chunks of LogEntry items
+     * @throws IOException If a file can not be read
+     * @throws SQLException If handler fails to process a chunk
+     */
+    void parse(List<Path> paths, List<ParseErrorBudget> errors, int chunkSize, LogEntryHandler handler)
+        throws IOException, SQLException
+    {
+        int poolSize = Math.min(threads, paths.size());
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(poolSize, 1), (Runnable r) -> {
+            Thread thread = new Thread(r, "log-file-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // workers block once the queue is full, so at most this many parsed chunks are held in memory
+        BlockingQueue<LogEntryBatch> queue = new ArrayBlockingQueue<>(poolSize * CHUNKS_PER_THREAD_IN_FLIGHT + 1);
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < paths.size(); i++) {
+                Path path = paths.get(i);
+                ParseErrorBudget fileErrors = errors.get(i);
+                futures.add(pool.submit(() -> {
+                    try {
+                        model.parseLines(path, chunkSize, fileErrors, chunk -> put(queue, (LogEntryBatch) chunk));
+                    } catch (IOException e) {
+                        throw new IOException("Unable to read log file " + path + ". " + e.getMessage(), e);
+                    } finally {
+                        queue.put(END);
+                    }
+                    return null;
+                }));
+            }
+
+            int remaining = paths.size();
+            while (remaining > 0) {
+                LogEntryBatch chunk = take(queue);
+                if (chunk != END) {
+                    handler.handle(chunk);
+                    continue;
+                }
+
+                // fail as soon as any file fails, not when all other files are parsed
+                remaining--;
+                for (Future<?> future : futures) {
+                    if (future.isDone()) {
+                        await(future);
+                    }
+                }
+            }
+
+            for (Future<?> future : futures) {
+                await(future);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Queue given chunk, waiting for space in the queue. Runs on worker thread.
+     *
+     * @param queue Queue of parsed chunks
+     * @param chunk Parsed chunk
+     */
+    private static void put(BlockingQueue<LogEntryBatch> queue, LogEntryBatch chunk)
+    {
+        try {
+            queue.put(chunk);
+        } catch (InterruptedException e) {
+            // parsing was stopped, nobody waits for the chunk
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for parsed chunk to be processed.", e);
+        }
+    }
+
+    private static LogEntryBatch take(BlockingQueue<LogEntryBatch> queue)
+        throws IOException
+    {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for log files to be parsed.", e);
+        }
+    }
+
+    /**
+     * Wait for given file task to complete
+     *
+     * @param future File task
+     * @throws IOException If file could not be read
+     */
+    private static void await(Future<?> future)
+        throws IOException
+    {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for log files to be parsed.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IllegalStateException("Unable to parse log file.", cause);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.ef;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Counts requests per IP for many windows at once. Window start and end dates split time into segments; requests are
+ * counted once per segment and counts of each window are summed up from the segments it covers, so overlapping or
+ * adjacent windows (e.g. every hour of a day) need a single pass over log entries or a single database query.
+ */
+public class MultiWindowCounter implements LogEntryHandler
+{
+
+    private final List<ThresholdWindow> windows;
+
+    /**
+     * Sorted distinct window start and end dates, segment i is [boundaries[i], boundaries[i + 1])
+     */
+    private final LocalDateTime[] boundaries;
+    private final long[] boundaryMillis;
+
+    /**
+     * Segments covered by window i are [windowFrom[i], windowTo[i])
+     */
+    private final int[] windowFrom;
+    private final int[] windowTo;
+
+    private final IpCountMap[] segments;
+
+    /**
+     * @param windows Windows to count requests for
+     * @param endDates End date of each window, exclusive
+     */
+    public MultiWindowCounter(List<ThresholdWindow> windows, List<LocalDateTime> endDates)
+    {
+        if (windows.size() != endDates.size()) {
+            throw new IllegalArgumentException("Expected end date of each window.");
+        }
+
+        this.windows = new ArrayList<>(windows);
+
+        TreeSet<LocalDateTime> dates = new TreeSet<>(endDates);
+        for (ThresholdWindow window : windows) {
+            dates.add(window.getStartDate());
+        }
+        boundaries = dates.toArray(new LocalDateTime[0]);
+        boundaryMillis = new long[boundaries.length];
+        for (int i = 0; i < boundaries.length; i++) {
+            boundaryMillis[i] = TimestampParser.toEpochMillis(boundaries[i]);
+        }
+
+        windowFrom = new int[windows.size()];
+        windowTo = new int[windows.size()];
+        segments = new IpCountMap[Math.max(boundaries.length - 1, 0)];
+
+        for (int i = 0; i < windows.size(); i++) {
+            windowFrom[i] = Arrays.binarySearch(boundaries, windows.get(i).getStartDate());
+            windowTo[i] = Math.max(Arrays.binarySearch(boundaries, endDates.get(i)), windowFrom[i]);
+
+            // segments between windows stay null and are not counted
+            for (int segment = windowFrom[i]; segment < windowTo[i]; segment++) {
+                if (segments[segment] == null) {
+                    segments[segment] = new IpCountMap();
+                }
+            }
+        }
+    }
+
+    /**
+     * Count requests of given entries which are within any of windows
+     *
+     * @param entries Chunk of parsed LogEntry items
+     */
+    @Override
+    public void handle(List<LogEntry> entries)
+    {
+        if (entries instanceof LogEntryBatch) {
+            LogEntryBatch batch = (LogEntryBatch) entries;
+            for (int i = 0; i < batch.size(); i++) {
+                int segment = getSegment(batch.getEpochMillis(i));
+                if (segment >= 0 && segments[segment] != null) {
+                    segments[segment].add(batch.getIpHigh(i), batch.getIpLow(i), 1);
+                }
+            }
+            return;
+        }
+
+        for (LogEntry item : entries) {
+            int segment = getSegment(TimestampParser.toEpochMillis(item.date));
+            if (segment >= 0 && segments[segment] != null) {
+                segments[segment].increment(item.ip);
+            }
+        }
+    }
+
+    /**
+     * Get sorted distinct start and end dates of windows
+     *
+     * @return Boundaries of segments
+     */
+    public List<LocalDateTime> getBoundaries()
+    {
+        return Collections.unmodifiableList(Arrays.asList(boundaries));
+    }
+
+    /**
+     * Add given number of requests of given IP to given segment, e.g. when counts are grouped by a database query
+     *
+     * @param segment Segment index, requests within [boundaries[segment], boundaries[segment + 1])
+     * @param high Upper 64 bits of address
+     * @param low Lower 64 bits of address
+     * @param count Number of requests
+     */
+    public void add(int segment, long high, long low, int count)
+    {
+        if (segment >= 0 && segment < segments.length && segments[segment] != null) {
+            segments[segment].add(high, low, count);
+        }
+    }
+
+    /**
+     * Get IPs having more than threshold requests within each window among all requests counted so far
+     *
+     * @return Map of window to its IPs and their requests counts, in order windows were given
+     */
+    public Map<ThresholdWindow, IpCountMap> getAboveThresholdIPCounts()
+    {
+        Map<ThresholdWindow, IpCountMap> result = new LinkedHashMap<>();
+
+        for (int i = 0; i < windows.size(); i++) {
+            ThresholdWindow window = windows.get(i);
+            if (result.containsKey(window)) {
+                continue;
+            }
+
+            IpCountMap counts;
+            if (windowTo[i] - windowFrom[i] == 1) {
+                counts = segments[windowFrom[i]];
+            } else {
+                counts = new IpCountMap();
+                for (int segment = windowFrom[i]; segment < windowTo[i]; segment++) {
+                    counts.addAll(segments[segment]);
+                }
+            }
+
+            result.put(window, counts.aboveThreshold(window.getThreshold()));
+        }
+
+        return result;
+    }
+
+    /**
+     * Find segment given date belongs to
+     *
+     * @param epochMillis Request date as milliseconds since epoch (UTC)
+     * @return Segment index or -1 if date is outside of all windows
+     */
+    private int getSegment(long epochMillis)
+    {
+        int i = Arrays.binarySearch(boundaryMillis, epochMillis);
+        if (i < 0) {
+            // date is between boundaries, segment starts at the boundary before insertion point
+            i = -i - 2;
+        }
+
+        return i < segments.length ? i : -1;
+    }
+}
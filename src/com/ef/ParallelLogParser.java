@@ -0,0 +1,259 @@
+package com.ef;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parses single log file on a pool of worker threads.
+ * File is split into byte ranges ending right after a line break, each range is parsed by one of the workers and
+ * parsed LogEntry items are passed to the handler on the calling thread, so handler never runs concurrently.
+ */
+public class ParallelLogParser
+{
+
+    /**
+     * Approximate size of byte range parsed by one worker at once
+     */
+    public static final int RANGE_SIZE = 8 * 1024 * 1024;
+
+    private static final int RANGES_PER_THREAD_IN_FLIGHT = 2;
+
+    private final ParserModel model;
+    private final int threads;
+    private final boolean ordered;
+    private final int rangeSize;
+    private final ParseErrorBudget errors;
+
+    /**
+     * @param model Parses single lines of log file
+     * @param threads Number of worker threads
+     * @param ordered If true, handler receives items in log file order. Otherwise in order ranges are parsed.
+     */
+    public ParallelLogParser(ParserModel model, int threads, boolean ordered)
+    {
+        this(model, threads, ordered, RANGE_SIZE);
+    }
+
+    /**
+     * @param model Parses single lines of log file
+     * @param threads Number of worker threads
+     * @param ordered If true, handler receives items in log file order. Otherwise in order ranges are parsed.
+     * @param rangeSize Approximate size of byte range parsed by one worker at once
+     */
+    ParallelLogParser(ParserModel model, int threads, boolean ordered, int rangeSize)
+    {
+        this(model, threads, ordered, rangeSize, null);
+    }
+
+    /**
+     * @param model Parses single lines of log file
+     * @param threads Number of worker threads
+     * @param ordered If true, handler receives items in log file order. Otherwise in order ranges are parsed.
+     * @param rangeSize Approximate size of byte range parsed by one worker at once
+     * @param errors Collects malformed lines if parsing is lenient, null to fail on the first malformed line
+     */
+    ParallelLogParser(ParserModel model, int threads, boolean ordered, int rangeSize, ParseErrorBudget errors)
+    {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive, actual: " + threads);
+        }
+
+        this.model = model;
+        this.threads = threads;
+        this.ordered = ordered;
+        this.rangeSize = rangeSize;
+        this.errors = errors;
+    }
+
+    /**
+     * Parse given log file and feed LogEntry items to given handler in chunks of at most chunkSize items
+     *
+     * @param path Log file to parse
+     * @param chunkSize Max number of LogEntry items passed to handler at once
+     * @param handler Receives chunks of LogEntry items
+     * @throws IOException If file can not be read
+     * @throws SQLException If handler fails to process a chunk
+     */
+    public void parse(Path path, int chunkSize, LogEntryHandler handler)
+        throws IOException, SQLException
+    {
+        parse(path, 0, Long.MAX_VALUE, chunkSize, handler);
+    }
+
+    /**
+     * Parse given byte range of log file and feed LogEntry items to given handler in chunks of at most chunkSize items
+     *
+     * @param path Log file to parse
+     * @param start Range start position, inclusive. Must be a line start.
+     * @param end Range end position, exclusive. Must be a line start, anything beyond file size means end of file.
+     * @param chunkSize Max number of LogEntry items passed to handler at once
+     * @param handler Receives chunks of LogEntry items
+     * @throws IOException If file can not be read
+     * @throws SQLException If handler fails to process a chunk
+     */
+    public void parse(Path path, long start, long end, int chunkSize, LogEntryHandler handler)
+        throws IOException, SQLException
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, (Runnable r) -> {
+            Thread thread = new Thread(r, "log-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = Math.min(end, channel.size());
+            long position = start;
+            int maxInFlight = threads * RANGES_PER_THREAD_IN_FLIGHT;
+
+            // ranges are submitted as results are taken, so at most maxInFlight parsed ranges are held in memory
+            if (ordered) {
+                Deque<Future<LogEntryBatch>> inFlight = new ArrayDeque<>();
+                while (position < size || !inFlight.isEmpty()) {
+                    while (position < size && inFlight.size() < maxInFlight) {
+                        long rangeEnd = findRangeEnd(channel, position, size);
+                        inFlight.add(pool.submit(rangeTask(channel, position, rangeEnd)));
+                        position = rangeEnd;
+                    }
+
+                    deliver(await(inFlight.poll()), chunkSize, handler);
+                }
+            } else {
+                CompletionService<LogEntryBatch> completion = new ExecutorCompletionService<>(pool);
+                int inFlight = 0;
+                while (position < size || inFlight > 0) {
+                    while (position < size && inFlight < maxInFlight) {
+                        long rangeEnd = findRangeEnd(channel, position, size);
+                        completion.submit(rangeTask(channel, position, rangeEnd));
+                        inFlight++;
+                        position = rangeEnd;
+                    }
+
+                    try {
+                        deliver(await(completion.take()), chunkSize, handler);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for log file range to be parsed.", e);
+                    }
+                    inFlight--;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Find end of byte range starting at given position: position right after the first line break found at or after
+     * rangeSize bytes, or end of file
+     *
+     * @param channel Log file
+     * @param start Range start position
+     * @param size Log file size
+     * @return Range end position, exclusive
+     * @throws IOException
+     */
+    private long findRangeEnd(FileChannel channel, long start, long size)
+        throws IOException
+    {
+        long position = start + rangeSize - 1;
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+
+        return size;
+    }
+
+    /**
+     * Create task parsing lines of given byte range directly from mapped file bytes. Must be called in file order.
+     *
+     * @param channel Log file
+     * @param start Range start position, inclusive
+     * @param end Range end position, exclusive
+     * @return Task returning parsed items in file order
+     */
+    private Callable<LogEntryBatch> rangeTask(FileChannel channel, long start, long end)
+    {
+        // ranges are created in file order, so malformed lines are numbered in file order however ranges complete
+        if (errors != null) {
+            errors.addRange(start);
+        }
+
+        return () -> MappedLogReader.parseRange(model, channel, start, end, errors);
+    }
+
+    /**
+     * Wait for given range task to complete
+     *
+     * @param future Range task
+     * @return Parsed items
+     * @throws IOException If range could not be read
+     */
+    private static LogEntryBatch await(Future<LogEntryBatch> future)
+        throws IOException
+    {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for log file range to be parsed.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IllegalStateException("Unable to parse log file range.", cause);
+        }
+    }
+
+    /**
+     * Pass given items to handler in chunks of at most chunkSize items
+     *
+     * @param list Parsed items
+     * @param chunkSize Max number of items passed to handler at once
+     * @param handler Handler to pass items to
+     * @throws SQLException
+     */
+    private static void deliver(LogEntryBatch list, int chunkSize, LogEntryHandler handler)
+        throws SQLException
+    {
+        if (list.size() <= chunkSize) {
+            if (!list.isEmpty()) {
+                handler.handle(list);
+            }
+            return;
+        }
+
+        for (int i = 0; i < list.size(); i += chunkSize) {
+            handler.handle(list.slice(i, Math.min(i + chunkSize, list.size())));
+        }
+    }
+}
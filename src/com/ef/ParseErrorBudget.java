@@ -0,0 +1,248 @@
+package com.ef;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Counts malformed lines skipped by lenient parsing (see ParserModel.setMaxErrorRate()) and aborts parsing once
+ * too many lines are malformed: more than maxErrorRate of lines parsed so far, counting at least MIN_LINES lines, so
+ * that a bad line at the very start of a file does not exceed the budget on its own.
+ *
+ * Lines are numbered within byte ranges parsed independently (possibly concurrently). Malformed lines are written to
+ * reject file as soon as line number of their range start is known, i.e. once all ranges before it are parsed, so only
+ * malformed lines of ranges waiting for earlier ranges are held in memory. Ranges must be added in file order, see
+ * addRange(). Closing writes malformed lines still waiting, e.g. when parsing was aborted, and flushes reject file.
+ * Line numbers count from the start of the file, also if parsing starts in its middle, see firstLine.
+ *
+ * Budget of zero error rate is strict: lines are still counted, but the first malformed line fails parsing.
+ */
+public class ParseErrorBudget implements AutoCloseable
+{
+
+    public static final int MIN_LINES = 1_000;
+
+    private final double maxErrorRate;
+    private final RejectWriter rejects;
+    private final String header;
+
+    /**
+     * Ranges not written yet by range start, the first one being the one whose line numbers are known
+     */
+    private final TreeMap<Long, Range> ranges = new TreeMap<>();
+
+    /**
+     * Number of lines of ranges already written, and lines preceding them, i.e. line number preceding the first range
+     */
+    private long writtenLines;
+    private long parsedLines;
+    private int rejectedCount;
+
+    /**
+     * Create budget which only counts malformed lines
+     *
+     * @param maxErrorRate Max share of malformed lines, from 0 to 1
+     */
+    public ParseErrorBudget(double maxErrorRate)
+    {
+        this(maxErrorRate, null, null);
+    }
+
+    /**
+     * @param maxErrorRate Max share of malformed lines, from 0 to 1
+     * @param rejects Receives malformed lines, or null to only count them
+     * @param header File path written before malformed lines if a set of files is parsed, otherwise null
+     */
+    public ParseErrorBudget(double maxErrorRate, RejectWriter rejects, String header)
+    {
+        this(maxErrorRate, rejects, header, 0);
+    }
+
+    /**
+     * @param maxErrorRate Max share of malformed lines, from 0 to 1
+     * @param rejects Receives malformed lines, or null to only count them
+     * @param header File path written before malformed lines if a set of files is parsed, otherwise null
+     * @param firstLine Number of lines preceding the parsed part of the file, e.g. ingested by previous runs
+     */
+    public ParseErrorBudget(double maxErrorRate, RejectWriter rejects, String header, long firstLine)
+    {
+        if (!(maxErrorRate >= 0 && maxErrorRate <= 1)) {
+            throw new IllegalArgumentException("Error rate must be between 0 and 1, actual: " + maxErrorRate);
+        }
+
+        this.maxErrorRate = maxErrorRate;
+        this.rejects = rejects;
+        this.header = header;
+        this.writtenLines = firstLine;
+    }
+
+    /**
+     * Add range to be parsed. Ranges must be added in file order before they are parsed, otherwise a range is added
+     * when its first line is parsed.
+     *
+     * @param rangeStart Start of range, e.g. its byte offset
+     */
+    public synchronized void addRange(long rangeStart)
+    {
+        ranges.putIfAbsent(rangeStart, new Range());
+    }
+
+    /**
+     * Record a malformed line
+     *
+     * @param rangeStart Start of the range line belongs to, e.g. its byte offset
+     * @param rangeLine Number of line within range, starting at 1
+     * @param rangeParsedLines Number of lines parsed within range so far
+     * @param line Line text
+     * @param error Reason line is malformed
+     * @throws IllegalArgumentException If error budget is exceeded or reject file can not be written
+     */
+    public synchronized void reject(long rangeStart, long rangeLine, long rangeParsedLines, String line,
+        Exception error)
+    {
+        rejectedCount++;
+
+        if (rejects != null) {
+            addRange(rangeStart);
+            Range range = ranges.get(rangeStart);
+            range.parsedLines = Math.max(range.parsedLines, rangeParsedLines);
+            if (ranges.firstKey() == rangeStart) {
+                rejects.write(header, writtenLines + rangeLine, error.getMessage(), line);
+            } else {
+                range.rejects.add(new Reject(rangeLine, line, error.getMessage()));
+            }
+        }
+
+        long lines = Math.max(parsedLines + rangeParsedLines, MIN_LINES);
+        if (rejectedCount > maxErrorRate * lines) {
+            throw new IllegalArgumentException(
+                "Too many malformed lines: " + rejectedCount + " of " + (parsedLines + rangeParsedLines)
+                + " lines parsed so far exceed error rate " + maxErrorRate + ". Last one: " + error.getMessage(),
+                error
+            );
+        }
+    }
+
+    /**
+     * Record that all lines of given range are parsed, and write malformed lines of ranges whose line numbers
+     * become known
+     *
+     * @param rangeStart Start of range, e.g. its byte offset
+     * @param lines Number of lines in range, malformed ones included
+     * @throws IllegalArgumentException If reject file can not be written
+     */
+    public synchronized void rangeParsed(long rangeStart, long lines)
+    {
+        parsedLines += lines;
+
+        addRange(rangeStart);
+        ranges.get(rangeStart).lines = lines;
+
+        while (!ranges.isEmpty()) {
+            Range first = ranges.firstEntry().getValue();
+            write(first, writtenLines);
+            if (first.lines < 0) {
+                break;
+            }
+
+            writtenLines += first.lines;
+            ranges.pollFirstEntry();
+        }
+    }
+
+    public synchronized int getRejectedCount()
+    {
+        return rejectedCount;
+    }
+
+    /**
+     * Get number of lines of ranges parsed so far, malformed ones included
+     *
+     * @return Parsed lines count
+     */
+    public synchronized long getParsedLines()
+    {
+        return parsedLines;
+    }
+
+    /**
+     * Check if the first malformed line must fail parsing
+     *
+     * @return true if error rate is zero
+     */
+    public boolean isStrict()
+    {
+        return maxErrorRate == 0;
+    }
+
+    /**
+     * Write malformed lines still waiting for earlier ranges and flush reject file. An unfinished range (of aborted
+     * parsing) is taken to end at its last malformed line, so line numbers of ranges following it are lower bounds.
+     *
+     * @throws IllegalArgumentException If reject file can not be written
+     */
+    @Override
+    public synchronized void close()
+    {
+        long base = writtenLines;
+        for (Range range : ranges.values()) {
+            write(range, base);
+            base += range.lines >= 0 ? range.lines : range.parsedLines;
+        }
+        ranges.clear();
+
+        if (rejects != null) {
+            rejects.flush();
+        }
+    }
+
+    /**
+     * Write and forget malformed lines of given range
+     *
+     * @param range Range
+     * @param base Line number preceding the first line of range
+     */
+    private void write(Range range, long base)
+    {
+        if (rejects != null) {
+            for (Reject reject : range.rejects) {
+                rejects.write(header, base + reject.rangeLine, reject.reason, reject.line);
+            }
+        }
+        range.rejects.clear();
+    }
+
+    private static final class Range
+    {
+
+        /**
+         * Malformed lines waiting for line number of range start
+         */
+        final List<Reject> rejects = new ArrayList<>();
+
+        /**
+         * Number of lines of range, or -1 until it is parsed
+         */
+        long lines = -1;
+
+        /**
+         * Number of lines parsed by the last malformed line of range
+         */
+        long parsedLines;
+    }
+
+    private static final class Reject
+    {
+
+        final long rangeLine;
+        final String line;
+        final String reason;
+
+        Reject(long rangeLine, String line, String reason)
+        {
+            this.rangeLine = rangeLine;
+            this.line = line;
+            this.reason = reason;
+        }
+    }
+}
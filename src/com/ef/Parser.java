@@ -1,17 +1,31 @@
 package com.ef;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeParseException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
 
 public class Parser
 {
 
-    private static final String[] validOptions = new String[]{"accesslog", "startDate", "duration", "threshold"};
+    private static final String[] validOptions = new String[]{
+        "accesslog", "startDate", "duration", "threshold", "threads", "ordered", "reader",
+        "engine", "batchSize", "commitInterval", "loader", "checkpoint", "follow",
+        "endDate", "spill", "queryThreads", "metrics", "metricsInterval",
+        "maxErrorRate", "rejectFile", "topK", "sketchError"
+    };
+    private static final int WRITE_QUEUE_SIZE = 4;
+    private static final long FOLLOW_POLL_INTERVAL_MILLIS = 1000;
     private static final String[] requiredOptions = new String[]{"startDate", "duration", "threshold"};
+    private static final String[] followRequiredOptions = new String[]{"accesslog", "duration", "threshold"};
 
     /**
      * Retrieve command-line args, check them and output above-threshold IPs (if any)
@@ -20,32 +34,45 @@ public class Parser
      */
     static public void main(String[] args)
     {
+        ParserMetrics metrics = ParserMetrics.getDefault();
+        boolean printMetrics = false;
+        ScheduledExecutorService metricsReport = null;
+
         try {
             ParserModel parser = new ParserModel();
 
             Map<String, String> options = getOptions(args);
 
+            // metrics can be watched over JMX while running, and reported to stderr
+            metrics.register();
+            printMetrics = getBooleanOption(options, "metrics", false);
+            if (options.containsKey("metricsInterval")) {
+                metricsReport = metrics.startReporting(System.err, getPositiveIntOption(options, "metricsInterval", 1));
+            }
+
             // process received options
-            
-            if (hasRequiredOptionsMissing(options)) {
+
+            // follow mode watches a sliding window instead of a given date range
+            boolean follow = getBooleanOption(options, "follow", false);
+            String[] required = follow ? followRequiredOptions : requiredOptions;
+            if (hasRequiredOptionsMissing(options, required)) {
                 throw new IllegalArgumentException(
-                    "Please provide all required options: " + String.join(",", requiredOptions)
+                    "Please provide all required options: " + String.join(",", required)
                 );
             }
 
-            String duration = options.get("duration");
-            if (!isValidDuration(duration.toUpperCase())) {
-                throw new IllegalArgumentException("Unknown duration: " + duration);
-            }
+            Duration duration = Duration.parse(options.get("duration"));
 
             String startDateStr = options.get("startDate");
             LocalDateTime startDate = null;
-            try {
-                startDate = parser.prepareDateArgument(startDateStr);
-            } catch (DateTimeParseException e) {
-                throw new IllegalArgumentException(
-                    "Expected date pattern: " + ParserModel.DATE_PATTERN
-                );
+            if (!follow) {
+                try {
+                    startDate = parser.prepareDateArgument(startDateStr);
+                } catch (DateTimeParseException e) {
+                    throw new IllegalArgumentException(
+                        "Expected date pattern: " + ParserModel.DATE_PATTERN
+                    );
+                }
             }
 
             String thresholdStr = options.get("threshold");
@@ -58,28 +85,573 @@ public class Parser
                 );
             }
 
+            int threads = getPositiveIntOption(options, "threads", 1);
+            parser.setBatchSize(getPositiveIntOption(options, "batchSize", Config.BATCH_SIZE));
+            parser.setCommitInterval(getPositiveIntOption(options, "commitInterval", Config.COMMIT_INTERVAL));
+            parser.setQueryThreads(getPositiveIntOption(options, "queryThreads", 1));
+
+            // lenient parsing skips malformed lines until their share exceeds maxErrorRate
+            if (options.containsKey("maxErrorRate")) {
+                String maxErrorRateStr = options.get("maxErrorRate");
+                try {
+                    parser.setMaxErrorRate(Double.parseDouble(maxErrorRateStr));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException(
+                        "Expected number between 0 and 1 for maxErrorRate, actual: " + maxErrorRateStr
+                    );
+                }
+            }
+            if (options.containsKey("rejectFile")) {
+                if (parser.getMaxErrorRate() == 0) {
+                    throw new IllegalArgumentException("RejectFile option requires maxErrorRate option");
+                }
+                parser.setRejectFile(Paths.get(options.get("rejectFile")));
+            }
+
+            boolean ordered = getBooleanOption(options, "ordered", true);
+
+            String reader = options.getOrDefault("reader", "stream");
+            if (!reader.equals("stream") && !reader.equals("mmap") && !reader.equals("columnar")) {
+                throw new IllegalArgumentException(
+                    "Unknown reader: " + reader + ". Expected stream, mmap or columnar"
+                );
+            }
+
+            String engine = options.getOrDefault("engine", "mysql");
+            if (!engine.equals("mysql") && !engine.equals("memory") && !engine.equals("approx")) {
+                throw new IllegalArgumentException("Unknown engine: " + engine + ". Expected mysql, memory or approx");
+            }
+            if (!engine.equals("mysql") && !options.containsKey("accesslog")) {
+                throw new IllegalArgumentException("Engine " + engine + " requires accesslog option");
+            }
+
+            String loader = options.getOrDefault("loader", "batch");
+            if (!loader.equals("batch") && !loader.equals("bulk")) {
+                throw new IllegalArgumentException("Unknown loader: " + loader + ". Expected batch or bulk");
+            }
+
+            if (options.containsKey("checkpoint") && (!engine.equals("mysql") || !options.containsKey("accesslog"))) {
+                throw new IllegalArgumentException("Checkpoint option requires accesslog option and engine mysql");
+            }
+            if (follow && !engine.equals("mysql")) {
+                throw new IllegalArgumentException("Follow option requires engine mysql");
+            }
+            if ((follow || options.containsKey("checkpoint"))
+                && (reader.equals("columnar") || options.containsKey("spill"))) {
+                throw new IllegalArgumentException(
+                    "Follow and checkpoint options can not be used with columnar reader or spill option"
+                );
+            }
+            if ((follow || options.containsKey("checkpoint"))
+                && LogFileInput.resolve(options.get("accesslog")).size() > 1) {
+                throw new IllegalArgumentException("Follow and checkpoint options require a single log file");
+            }
+
+            // with endDate every duration window from startDate to endDate is evaluated
+            LocalDateTime endDate = null;
+            if (options.containsKey("endDate")) {
+                if (follow) {
+                    throw new IllegalArgumentException("EndDate option can not be used with follow option");
+                }
+                if (engine.equals("approx")) {
+                    throw new IllegalArgumentException("EndDate option can not be used with engine approx");
+                }
+                try {
+                    endDate = parser.prepareDateArgument(options.get("endDate"));
+                } catch (DateTimeParseException e) {
+                    throw new IllegalArgumentException(
+                        "Expected date pattern: " + ParserModel.DATE_PATTERN
+                    );
+                }
+                if (!endDate.isAfter(startDate)) {
+                    throw new IllegalArgumentException("Expected endDate after startDate");
+                }
+            }
+
+            if (follow) {
+                // runs until the process is stopped, without checkpoint only lines appended from now on are ingested
+                IngestCheckpoint checkpoint = options.containsKey("checkpoint")
+                    ? IngestCheckpoint.load(Paths.get(options.get("checkpoint")))
+                    : IngestCheckpoint.inMemory(Paths.get(options.get("accesslog")));
+                followAccessLog(
+                    parser, options.get("accesslog"), checkpoint, threads, ordered, loader,
+                    duration, threshold
+                );
+                return;
+            }
+
+            // if "accesslog" option is provided, database engine gets its lines first, then queries are run
+            if (engine.equals("mysql") && options.containsKey("accesslog")) {
+                storeAccessLog(parser, options, threads, ordered, reader, loader);
+            }
+
+            if (endDate != null) {
+                List<ThresholdWindow> windows = ThresholdWindow.every(
+                    startDate, endDate, duration, threshold
+                );
+                findWindowsIPs(parser, options, windows, threads, ordered, reader, engine);
+                return;
+            }
+
             // take action based on processed options
-            // if "accesslog" option is provided, also process log file
-            if (options.containsKey("accesslog")) {
-                List<LogEntry> list = parser.parse(options.get("accesslog"));
-                parser.saveLogEntries(list);
+            IpCountMap result;
+            if (engine.equals("memory")) {
+                // count requests while parsing, database is not used at all
+                ThresholdCounter counter = parser.newThresholdCounter(startDate, duration, threshold);
+                parseAccessLog(
+                    parser, options.get("accesslog"), threads, ordered, reader, options.get("spill"), counter
+                );
+                result = counter.getAboveThresholdIPCounts();
+            } else if (engine.equals("approx")) {
+                result = findHeavyHitterIPs(parser, options, startDate, duration, threshold, threads, ordered, reader);
+            } else {
+                result = parser.findAboveThresholdIPCounts(startDate, duration, threshold);
             }
-            
-            duration = duration.toUpperCase();
-            Map<String, Integer> result = parser.findAboveThresholdIPs(startDate, Duration.valueOf(duration), threshold);
 
             if (result.isEmpty()) {
                 System.out.println("No above-threshold IPs for given arguments");
             } else {
-                result.keySet().forEach((ip) -> {
-                    System.out.println(ip);
+                // IPs are converted to text for output only
+                result.forEach((long high, long low, int cnt) -> {
+                    System.out.println(IpAddress.toString(high, low));
                 });
 
-                parser.logBlockedIPs(result, startDate, Duration.valueOf(duration), threshold);
+                if (engine.equals("mysql")) {
+                    parser.logBlockedIPs(result, startDate, duration, threshold);
+                }
             }
         } catch (Exception e) {
             System.out.println(e.getMessage());
+        } finally {
+            if (metricsReport != null) {
+                metricsReport.shutdownNow();
+            }
+            if (printMetrics) {
+                System.err.println(metrics.getSummary());
+            }
+        }
+    }
+
+    /**
+     * Find above-threshold IPs of log file in bounded memory: a first pass counts requests approximately with a sketch
+     * and a top-K summary, a second pass counts requests of candidate IPs only, exactly. So log file is read twice,
+     * but only the first pass is counted in metrics and writes reject file.
+     *
+     * @param parser Parser model
+     * @param options Command-line options
+     * @param startDate Date range start
+     * @param duration Is used to calculate date range end value
+     * @param threshold Look for IPs having more requests than given threshold
+     * @param threads Number of parsing threads
+     * @param ordered If true, items are processed in log file order
+     * @param reader Log file reader type: "stream", "mmap" or "columnar"
+     * @return IPs having more than threshold requests and their exact requests count
+     * @throws SQLException
+     */
+    private static IpCountMap findHeavyHitterIPs(
+        ParserModel parser, Map<String, String> options, LocalDateTime startDate, Duration duration, int threshold,
+        int threads, boolean ordered, String reader
+    )
+        throws SQLException
+    {
+        double sketchError = Config.SKETCH_EPSILON;
+        if (options.containsKey("sketchError")) {
+            String sketchErrorStr = options.get("sketchError");
+            try {
+                sketchError = Double.parseDouble(sketchErrorStr);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(
+                    "Expected number between 0 and 1 for sketchError, actual: " + sketchErrorStr
+                );
+            }
+        }
+
+        HeavyHitterCounter counter = parser.newHeavyHitterCounter(
+            startDate, duration, threshold, getPositiveIntOption(options, "topK", Config.HEAVY_HITTER_CAPACITY),
+            sketchError
+        );
+        parseAccessLog(parser, options.get("accesslog"), threads, ordered, reader, options.get("spill"), counter);
+        if (!counter.isComplete()) {
+            System.err.println(
+                "Warning: IPs having up to " + counter.getGuaranteedThreshold()
+                + " requests may be missed, please raise topK option"
+            );
+        }
+
+        // second pass skips the same malformed lines, which are already counted and written to reject file
+        ParserModel verifying = new ParserModel(parser.getDataSource());
+        verifying.setMaxErrorRate(parser.getMaxErrorRate());
+        verifying.setMetrics(new ParserMetrics());
+
+        HeavyHitterCounter.Verifier verifier = counter.newVerifier();
+        parseAccessLog(verifying, options.get("accesslog"), threads, ordered, reader, null, verifier);
+
+        return verifier.getAboveThresholdIPCounts();
+    }
+
+    /**
+     * Find and output above-threshold IPs of each given window. Memory engine parses log file once, database engine
+     * queries lines stored before, see storeAccessLog(). Found IPs are blocked with the reason of the window they
+     * were found in.
+     *
+     * @param parser Parser model
+     * @param options Command-line options
+     * @param windows Windows to evaluate
+     * @param threads Number of parsing threads
+     * @param ordered If true, items are processed in log file order
+     * @param reader Log file reader type: "stream" or "mmap"
+     * @param engine Threshold engine: "mysql" or "memory"
+     * @throws SQLException
+     */
+    private static void findWindowsIPs(
+        ParserModel parser, Map<String, String> options, List<ThresholdWindow> windows, int threads, boolean ordered,
+        String reader, String engine
+    )
+        throws SQLException
+    {
+        Map<ThresholdWindow, IpCountMap> result;
+        if (engine.equals("memory")) {
+            MultiWindowCounter counter = parser.newMultiWindowCounter(windows);
+            parseAccessLog(
+                parser, options.get("accesslog"), threads, ordered, reader, options.get("spill"), counter
+            );
+            result = counter.getAboveThresholdIPCounts();
+        } else {
+            result = parser.findAboveThresholdIPCounts(windows);
+        }
+
+        boolean found = false;
+        for (Map.Entry<ThresholdWindow, IpCountMap> entry : result.entrySet()) {
+            ThresholdWindow window = entry.getKey();
+            IpCountMap ipCounts = entry.getValue();
+            if (ipCounts.isEmpty()) {
+                continue;
+            }
+
+            found = true;
+            System.out.println(window + ":");
+            ipCounts.forEach((long high, long low, int cnt) -> {
+                System.out.println(IpAddress.toString(high, low));
+            });
+
+            if (engine.equals("mysql")) {
+                parser.logBlockedIPs(ipCounts, window.getStartDate(), window.getDuration(), window.getThreshold());
+            }
+        }
+
+        if (!found) {
+            System.out.println("No above-threshold IPs for given arguments");
+        }
+    }
+
+    /**
+     * Parse given log file in chunks, so that log file size is not limited by available memory
+     *
+     * @param parser Parser model
+     * @param accessLog Full path to log file, or comma-separated paths and glob patterns of log files, which may be
+     * gzip or zstd compressed. Items of many files are received in the order they are parsed.
+     * @param threads Number of parsing threads
+     * @param ordered If true, handler receives items in log file order
+     * @param reader Log file reader type: "stream", "mmap" or "columnar" (access log is a spill file)
+     * @param spillFile Full path to columnar file to also write parsed items to, or null
+     * @param handler Receives chunks of parsed LogEntry items
+     * @throws SQLException
+     */
+    private static void parseAccessLog(
+        ParserModel parser, String accessLog, int threads, boolean ordered, String reader, String spillFile,
+        LogEntryHandler handler
+    )
+        throws SQLException
+    {
+        if (spillFile != null) {
+            try (LogEntrySink spill = parser.newColumnarWriter(spillFile)) {
+                parseAccessLog(parser, accessLog, threads, ordered, reader, null, entries -> {
+                    spill.handle(entries);
+                    handler.handle(entries);
+                });
+            }
+            return;
+        }
+        if (reader.equals("columnar")) {
+            parser.parseColumnar(accessLog, handler);
+            return;
+        }
+
+        // a set of files, e.g. rotated logs, is parsed one file per thread
+        List<Path> accessLogs = LogFileInput.resolve(accessLog);
+        if (accessLogs.size() > 1) {
+            parser.parseFiles(accessLogs, ParserModel.DEFAULT_CHUNK_SIZE, threads, handler);
+            return;
+        }
+
+        String logFile = accessLogs.get(0).toString();
+        if (threads > 1 || !ordered) {
+            parser.parse(logFile, ParserModel.DEFAULT_CHUNK_SIZE, threads, ordered, handler);
+        } else if (reader.equals("mmap")) {
+            parser.parseMapped(logFile, ParserModel.DEFAULT_CHUNK_SIZE, handler);
+        } else {
+            parser.parse(logFile, ParserModel.DEFAULT_CHUNK_SIZE, handler);
+        }
+    }
+
+    /**
+     * Save lines of log file given by "accesslog" option to database. With "checkpoint" option only lines appended
+     * since the previous run are ingested, see ingestAccessLog(), otherwise the whole log file is saved.
+     *
+     * @param parser Parser model
+     * @param options Command-line options
+     * @param threads Number of parsing threads
+     * @param ordered If true, items are written in log file order
+     * @param reader Log file reader type: "stream", "mmap" or "columnar" (access log is a spill file)
+     * @param loader Database loader type: "batch" or "bulk"
+     * @throws SQLException
+     * @throws IOException If log file or checkpoint file can not be accessed
+     */
+    private static void storeAccessLog(
+        ParserModel parser, Map<String, String> options, int threads, boolean ordered, String reader, String loader
+    )
+        throws SQLException, IOException
+    {
+        if (options.containsKey("checkpoint")) {
+            IngestCheckpoint checkpoint = IngestCheckpoint.load(Paths.get(options.get("checkpoint")));
+            ingestAccessLog(parser, options.get("accesslog"), checkpoint, threads, ordered, loader, entries -> { });
+        } else {
+            saveAccessLog(parser, options.get("accesslog"), threads, ordered, reader, options.get("spill"), loader);
+        }
+    }
+
+    /**
+     * Parse given log file and save its items to database, while parsing goes on previous chunks are being inserted
+     * by writer thread. If parsing or writing fails, items which are not committed yet are dropped.
+     *
+     * @param parser Parser model
+     * @param accessLog Full path to log file, or comma-separated paths and glob patterns of log files
+     * @param threads Number of parsing threads
+     * @param ordered If true, items are written in log file order
+     * @param reader Log file reader type: "stream", "mmap" or "columnar" (access log is a spill file)
+     * @param spillFile Full path to columnar file to also write parsed items to, or null
+     * @param loader Database loader type: "batch" or "bulk"
+     * @throws SQLException
+     */
+    static void saveAccessLog(
+        ParserModel parser, String accessLog, int threads, boolean ordered, String reader, String spillFile,
+        String loader
+    )
+        throws SQLException
+    {
+        LogEntrySink writer = new PipelinedLogEntryWriter(newSink(parser, loader), WRITE_QUEUE_SIZE);
+        try {
+            parseAccessLog(parser, accessLog, threads, ordered, reader, spillFile, writer);
+        } catch (Throwable e) {
+            // closing would write the queued items of a log file which has failed to parse
+            try {
+                writer.abort();
+            } catch (Throwable abortError) {
+                e.addSuppressed(abortError);
+            }
+            throw e;
         }
+        writer.close();
+    }
+
+    /**
+     * Ingest lines appended to given log file since the offset saved in given checkpoint, advancing the checkpoint.
+     * Lines are ingested in runs of about Config.INGEST_RUN_BYTES bytes. Items of a run are committed in a single
+     * transaction and checkpoint is saved right after it, while a run failing (e.g. on a malformed line) is rolled back
+     * as a whole. So the next call resumes at the start of the failed run without duplicating any committed items.
+     * Only if the process dies between a commit and saving the checkpoint is that one run ingested again.
+     * If log file was rotated since the checkpoint, the rest of the rotated file is ingested first when it is found
+     * next to it with ".1" suffix, otherwise a warning is printed.
+     *
+     * @param parser Parser model
+     * @param accessLog Full path to log file
+     * @param checkpoint Checkpoint of previous runs
+     * @param threads Number of parsing threads
+     * @param ordered If true, items are written in log file order
+     * @param loader Database loader type: "batch" or "bulk"
+     * @param observer Also receives chunks of parsed LogEntry items
+     * @return true if any bytes were ingested, false if log file has not grown
+     * @throws SQLException
+     * @throws IOException If log file or checkpoint file can not be accessed
+     */
+    static boolean ingestAccessLog(
+        ParserModel parser, String accessLog, IngestCheckpoint checkpoint, int threads, boolean ordered,
+        String loader, LogEntryHandler observer
+    )
+        throws SQLException, IOException
+    {
+        Path logPath = Paths.get(accessLog);
+        long startOffset = checkpoint.getResumeOffset(logPath);
+        if (Files.size(logPath) <= startOffset && startOffset == checkpoint.getOffset()) {
+            return false;
+        }
+        long startLine = checkpoint.getResumeLine(logPath);
+
+        boolean ingested = false;
+        if (startOffset != checkpoint.getOffset()) {
+            // lines appended to log file after the previous call and before its rotation come first
+            Path rotated = checkpoint.findRotatedFile(logPath);
+            if (rotated != null) {
+                ingested = ingestFile(
+                    parser, rotated, checkpoint.getOffset(), checkpoint.getLines(), checkpoint, threads, ordered,
+                    loader, observer
+                );
+            } else {
+                System.err.println(
+                    "Warning: " + accessLog + " was rotated or truncated, lines appended after offset "
+                    + checkpoint.getOffset() + " before that are not ingested"
+                );
+            }
+        }
+
+        return ingestFile(parser, logPath, startOffset, startLine, checkpoint, threads, ordered, loader, observer)
+            || ingested;
+    }
+
+    /**
+     * Ingest lines of given log file from given offset up to its current size, advancing checkpoint after each run
+     *
+     * @param parser Parser model
+     * @param logPath Log file
+     * @param startOffset Position to start at, a line start
+     * @param startLine Number of lines before start offset
+     * @param checkpoint Checkpoint to advance
+     * @param threads Number of parsing threads
+     * @param ordered If true, items are written in log file order
+     * @param loader Database loader type: "batch" or "bulk"
+     * @param observer Also receives chunks of parsed LogEntry items
+     * @return true if any bytes were ingested
+     * @throws SQLException
+     * @throws IOException If log file or checkpoint file can not be accessed
+     */
+    private static boolean ingestFile(
+        ParserModel parser, Path logPath, long startOffset, long startLine, IngestCheckpoint checkpoint, int threads,
+        boolean ordered, String loader, LogEntryHandler observer
+    )
+        throws SQLException, IOException
+    {
+        // lines appended while ingesting are left to the next call
+        long size = Files.size(logPath);
+        long offset = startOffset;
+        long line = startLine;
+        boolean progress;
+        do {
+            long endOffset = ingestRun(parser, logPath, offset, line, checkpoint, threads, ordered, loader, observer);
+
+            progress = endOffset > offset;
+            offset = endOffset;
+            line = checkpoint.getLines();
+        } while (progress && offset < size);
+
+        return offset > startOffset;
+    }
+
+    /**
+     * Ingest complete lines of given log file starting at given offset, up to about Config.INGEST_RUN_BYTES bytes,
+     * committing all of them at once and advancing checkpoint right after. Nothing is committed if parsing or writing
+     * fails. Malformed lines skipped by lenient parsing are numbered from the start of the file.
+     *
+     * @param parser Parser model
+     * @param logPath Log file
+     * @param startOffset Position to start at, a line start
+     * @param startLine Number of lines before start offset
+     * @param checkpoint Checkpoint to advance
+     * @param threads Number of parsing threads
+     * @param ordered If true, items are written in log file order
+     * @param loader Database loader type: "batch" or "bulk"
+     * @param observer Also receives chunks of parsed LogEntry items
+     * @return Position right after the last ingested line
+     * @throws SQLException
+     * @throws IOException If checkpoint file can not be written
+     */
+    private static long ingestRun(
+        ParserModel parser, Path logPath, long startOffset, long startLine, IngestCheckpoint checkpoint, int threads,
+        boolean ordered, String loader, LogEntryHandler observer
+    )
+        throws SQLException, IOException
+    {
+        LogEntrySink sink = loader.equals("bulk")
+            ? parser.newBulkLoader(Integer.MAX_VALUE)
+            : parser.newLogEntryWriter(Integer.MAX_VALUE);
+        LogEntrySink writer = new PipelinedLogEntryWriter(sink, WRITE_QUEUE_SIZE);
+
+        long endOffset;
+        long lines;
+        try (ParseErrorBudget errors = parser.newErrorBudget(startLine)) {
+            endOffset = parser.parseFrom(
+                logPath.toString(), startOffset, Config.INGEST_RUN_BYTES, ParserModel.DEFAULT_CHUNK_SIZE, threads,
+                ordered, errors, entries -> {
+                    writer.handle(entries);
+                    observer.handle(entries);
+                }
+            );
+            lines = errors.getParsedLines();
+        } catch (Throwable e) {
+            // items of failed run must not be committed, or the next call would ingest them again
+            try {
+                writer.abort();
+            } catch (Throwable abortError) {
+                e.addSuppressed(abortError);
+            }
+            throw e;
+        }
+        writer.close();
+        checkpoint.update(logPath, endOffset, startLine + lines);
+
+        return endOffset;
+    }
+
+    /**
+     * Keep ingesting lines appended to given log file, blocking IPs as soon as they cross threshold within a sliding
+     * window of given duration. Window counts are built from lines ingested since the process started.
+     *
+     * @param parser Parser model
+     * @param accessLog Full path to log file
+     * @param checkpoint Checkpoint of previous runs
+     * @param threads Number of parsing threads
+     * @param ordered If true, items are processed in log file order
+     * @param loader Database loader type: "batch" or "bulk"
+     * @param duration Sliding window duration
+     * @param threshold Block IPs having more requests than given threshold within window
+     * @throws SQLException
+     * @throws IOException If log file or checkpoint file can not be accessed
+     * @throws InterruptedException If interrupted while waiting for log file to grow
+     */
+    private static void followAccessLog(
+        ParserModel parser, String accessLog, IngestCheckpoint checkpoint, int threads, boolean ordered,
+        String loader, Duration duration, int threshold
+    )
+        throws SQLException, IOException, InterruptedException
+    {
+        SlidingWindowDetector detector = new SlidingWindowDetector(
+            duration, threshold, (long high, long low, int cnt, LocalDateTime windowStart) -> {
+                System.out.println(IpAddress.toString(high, low));
+
+                IpCountMap blocked = new IpCountMap(1);
+                blocked.add(high, low, cnt);
+                parser.logBlockedIPs(blocked, windowStart, duration, threshold);
+            }
+        );
+
+        while (true) {
+            if (!ingestAccessLog(parser, accessLog, checkpoint, threads, ordered, loader, detector)) {
+                Thread.sleep(FOLLOW_POLL_INTERVAL_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Create database sink of given loader type
+     *
+     * @param parser Parser model
+     * @param loader Database loader type: "batch" or "bulk"
+     * @return New sink
+     * @throws SQLException
+     */
+    private static LogEntrySink newSink(ParserModel parser, String loader)
+        throws SQLException
+    {
+        return loader.equals("bulk") ? parser.newBulkLoader() : parser.newLogEntryWriter();
     }
 
     /**
@@ -123,31 +695,65 @@ public class Parser
     }
 
     /**
-     * Check if given string is a valid Duration
-     * 
-     * @param duration
-     * @return true if is valid duration, false otherwise
+     * Get value of given boolean option
+     *
+     * @param options Options to get value from
+     * @param name Option name
+     * @param defaultValue Value to return if option is not given
+     * @return Option value
      */
-    private static boolean isValidDuration(String duration)
+    private static boolean getBooleanOption(Map<String, String> options, String name, boolean defaultValue)
     {
-        for (Duration d : Duration.values()) {
-            if (d.name().equals(duration)) {
-                return true;
-            }
+        String valueStr = options.getOrDefault(name, Boolean.toString(defaultValue));
+        if (!valueStr.equals("true") && !valueStr.equals("false")) {
+            throw new IllegalArgumentException(
+                "Expected true or false value for " + name + ", actual: " + valueStr
+            );
         }
 
-        return false;
+        return Boolean.parseBoolean(valueStr);
+    }
+
+    /**
+     * Get value of given positive int option
+     *
+     * @param options Options to get value from
+     * @param name Option name
+     * @param defaultValue Value to return if option is not given
+     * @return Option value
+     */
+    private static int getPositiveIntOption(Map<String, String> options, String name, int defaultValue)
+    {
+        if (!options.containsKey(name)) {
+            return defaultValue;
+        }
+
+        String valueStr = options.get(name);
+        int value;
+        try {
+            value = Integer.parseInt(valueStr);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(
+                "Expected int value for " + name + ", actual: " + valueStr
+            );
+        }
+        if (value < 1) {
+            throw new IllegalArgumentException("Expected positive value for " + name + ", actual: " + value);
+        }
+
+        return value;
     }
 
     /**
      * Check given options map is missing any of the required options
      * 
      * @param options Options to check
+     * @param required Required options
      * @return true if has missing required-options, false otherwise
      */
-    private static boolean hasRequiredOptionsMissing(Map<String, String> options)
+    private static boolean hasRequiredOptionsMissing(Map<String, String> options, String[] required)
     {        
-        for (String option : requiredOptions) {
+        for (String option : required) {
             if (!options.containsKey(option)) {
                 return true;
             }
@@ -0,0 +1,343 @@
+package com.ef;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latencies of ingestion and threshold queries, shared by all models, see getDefault().
+ * Everything is counted per chunk, batch or query, never per line, so metrics cost nothing measurable on the parsing
+ * path. Exposed over JMX (see register()) and as a text summary for end-of-run or periodic reports.
+ */
+public class ParserMetrics implements ParserMetricsMBean
+{
+
+    public static final String OBJECT_NAME = "com.ef:type=ParserMetrics";
+
+    private static ParserMetrics defaultMetrics;
+
+    private final LongAdder linesRead = new LongAdder();
+    private final LongAdder linesRejected = new LongAdder();
+    private final LongAdder parseNanos = new LongAdder();
+    private final LongAdder rowsCommitted = new LongAdder();
+    private final LongAdder blockedIPs = new LongAdder();
+    private final LatencyHistogram batchInserts = new LatencyHistogram();
+    private final LatencyHistogram commits = new LatencyHistogram();
+    private final LatencyHistogram queries = new LatencyHistogram();
+    private volatile long startNanos = System.nanoTime();
+
+    /**
+     * Get metrics shared by all models and writers of this process
+     *
+     * @return Shared metrics
+     */
+    public static synchronized ParserMetrics getDefault()
+    {
+        if (defaultMetrics == null) {
+            defaultMetrics = new ParserMetrics();
+        }
+
+        return defaultMetrics;
+    }
+
+    /**
+     * Register this instance with platform MBean server as OBJECT_NAME, unless it is registered already
+     *
+     * @throws IllegalStateException If registration fails
+     */
+    public synchronized void register()
+    {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (InstanceAlreadyExistsException e) {
+            // registered concurrently by another class loader, nothing to do
+        } catch (JMException e) {
+            throw new IllegalStateException("Unable to register metrics MBean.", e);
+        }
+    }
+
+    /**
+     * Wrap given handler so that lines it receives and time spent parsing them are counted. Parse time is the time
+     * between chunks, i.e. time the parser spent producing a chunk while handler was not running.
+     *
+     * @param handler Handler to wrap
+     * @return Handler counting chunks and delegating them to given handler
+     */
+    public LogEntryHandler meter(LogEntryHandler handler)
+    {
+        long[] parseStart = {System.nanoTime()};
+
+        return (List<LogEntry> entries) -> {
+            parseNanos.add(System.nanoTime() - parseStart[0]);
+            linesRead.add(entries.size());
+            try {
+                handler.handle(entries);
+            } finally {
+                parseStart[0] = System.nanoTime();
+            }
+        };
+    }
+
+    public void addLinesRejected(long count)
+    {
+        linesRejected.add(count);
+    }
+
+    /**
+     * Record a batch of rows sent to database
+     *
+     * @param nanos Time it took to send the batch
+     */
+    public void recordBatchInsert(long nanos)
+    {
+        batchInserts.record(nanos);
+    }
+
+    public void addRowsCommitted(long count)
+    {
+        rowsCommitted.add(count);
+    }
+
+    /**
+     * Record a commit of written rows
+     *
+     * @param nanos Time it took to write rollup rows and commit the transaction
+     */
+    public void recordCommit(long nanos)
+    {
+        commits.record(nanos);
+    }
+
+    /**
+     * Record a threshold query
+     *
+     * @param nanos Time it took to run the query and read its results
+     */
+    public void recordQuery(long nanos)
+    {
+        queries.record(nanos);
+    }
+
+    public void addBlockedIPs(long count)
+    {
+        blockedIPs.add(count);
+    }
+
+    @Override
+    public long getLinesRead()
+    {
+        return linesRead.sum();
+    }
+
+    @Override
+    public long getLinesRejected()
+    {
+        return linesRejected.sum();
+    }
+
+    @Override
+    public double getParseSeconds()
+    {
+        return parseNanos.sum() / 1e9;
+    }
+
+    @Override
+    public double getLinesPerSecond()
+    {
+        double seconds = getParseSeconds();
+        return seconds == 0 ? 0 : getLinesRead() / seconds;
+    }
+
+    @Override
+    public long getRowsCommitted()
+    {
+        return rowsCommitted.sum();
+    }
+
+    /**
+     * Get rows committed per second since these metrics were created or reset
+     *
+     * @return Average commit rate
+     */
+    @Override
+    public double getRowsCommittedPerSecond()
+    {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds == 0 ? 0 : getRowsCommitted() / seconds;
+    }
+
+    @Override
+    public long getBatchInsertCount()
+    {
+        return batchInserts.getCount();
+    }
+
+    @Override
+    public double getBatchInsertMeanMillis()
+    {
+        return batchInserts.getMeanMillis();
+    }
+
+    @Override
+    public double getBatchInsertP50Millis()
+    {
+        return batchInserts.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getBatchInsertP99Millis()
+    {
+        return batchInserts.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getBatchInsertMaxMillis()
+    {
+        return batchInserts.getMaxMillis();
+    }
+
+    @Override
+    public long getCommitCount()
+    {
+        return commits.getCount();
+    }
+
+    @Override
+    public double getCommitMeanMillis()
+    {
+        return commits.getMeanMillis();
+    }
+
+    @Override
+    public double getCommitP99Millis()
+    {
+        return commits.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getCommitMaxMillis()
+    {
+        return commits.getMaxMillis();
+    }
+
+    @Override
+    public long getQueryCount()
+    {
+        return queries.getCount();
+    }
+
+    @Override
+    public double getQueryMeanMillis()
+    {
+        return queries.getMeanMillis();
+    }
+
+    @Override
+    public double getQueryP99Millis()
+    {
+        return queries.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getQueryMaxMillis()
+    {
+        return queries.getMaxMillis();
+    }
+
+    @Override
+    public long getBlockedIPs()
+    {
+        return blockedIPs.sum();
+    }
+
+    @Override
+    public void reset()
+    {
+        linesRead.reset();
+        linesRejected.reset();
+        parseNanos.reset();
+        rowsCommitted.reset();
+        blockedIPs.reset();
+        batchInserts.reset();
+        commits.reset();
+        queries.reset();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Print summary to given stream every given number of seconds, until returned executor is shut down
+     *
+     * @param out Stream to print to
+     * @param intervalSeconds Time between reports
+     * @return Executor running the reports on a daemon thread
+     */
+    public ScheduledExecutorService startReporting(PrintStream out, long intervalSeconds)
+    {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+            Thread thread = new Thread(r, "metrics-report");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(
+            () -> out.println(getSummary()), intervalSeconds, intervalSeconds, TimeUnit.SECONDS
+        );
+
+        return executor;
+    }
+
+    /**
+     * Get one-line text summary of all metrics
+     *
+     * @return Summary
+     */
+    @Override
+    public String getSummary()
+    {
+        return String.format(
+            "lines read=%d rejected=%d parse=%.3fs (%.0f lines/s) | rows committed=%d (%.0f rows/s)"
+            + " | batch inserts: %s | commits: %s | queries: %s | blocked IPs=%d",
+            getLinesRead(), getLinesRejected(), getParseSeconds(), getLinesPerSecond(),
+            getRowsCommitted(), getRowsCommittedPerSecond(), batchInserts, commits, queries, getBlockedIPs()
+        );
+    }
+
+    /**
+     * Run given query, recording its latency
+     *
+     * @param query Query to run
+     * @param <T> Query result type
+     * @return Query result
+     * @throws SQLException If query fails
+     */
+    <T> T timeQuery(Query<T> query)
+        throws SQLException
+    {
+        long start = System.nanoTime();
+        try {
+            return query.run();
+        } finally {
+            recordQuery(System.nanoTime() - start);
+        }
+    }
+
+    @FunctionalInterface
+    interface Query<T>
+    {
+
+        T run()
+            throws SQLException;
+    }
+}
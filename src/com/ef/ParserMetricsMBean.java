@@ -0,0 +1,55 @@
+package com.ef;
+
+/**
+ * JMX view of ParserMetrics, registered as "com.ef:type=ParserMetrics"
+ */
+public interface ParserMetricsMBean
+{
+
+    long getLinesRead();
+
+    long getLinesRejected();
+
+    double getParseSeconds();
+
+    double getLinesPerSecond();
+
+    long getRowsCommitted();
+
+    double getRowsCommittedPerSecond();
+
+    long getBatchInsertCount();
+
+    double getBatchInsertMeanMillis();
+
+    double getBatchInsertP50Millis();
+
+    double getBatchInsertP99Millis();
+
+    double getBatchInsertMaxMillis();
+
+    long getCommitCount();
+
+    double getCommitMeanMillis();
+
+    double getCommitP99Millis();
+
+    double getCommitMaxMillis();
+
+    long getQueryCount();
+
+    double getQueryMeanMillis();
+
+    double getQueryP99Millis();
+
+    double getQueryMaxMillis();
+
+    long getBlockedIPs();
+
+    String getSummary();
+
+    /**
+     * Forget everything measured so far
+     */
+    void reset();
+}
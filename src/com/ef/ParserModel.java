@@ -1,10 +1,14 @@
 package com.ef;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -15,235 +19,1428 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import javax.sql.DataSource;
 
 public class ParserModel
 {
 
-    private static final String DELIMITER = Pattern.quote("|");
+    private static final char DELIMITER = '|';
     private static final int LOG_FILE_FIELDS_CNT = 5;
+    public static final int DEFAULT_CHUNK_SIZE = 10_000;
     public static final String DATE_PATTERN = "yyyy-MM-dd.HH:mm:ss";
 
+    private final DataSource dataSource;
+    private final DataSource bulkLoadDataSource;
+    private int batchSize = Config.BATCH_SIZE;
+    private int commitInterval = Config.COMMIT_INTERVAL;
+    private int queryThreads = 1;
+    private double maxErrorRate;
+    private Path rejectFile;
+    private RejectWriter rejects;
+
+    /**
+     * Shares request and user agent Strings repeating across parsed lines
+     */
+    private final StringInterner interner = new StringInterner(Config.INTERN_CAPACITY);
+
+    private ParserMetrics metrics = ParserMetrics.getDefault();
+
+    /**
+     * Recent results of getRequestsByIP() by IP
+     */
+    private final ExpiringLruCache<String, LogEntryBatch> requestsCache = new ExpiringLruCache<>(
+        Config.REQUESTS_CACHE_SIZE, Config.REQUESTS_CACHE_TTL_SECONDS, TimeUnit.SECONDS
+    );
+
+    /**
+     * Create model using connection pools shared by all models, see ConnectionPool.getDefault() and
+     * ConnectionPool.getBulkLoadDefault()
+     */
+    public ParserModel()
+    {
+        this(ConnectionPool.getDefault(), ConnectionPool.getBulkLoadDefault());
+    }
+
+    /**
+     * Create model using given data source. Every database call borrows a connection and closes it when done,
+     * so pooled data source is recommended. Bulk loader uses it too, so it must allow LOAD DATA LOCAL INFILE for
+     * newBulkLoader() to work.
+     *
+     * @param dataSource Source of database connections
+     */
+    public ParserModel(DataSource dataSource)
+    {
+        this(dataSource, dataSource);
+    }
+
+    /**
+     * Create model using given data sources
+     *
+     * @param dataSource Source of database connections
+     * @param bulkLoadDataSource Source of connections allowing LOAD DATA LOCAL INFILE, used by newBulkLoader() only
+     */
+    public ParserModel(DataSource dataSource, DataSource bulkLoadDataSource)
+    {
+        this.dataSource = dataSource;
+        this.bulkLoadDataSource = bulkLoadDataSource;
+    }
+
+    /**
+     * Get source of database connections used by this model
+     *
+     * @return Data source
+     */
+    public DataSource getDataSource()
+    {
+        return dataSource;
+    }
+
+    /**
+     * Parses given log file into a list of LogEntry items
+     *
+     * @param filePath Full path to log file to parse
+     * @return A list of LogEntry items. Each item contains details about corresponding line of given log file.
+     */
+    public List<LogEntry> parse(String filePath)
+    {
+        try (Stream<LogEntry> stream = stream(filePath)) {
+            return stream.collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Parses given log file and feeds LogEntry items to given handler in chunks of at most chunkSize items.
+     * Only one chunk is held in memory at a time, so memory use does not depend on log file size.
+     * Chunks are LogEntryBatch instances. Gzip (and zstd) compressed file is decompressed on a separate thread while
+     * its lines are parsed, see LogFileInput.newReader().
+     *
+     * @param filePath Full path to log file to parse
+     * @param chunkSize Max number of LogEntry items passed to handler at once
+     * @param handler Receives chunks of LogEntry items in log file order
+     * @throws SQLException If handler fails to process a chunk
+     */
+    public void parse(String filePath, int chunkSize, LogEntryHandler handler)
+        throws SQLException
+    {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive, actual: " + chunkSize);
+        }
+
+        try (ParseErrorBudget errors = newErrorBudget(null)) {
+            parseLines(Paths.get(filePath), chunkSize, errors, metrics.meter(handler));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(
+                "Unable to read file for given path (" + filePath + "). Please make sure it exists and is readable.", e
+            );
+        }
+    }
+
+    /**
+     * Parses given log files (e.g. a set of rotated logs, plain or compressed) concurrently, one file per worker
+     * thread, and feeds LogEntry items to given handler in chunks of at most chunkSize items. Handler is always called
+     * from the calling thread, one chunk at a time, but chunks of different files interleave.
+     * With lenient parsing the error rate is budgeted per file.
+     *
+     * @param paths Log files to parse, see LogFileInput.resolve()
+     * @param chunkSize Max number of LogEntry items passed to handler at once
+     * @param threads Max number of files parsed at once
+     * @param handler Receives chunks of LogEntry items
+     * @throws SQLException If handler fails to process a chunk
+     */
+    public void parseFiles(List<Path> paths, int chunkSize, int threads, LogEntryHandler handler)
+        throws SQLException
+    {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive, actual: " + chunkSize);
+        }
+
+        // each file is a single range, so its malformed lines are written right away and budgets need no closing
+        List<ParseErrorBudget> errors = new ArrayList<>();
+        for (Path path : paths) {
+            errors.add(newErrorBudget(path.toString()));
+        }
+
+        RejectWriter rejects = getRejectWriter();
+        try {
+            new MultiFileLogParser(this, threads).parse(paths, errors, chunkSize, metrics.meter(handler));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage() + " Please make sure it exists and is readable.", e);
+        } finally {
+            if (rejects != null) {
+                rejects.flush();
+            }
+        }
+    }
+
+    /**
+     * Parse lines of given plain or compressed log file and feed them to given handler in LogEntryBatch chunks of at
+     * most chunkSize items
+     *
+     * @param path Log file to parse
+     * @param chunkSize Max number of LogEntry items passed to handler at once
+     * @param errors Collects malformed lines if parsing is lenient, null to fail on the first malformed line
+     * @param handler Receives chunks of LogEntry items in log file order
+     * @throws IOException If file can not be read
+     * @throws SQLException If handler fails to process a chunk
+     */
+    void parseLines(Path path, int chunkSize, ParseErrorBudget errors, LogEntryHandler handler)
+        throws IOException, SQLException
+    {
+        LineParser lineParser = newLineParser(errors, 0);
+        LogEntryBatch chunk = new LogEntryBatch(chunkSize);
+
+        try (BufferedReader reader = LogFileInput.newReader(path)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineParser.parse(line, chunk);
+
+                if (chunk.size() == chunkSize) {
+                    handler.handle(chunk);
+                    chunk = new LogEntryBatch(chunkSize);
+                }
+            }
+            lineParser.finish();
+        }
+
+        if (!chunk.isEmpty()) {
+            handler.handle(chunk);
+        }
+    }
+
+    /**
+     * Parses given log file from memory-mapped bytes and feeds LogEntry items to given handler in chunks of at most
+     * chunkSize items. Avoids decoding whole lines into Strings, which makes it faster on large files than parse().
+     * Compressed file can not be mapped, it is parsed by parse() instead.
+     *
+     * @param filePath Full path to log file to parse
+     * @param chunkSize Max number of LogEntry items passed to handler at once
+     * @param handler Receives chunks of LogEntry items in log file order
+     * @throws SQLException If handler fails to process a chunk
+     */
+    public void parseMapped(String filePath, int chunkSize, LogEntryHandler handler)
+        throws SQLException
+    {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive, actual: " + chunkSize);
+        }
+
+        if (isCompressed(filePath)) {
+            parse(filePath, chunkSize, handler);
+            return;
+        }
+
+        try (ParseErrorBudget errors = newErrorBudget(null)) {
+            new MappedLogReader(this, MappedLogReader.WINDOW_SIZE, errors)
+                .parse(Paths.get(filePath), chunkSize, metrics.meter(handler));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(
+                "Unable to read file for given path (" + filePath + "). Please make sure it exists and is readable.", e
+            );
+        }
+    }
+
+    /**
+     * Reads LogEntry items back from given columnar file written by newColumnarWriter() and feeds them to given
+     * handler in chunks they were written in. Much faster than parsing log file again.
+     *
+     * @param filePath Full path to columnar file
+     * @param handler Receives chunks of LogEntry items in the order they were written
+     * @throws SQLException If handler fails to process a chunk
+     */
+    public void parseColumnar(String filePath, LogEntryHandler handler)
+        throws SQLException
+    {
+        try {
+            new ColumnarLogReader().read(Paths.get(filePath), metrics.meter(handler));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(
+                "Unable to read columnar file for given path (" + filePath + "). " + e.getMessage(), e
+            );
+        }
+    }
+
+    /**
+     * Parses given log file on given number of worker threads and feeds LogEntry items to given handler in chunks
+     * of at most chunkSize items. Handler is always called from the calling thread, one chunk at a time.
+     * Workers parse memory-mapped byte ranges of the file, see parseMapped(). Compressed file can not be split into
+     * ranges, it is parsed by parse(String, int, LogEntryHandler) instead, decompression overlapping with parsing.
+     *
+     * @param filePath Full path to log file to parse
+     * @param chunkSize Max number of LogEntry items passed to handler at once
+     * @param threads Number of worker threads
+     * @param ordered If true, handler receives items in log file order, otherwise in order they are parsed
+     * @param handler Receives chunks of LogEntry items
+     * @throws SQLException If handler fails to process a chunk
+     */
+    public void parse(String filePath, int chunkSize, int threads, boolean ordered, LogEntryHandler handler)
+        throws SQLException
+    {
+        if ((threads == 1 && ordered) || isCompressed(filePath)) {
+            parse(filePath, chunkSize, handler);
+            return;
+        }
+
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive, actual: " + chunkSize);
+        }
+
+        try (ParseErrorBudget errors = newErrorBudget(null)) {
+            new ParallelLogParser(this, threads, ordered, ParallelLogParser.RANGE_SIZE, errors)
+                .parse(Paths.get(filePath), chunkSize, metrics.meter(handler));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(
+                "Unable to read file for given path (" + filePath + "). Please make sure it exists and is readable.", e
+            );
+        }
+    }
+
+    /**
+     * Parses complete lines of given log file starting at given byte offset and feeds LogEntry items to given handler
+     * in chunks of at most chunkSize items. Last line is skipped if it has no line break yet, as it may still be
+     * being written. Used to ingest a growing log file incrementally, see IngestCheckpoint. Log file must not be
+     * compressed, as byte offsets of a compressed file do not correspond to lines.
+     *
+     * @param filePath Full path to log file to parse
+     * @param startOffset Position to start parsing at. Must be a line start.
+     * @param chunkSize Max number of LogEntry items passed to handler at once
+     * @param threads Number of worker threads
+     * @param ordered If true, handler receives items in log file order, otherwise in order they are parsed
+     * @param handler Receives chunks of LogEntry items
+     * @return Position right after the last parsed line, to start the next run from
+     * @throws SQLException If handler fails to process a chunk
+     */
+    public long parseFrom(
+        String filePath, long startOffset, int chunkSize, int threads, boolean ordered, LogEntryHandler handler
+    )
+        throws SQLException
+    {
+        return parseFrom(filePath, startOffset, Long.MAX_VALUE, chunkSize, threads, ordered, handler);
+    }
+
+    /**
+     * Parses complete lines of given log file starting at given byte offset, up to about maxBytes bytes, and feeds
+     * LogEntry items to given handler in chunks of at most chunkSize items. Lets a large part of the file be ingested
+     * in several runs, each of them committed and checkpointed on its own. See parseFrom(String, long, int, int,
+     * boolean, LogEntryHandler).
+     *
+     * @param filePath Full path to log file to parse
+     * @param startOffset Position to start parsing at. Must be a line start.
+     * @param maxBytes Max number of bytes to parse, unless the first line is longer
+     * @param chunkSize Max number of LogEntry items passed to handler at once
+     * @param threads Number of worker threads
+     * @param ordered If true, handler receives items in log file order, otherwise in order they are parsed
+     * @param handler Receives chunks of LogEntry items
+     * @return Position right after the last parsed line, to start the next run from
+     * @throws SQLException If handler fails to process a chunk
+     */
+    public long parseFrom(
+        String filePath, long startOffset, long maxBytes, int chunkSize, int threads, boolean ordered,
+        LogEntryHandler handler
+    )
+        throws SQLException
+    {
+        try (ParseErrorBudget errors = newErrorBudget(null)) {
+            return parseFrom(filePath, startOffset, maxBytes, chunkSize, threads, ordered, errors, handler);
+        }
+    }
+
+    /**
+     * Parses complete lines of given log file starting at given byte offset, up to about maxBytes bytes, counting
+     * them in given budget. Lets lines parsed by a run be counted, so that the next run numbers malformed lines from
+     * the start of the file, see newErrorBudget(long). See parseFrom(String, long, long, int, int, boolean,
+     * LogEntryHandler).
+     *
+     * @param filePath Full path to log file to parse
+     * @param startOffset Position to start parsing at. Must be a line start.
+     * @param maxBytes Max number of bytes to parse, unless the first line is longer
+     * @param chunkSize Max number of LogEntry items passed to handler at once
+     * @param threads Number of worker threads
+     * @param ordered If true, handler receives items in log file order, otherwise in order they are parsed
+     * @param errors Counts lines and collects malformed ones, null to fail on the first malformed line. Caller closes
+     * it.
+     * @param handler Receives chunks of LogEntry items
+     * @return Position right after the last parsed line, to start the next run from
+     * @throws SQLException If handler fails to process a chunk
+     */
+    public long parseFrom(
+        String filePath, long startOffset, long maxBytes, int chunkSize, int threads, boolean ordered,
+        ParseErrorBudget errors, LogEntryHandler handler
+    )
+        throws SQLException
+    {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Max bytes must be positive, actual: " + maxBytes);
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive, actual: " + chunkSize);
+        }
+
+        if (isCompressed(filePath)) {
+            throw new IllegalArgumentException(
+                "Compressed log file (" + filePath + ") can not be ingested incrementally, please decompress it first."
+            );
+        }
+
+        Path path = Paths.get(filePath);
+        try {
+            long endOffset;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long limit = maxBytes < Long.MAX_VALUE - startOffset ? startOffset + maxBytes : Long.MAX_VALUE;
+                endOffset = MappedLogReader.findCompleteLinesEnd(channel, startOffset, limit);
+            }
+
+            if (endOffset > startOffset) {
+                LogEntryHandler metered = metrics.meter(handler);
+                if (threads > 1 || !ordered) {
+                    new ParallelLogParser(this, threads, ordered, ParallelLogParser.RANGE_SIZE, errors)
+                        .parse(path, startOffset, endOffset, chunkSize, metered);
+                } else {
+                    new MappedLogReader(this, MappedLogReader.WINDOW_SIZE, errors)
+                        .parse(path, startOffset, endOffset, chunkSize, metered);
+                }
+            }
+
+            return endOffset;
+        } catch (IOException e) {
+            throw new IllegalArgumentException(
+                "Unable to read file for given path (" + filePath + "). Please make sure it exists and is readable.", e
+            );
+        }
+    }
+
+    /**
+     * Lazily parses given log file. Lines are read and parsed only as the returned stream is consumed.
+     * Returned stream holds an open file and must be closed by the caller.
+     *
+     * @param filePath Full path to log file to parse
+     * @return Stream of LogEntry items in log file order
+     */
+    public Stream<LogEntry> stream(String filePath)
+    {
+        try {
+            BufferedReader reader = LogFileInput.newReader(Paths.get(filePath));
+            return reader.lines().map(this::parseLine).onClose(() -> {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new IllegalArgumentException(
+                "Unable to read file for given path (" + filePath + "). Please make sure it exists and is readable.", e
+            );
+        }
+    }
+
+    /**
+     * Parse single line of log file.
+     * Fields are located by index instead of regex split, so the only objects created per line are the LogEntry
+     * itself and the Strings it keeps. Line may be a String or a ByteSequence view of mapped file bytes.
+     *
+     * @param line Pipe-delimited log file line
+     * @return LogEntry holding details of given line
+     */
+    protected LogEntry parseLine(CharSequence line)
+    {
+        int[] ends = new int[LOG_FILE_FIELDS_CNT];
+        findFieldEnds(line, ends);
+
+        LogEntry item = new LogEntry();
+        item.date = TimestampParser.toLocalDateTime(parseDate(line, ends[0]));
+        item.ip = line.subSequence(ends[0] + 1, ends[1]).toString();
+        item.request = unquote(line, ends[1] + 1, ends[2]);
+        item.setStatus(parseStatus(line, ends[2] + 1, ends[3]));
+        item.userAgent = unquote(line, ends[3] + 1, ends[4]);
+
+        return item;
+    }
+
+    /**
+     * Parse single line of log file and append it to given batch. Unlike parseLine(CharSequence), no objects are
+     * created per line except for request and user agent values not found in interner, and IP is validated.
+     *
+     * @param line Pipe-delimited log file line
+     * @param batch Batch to append parsed line to
+     * @param ends Scratch buffer of LOG_FILE_FIELDS_CNT field end indexes
+     * @param parsed Scratch buffer of the two longs of IP address
+     */
+    void parseLine(CharSequence line, LogEntryBatch batch, int[] ends, long[] parsed)
+    {
+        findFieldEnds(line, ends);
+
+        long epochMillis = parseDate(line, ends[0]);
+        IpAddress.parse(line, ends[0] + 1, ends[1], parsed);
+
+        batch.add(
+            epochMillis, parsed[0], parsed[1],
+            unquote(line, ends[1] + 1, ends[2]),
+            parseStatus(line, ends[2] + 1, ends[3]),
+            unquote(line, ends[3] + 1, ends[4])
+        );
+    }
+
+    /**
+     * Create strict batch parser for a single thread, see parseLine(CharSequence, LogEntryBatch, int[], long[])
+     *
+     * @return Parser appending parsed line to given batch, throwing on malformed line
+     */
+    LineParser newLineParser()
+    {
+        return new LineParser(null, 0);
+    }
+
+    /**
+     * Create batch parser for a single range of lines parsed by a single thread
+     *
+     * @param errors Collects malformed lines if parsing is lenient, null to throw on malformed line
+     * @param rangeStart Start of range, e.g. its byte offset, identifying range within errors
+     * @return Parser appending parsed line to given batch
+     */
+    LineParser newLineParser(ParseErrorBudget errors, long rangeStart)
+    {
+        return new LineParser(errors, rangeStart);
+    }
+
+    /**
+     * Parses lines of a single range into a batch, numbering them within range. Holds scratch buffers, so it must not
+     * be shared between threads.
+     */
+    final class LineParser
+    {
+
+        private final int[] ends = new int[LOG_FILE_FIELDS_CNT];
+        private final long[] parsed = new long[2];
+        private final ParseErrorBudget errors;
+        private final long rangeStart;
+        private long lines;
+
+        private LineParser(ParseErrorBudget errors, long rangeStart)
+        {
+            this.errors = errors;
+            this.rangeStart = rangeStart;
+
+            if (errors != null) {
+                errors.addRange(rangeStart);
+            }
+        }
+
+        /**
+         * Parse given line and append it to given batch. Malformed line is skipped if parsing is lenient.
+         *
+         * @param line Pipe-delimited log file line
+         * @param batch Batch to append parsed line to
+         * @throws IllegalArgumentException If line is malformed and parsing is strict, or error budget is exceeded
+         */
+        void parse(CharSequence line, LogEntryBatch batch)
+        {
+            lines++;
+            try {
+                parseLine(line, batch, ends, parsed);
+            } catch (IllegalArgumentException e) {
+                metrics.addLinesRejected(1);
+                if (errors == null || errors.isStrict()) {
+                    throw e;
+                }
+                errors.reject(rangeStart, lines, lines, line.toString(), e);
+            }
+        }
+
+        /**
+         * Record that all lines of range are parsed
+         */
+        void finish()
+        {
+            if (errors != null) {
+                errors.rangeParsed(rangeStart, lines);
+            }
+        }
+    }
+
+    /**
+     * Locate end index of each of LOG_FILE_FIELDS_CNT fields of given line
+     *
+     * @param line Pipe-delimited log file line
+     * @param ends Receives end index of each field, exclusive
+     * @throws IllegalArgumentException If line does not have exactly LOG_FILE_FIELDS_CNT fields
+     */
+    private static void findFieldEnds(CharSequence line, int[] ends)
+    {
+        // trailing delimiters do not start new fields (same as String.split() drops trailing empty strings)
+        int end = line.length();
+        while (end > 0 && line.charAt(end - 1) == DELIMITER) {
+            end--;
+        }
+
+        int dateEnd = indexOf(line, DELIMITER, 0);
+        int ipEnd = dateEnd < 0 ? -1 : indexOf(line, DELIMITER, dateEnd + 1);
+        int requestEnd = ipEnd < 0 ? -1 : indexOf(line, DELIMITER, ipEnd + 1);
+        int statusEnd = requestEnd < 0 ? -1 : indexOf(line, DELIMITER, requestEnd + 1);
+        int extra = statusEnd < 0 ? -1 : indexOf(line, DELIMITER, statusEnd + 1);
+
+        if (statusEnd < 0 || statusEnd >= end || extra >= 0 && extra < end) {
+            throw new IllegalArgumentException(
+                "Parser expects that each line of log file contains exactly "
+                + LOG_FILE_FIELDS_CNT + " fields. " + countFields(line, end) + " field found."
+            );
+        }
+
+        ends[0] = dateEnd;
+        ends[1] = ipEnd;
+        ends[2] = requestEnd;
+        ends[3] = statusEnd;
+        ends[4] = end;
+    }
+
+    /**
+     * Parse date field of given line
+     *
+     * @param line Log file line
+     * @param dateEnd Date field end index, exclusive
+     * @return Milliseconds since epoch (UTC)
+     */
+    private static long parseDate(CharSequence line, int dateEnd)
+    {
+        try {
+            return TimestampParser.parseEpochMillis(line, 0, dateEnd);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(
+                "Unable to parse given date (" + line.subSequence(0, dateEnd) + "). "
+                + "Please see LogEntry.formatter pattern for details",
+                e
+            );
+        }
+    }
+
+    /**
+     * Count delimited fields of given line up to given end index
+     *
+     * @param line Log file line
+     * @param end Index after the last non-delimiter char of line
+     * @return Number of fields
+     */
+    private static int countFields(CharSequence line, int end)
+    {
+        if (end == 0) {
+            return line.length() == 0 ? 1 : 0;
+        }
+
+        int cnt = 1;
+        for (int i = 0; i < end; i++) {
+            if (line.charAt(i) == DELIMITER) {
+                cnt++;
+            }
+        }
+
+        return cnt;
+    }
+
+    /**
+     * Get field value of given line with all double quotes removed. Repeating values are shared through interner.
+     *
+     * @param line Log file line
+     * @param from Field start index, inclusive
+     * @param to Field end index, exclusive
+     * @return Field value without double quotes
+     */
+    private String unquote(CharSequence line, int from, int to)
+    {
+        if (to - from >= 2 && line.charAt(from) == '"' && line.charAt(to - 1) == '"') {
+            from++;
+            to--;
+        }
+
+        int quote = indexOf(line, '"', from);
+        if (quote < 0 || quote >= to) {
+            return interner.intern(line, from, to);
+        }
+
+        // rare case: quotes inside of the field
+        return line.subSequence(from, to).toString().replace("\"", "");
+    }
+
+    /**
+     * Parse HTTP status field of given line without creating a substring
+     *
+     * @param line Log file line
+     * @param from Field start index, inclusive
+     * @param to Field end index, exclusive
+     * @return Parsed status value
+     * @throws NumberFormatException If field is not a valid int
+     */
+    private static int parseStatus(CharSequence line, int from, int to)
+    {
+        // status is at most a few digits, anything unusual (sign, overflow, garbage) is left to Integer.parseInt()
+        if (to <= from || to - from > 9) {
+            return Integer.parseInt(line.subSequence(from, to).toString());
+        }
+
+        int status = 0;
+        for (int i = from; i < to; i++) {
+            int digit = line.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return Integer.parseInt(line.subSequence(from, to).toString());
+            }
+            status = status * 10 + digit;
+        }
+
+        return status;
+    }
+
+    /**
+     * Find index of given char in given line
+     *
+     * @param line Line to look in
+     * @param c Char to look for
+     * @param from Index to start looking from
+     * @return Index of char or -1 if not found
+     */
+    private static int indexOf(CharSequence line, char c, int from)
+    {
+        if (line instanceof String) {
+            return ((String) line).indexOf(c, from);
+        }
+        if (line instanceof ByteSequence) {
+            return ((ByteSequence) line).indexOf(c, from);
+        }
+
+        for (int i = from; i < line.length(); i++) {
+            if (line.charAt(i) == c) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Find requests made by a given IP. Results of recent lookups are cached for Config.REQUESTS_CACHE_TTL_SECONDS,
+     * so requests saved in the meantime may not be seen until then, see clearRequestsCache(). Results having more
+     * than Config.REQUESTS_CACHE_MAX_ROWS items are not cached; use getRequestsByIP(String, int, LogEntryHandler)
+     * for such IPs, it does not hold all of them in memory at once.
+     *
+     * @param ip IP address to get requests of
+     * @return LogEntryBatch of requests ordered by date
+     * @throws IllegalArgumentException If ip is not a valid IP address
+     */
+    public List<LogEntry> getRequestsByIP(String ip)
+        throws SQLException
+    {
+        // e.g. "::ffff:1.2.3.4" and "1.2.3.4" share cached result
+        ip = IpAddress.parse(ip).toString();
+
+        LogEntryBatch cached = requestsCache.get(ip);
+        if (cached != null) {
+            // copy, so that caller may not change cached items
+            return cached.slice(0, cached.size());
+        }
+
+        // a single chunk holding all rows, if any
+        LogEntryBatch[] result = {new LogEntryBatch(0)};
+        getRequestsByIP(ip, Integer.MAX_VALUE, entries -> result[0] = (LogEntryBatch) entries);
+        LogEntryBatch list = result[0];
+
+        if (list.size() <= Config.REQUESTS_CACHE_MAX_ROWS) {
+            requestsCache.put(ip, list.slice(0, list.size()));
+        }
+
+        return list;
+    }
+
+    /**
+     * Find requests made by a given IP and feed them to given handler in chunks of at most chunkSize items.
+     * Rows are streamed from database as handler consumes them, so memory use does not depend on number of requests.
+     * Connection is held until all rows are handled, so handler should not take long.
+     * IP is compared in binary form of IpAddress, so IPv4-mapped IPv6 text (::ffff:a.b.c.d) finds requests of its
+     * IPv4 address, the same way they were saved.
+     *
+     * @param ip IP address to get requests of
+     * @param chunkSize Max number of LogEntry items passed to handler at once
+     * @param handler Receives LogEntryBatch chunks of requests ordered by date
+     * @throws SQLException If query or handler fails
+     * @throws IllegalArgumentException If ip is not a valid IP address
+     */
+    public void getRequestsByIP(String ip, int chunkSize, LogEntryHandler handler)
+        throws SQLException
+    {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive, actual: " + chunkSize);
+        }
+
+        String query
+            = "SELECT date"
+            + ", `ip`"
+            + ", request"
+            + ", status"
+            + ", user_agent"
+            + " FROM ip_activity_logs"
+            + " WHERE ip = ?"
+            + " ORDER BY date ASC";
+
+        try (Connection conn = dataSource.getConnection();
+            PreparedStatement ps = conn.prepareStatement(
+                query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY
+            )) {
+
+            ps.setBytes(1, IpAddress.parse(ip).toBytes());
+            // Connector/J streams forward-only rows one by one instead of reading the whole result into memory
+            ps.setFetchSize(Integer.MIN_VALUE);
+
+            // process the results
+            try (ResultSet rs = ps.executeQuery()) {
+                LogEntryBatch chunk = new LogEntryBatch(Math.min(chunkSize, DEFAULT_CHUNK_SIZE));
+                while (rs.next()) {
+                    IpAddress address = IpAddress.fromBytes(rs.getBytes("ip"));
+                    chunk.add(
+                        TimestampParser.toEpochMillis(rs.getObject("date", LocalDateTime.class)),
+                        address.high,
+                        address.low,
+                        rs.getString("request"),
+                        rs.getInt("status"),
+                        rs.getString("user_agent")
+                    );
+
+                    if (chunk.size() == chunkSize) {
+                        handler.handle(chunk);
+                        chunk = new LogEntryBatch(Math.min(chunkSize, DEFAULT_CHUNK_SIZE));
+                    }
+                }
+
+                if (!chunk.isEmpty()) {
+                    handler.handle(chunk);
+                }
+            }
+        } catch (SQLException e) {
+            throw new SQLException("Unable to select IPs at findIPs().", e);
+        }
+    }
+
+    /**
+     * Forget cached results of getRequestsByIP(), e.g. after saving new requests
+     */
+    public void clearRequestsCache()
+    {
+        requestsCache.clear();
+    }
+
+    /**
+     * Save given list of LongEntry items to database
+     *
+     * @param list List of LogEntry items
+     */
+    public void saveLogEntries(List<LogEntry> list)
+        throws SQLException
+    {
+        try (LogEntrySink writer = newLogEntryWriter()) {
+            writer.handle(list);
+        } finally {
+            clearRequestsCache();
+        }
+    }
+
+    /**
+     * Create writer inserting LogEntry items to database in batches of getBatchSize() items and committing every
+     * getCommitInterval() items. Writer must be closed to commit the rest of items.
+     *
+     * @return Writer holding a database connection until closed
+     * @throws SQLException If connection can not be obtained
+     */
+    public LogEntrySink newLogEntryWriter()
+        throws SQLException
+    {
+        return newLogEntryWriter(commitInterval);
+    }
+
+    /**
+     * Create writer inserting LogEntry items to database in batches of getBatchSize() items and committing every
+     * commitInterval items, e.g. Integer.MAX_VALUE to commit all items at once when writer is closed
+     *
+     * @param commitInterval Number of items after which transaction is committed
+     * @return Writer holding a database connection until closed
+     * @throws SQLException If connection can not be obtained
+     */
+    public LogEntrySink newLogEntryWriter(int commitInterval)
+        throws SQLException
+    {
+        return new BatchLogEntryWriter(dataSource, batchSize, commitInterval, metrics);
+    }
+
+    /**
+     * Create loader inserting LogEntry items to database with LOAD DATA LOCAL INFILE, getCommitInterval() items
+     * at a time. Much faster than newLogEntryWriter() for large imports. Loader must be closed to load the rest of items.
+     * Rows are sent in LOAD DATA statements and rollup batches of getBatchSize() rows.
+     *
+     * @return Bulk loader
+     */
+    public LogEntrySink newBulkLoader()
+    {
+        return newBulkLoader(commitInterval);
+    }
+
+    /**
+     * Create loader inserting LogEntry items to database with LOAD DATA LOCAL INFILE, commitInterval items at a time,
+     * e.g. Integer.MAX_VALUE to commit all items at once when loader is closed. Rows are sent in LOAD DATA statements
+     * of getBatchSize() rows, so only those are held in memory.
+     *
+     * @param commitInterval Number of items loaded and committed at once
+     * @return Bulk loader
+     */
+    public LogEntrySink newBulkLoader(int commitInterval)
+    {
+        return new BulkLogEntryLoader(bulkLoadDataSource, batchSize, commitInterval, metrics);
+    }
+
+    /**
+     * Create writer saving LogEntry items to given columnar file, each handled chunk as a block.
+     * Writer must be closed to flush the rest of items. Read the file back with parseColumnar().
+     *
+     * @param filePath Full path to columnar file, replaced if exists
+     * @return Columnar file writer
+     */
+    public LogEntrySink newColumnarWriter(String filePath)
+    {
+        try {
+            return new ColumnarLogWriter(Paths.get(filePath));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(
+                "Unable to create file for given path (" + filePath + "). Please make sure it is writable.", e
+            );
+        }
+    }
+
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    /**
+     * Set number of LogEntry items sent to database in a single batch
+     *
+     * @param batchSize Batch size
+     */
+    public void setBatchSize(int batchSize)
+    {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive, actual: " + batchSize);
+        }
+
+        this.batchSize = batchSize;
+    }
+
+    public int getCommitInterval()
+    {
+        return commitInterval;
+    }
+
     /**
-     * Parses given log file into a list of LogEntry items
+     * Set number of LogEntry items after which saved items are committed
      *
-     * @param filePath Full path to log file to parse
-     * @return A list of LogEntry items. Each item contains details about corresponding line of given log file.
+     * @param commitInterval Commit interval
      */
-    public List<LogEntry> parse(String filePath)
+    public void setCommitInterval(int commitInterval)
     {
-        List<LogEntry> list = new ArrayList<>();
+        if (commitInterval < 1) {
+            throw new IllegalArgumentException("Commit interval must be positive, actual: " + commitInterval);
+        }
 
-        // reading log file into stream, try-with-resources
-        try (Stream<String> stream = Files.lines(Paths.get(filePath))) {
-            list = stream.map((String line) -> {
-                String[] p = line.split(DELIMITER);
+        this.commitInterval = commitInterval;
+    }
 
-                if (p.length != LOG_FILE_FIELDS_CNT) {
-                    throw new IllegalArgumentException(
-                        "Parser expects that each line of log file contains exactly "
-                        + LOG_FILE_FIELDS_CNT + " fields. " + p.length + " field found."
-                    );
-                }
+    public double getMaxErrorRate()
+    {
+        return maxErrorRate;
+    }
 
-                LogEntry item = new LogEntry();
+    /**
+     * Set max share of malformed lines (wrong fields count, bad date, IP or status) chunked parse() methods skip
+     * before giving up. With 0 (default) parsing is strict and the first malformed line aborts it. Otherwise malformed
+     * lines are skipped, and parsing is aborted only once their share exceeds given rate, see ParseErrorBudget.
+     *
+     * @param maxErrorRate Max share of malformed lines, from 0 to 1
+     */
+    public void setMaxErrorRate(double maxErrorRate)
+    {
+        if (!(maxErrorRate >= 0 && maxErrorRate <= 1)) {
+            throw new IllegalArgumentException("Error rate must be between 0 and 1, actual: " + maxErrorRate);
+        }
 
-                try {
-                    item.setDate(p[0]);
-                } catch (DateTimeParseException e) {
-                    throw new IllegalArgumentException(
-                        "Unable to parse given date (" + p[0] + "). Please see LogEntry.formatter pattern for details",
-                        e
-                    );
-                }
+        this.maxErrorRate = maxErrorRate;
+    }
 
-                item.ip = p[1];
-                item.request = p[2].replace("\"", "");
-                item.setStatus(Integer.valueOf(p[3]));
-                item.userAgent = p[4].replace("\"", "");
+    public Path getRejectFile()
+    {
+        return rejectFile;
+    }
 
-                return item;
-            }).collect(Collectors.toList());
-        } catch (IOException e) {
-            throw new IllegalArgumentException(
-                "Unable to read file for given path (" + filePath + "). Please make sure it exists and is readable.", e
-            );
+    /**
+     * Set file malformed lines skipped by lenient parsing are written to, with their line numbers and reasons.
+     * Lines are written while parsing goes on, also if it is aborted, see ParseErrorBudget. With parseFiles() rows of
+     * each file follow a "# file path" line, see RejectWriter.
+     *
+     * @param rejectFile File to write, opened once and appended to by every parse; null to not write skipped lines
+     */
+    public synchronized void setRejectFile(Path rejectFile)
+    {
+        if (rejects != null) {
+            rejects.close();
+            rejects = null;
         }
 
-        return list;
+        this.rejectFile = rejectFile;
+    }
+
+    public ParserMetrics getMetrics()
+    {
+        return metrics;
     }
 
     /**
-     * Find requests made by a given IP
+     * Set metrics parsing, writers created afterwards and queries are counted in. Defaults to
+     * ParserMetrics.getDefault(); a separate instance keeps e.g. a repeated pass over the same log file out of shared
+     * metrics.
      *
-     * @param ip IP address to get requests of
+     * @param metrics Metrics to count parsing, writing and queries in
      */
-    public List<LogEntry> getRequestsByIP(String ip)
+    public void setMetrics(ParserMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    public int getQueryThreads()
+    {
+        return queryThreads;
+    }
+
+    /**
+     * Set number of concurrent queries, each on its own connection, a threshold query is split into.
+     * Data source must be able to provide that many connections at once, see Config.POOL_SIZE.
+     *
+     * @param queryThreads Number of concurrent queries, 1 to run threshold query as a single query
+     */
+    public void setQueryThreads(int queryThreads)
+    {
+        if (queryThreads < 1) {
+            throw new IllegalArgumentException("Number of query threads must be positive, actual: " + queryThreads);
+        }
+
+        this.queryThreads = queryThreads;
+    }
+
+    /**
+     * Find IPs that made more than a certain number of requests for a given time period
+     *
+     * @param startDate Date range start
+     * @param duration Is used to calculate date range end value
+     * @param threshold Look for IPs having more requests than given threshold in calculated date range/interval
+     * @return List of IPs having more than given threshold requests for calculated (based on StartDate and duration)
+     * date interval
+     */
+    public Map<String, Integer> findAboveThresholdIPs(LocalDateTime startDate, Duration duration, int threshold)
         throws SQLException
     {
-        String query
-            = "SELECT date"
-            + ", INET6_NTOA(`ip`) AS ip"
-            + ", request"
-            + ", status"
-            + ", user_agent"
-            + " FROM ip_activity_logs"
-            + " WHERE ip = INET6_ATON(?)"
-            + " ORDER BY date ASC";
+        return findAboveThresholdIPCounts(startDate, duration, threshold).toMap();
+    }
+
+    /**
+     * Find IPs that made more than a certain number of requests for a given time period.
+     * Same as findAboveThresholdIPs(), but IPs are kept in compact binary form instead of text.
+     * If date range starts and ends on a minute, per-minute counts of ip_activity_counts rollup table are summed up
+     * instead of counting ip_activity_logs rows.
+     * If getQueryThreads() is more than one, date range is split into that many sub-ranges counted concurrently on
+     * separate connections, and partial counts are merged before threshold is applied.
+     *
+     * @param startDate Date range start
+     * @param duration Is used to calculate date range end value
+     * @param threshold Look for IPs having more requests than given threshold in calculated date range/interval
+     * @return Map of IPs having more than given threshold requests to their requests count
+     */
+    public IpCountMap findAboveThresholdIPCounts(LocalDateTime startDate, Duration duration, int threshold)
+        throws SQLException
+    {
+        return metrics.timeQuery(() -> queryAboveThresholdIPCounts(startDate, duration, threshold));
+    }
+
+    private IpCountMap queryAboveThresholdIPCounts(LocalDateTime startDate, Duration duration, int threshold)
+        throws SQLException
+    {
+        LocalDateTime endDate = getEndDate(startDate, duration);
+        boolean rollup = isRollupAligned(startDate) && isRollupAligned(endDate);
+
+        List<LocalDateTime> boundaries = splitDateRange(startDate, endDate, queryThreads, rollup);
+        if (boundaries.size() <= 2) {
+            return countIPs(startDate, endDate, rollup, threshold);
+        }
 
-        List<LogEntry> list = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(boundaries.size() - 1, (Runnable r) -> {
+            Thread thread = new Thread(r, "threshold-query");
+            thread.setDaemon(true);
+            return thread;
+        });
 
         try {
-            Connection conn = DriverManager.getConnection(Config.JDBC_URL, Config.DB_USERNAME, Config.DB_PASSWORD);
-            PreparedStatement ps = conn.prepareStatement(query);
+            List<Future<IpCountMap>> parts = new ArrayList<>();
+            for (int i = 0; i < boundaries.size() - 1; i++) {
+                LocalDateTime from = boundaries.get(i);
+                LocalDateTime to = boundaries.get(i + 1);
+
+                // an IP may cross threshold only in total, so every IP of a sub-range is counted
+                parts.add(pool.submit(() -> countIPs(from, to, rollup, 0)));
+            }
+
+            IpCountMap counts = new IpCountMap();
+            for (Future<IpCountMap> part : parts) {
+                counts.addAll(awaitPart(part));
+            }
+
+            return counts.aboveThreshold(threshold);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Count requests of each IP having more than given threshold requests within given date range
+     *
+     * @param startDate Date range start, inclusive
+     * @param endDate Date range end, exclusive
+     * @param rollup If true, ip_activity_counts rollup table is summed up instead of counting ip_activity_logs rows
+     * @param threshold Look for IPs having more requests than given threshold
+     * @return Map of IPs to their requests count
+     * @throws SQLException
+     */
+    private IpCountMap countIPs(LocalDateTime startDate, LocalDateTime endDate, boolean rollup, int threshold)
+        throws SQLException
+    {
+        String query;
+        if (rollup) {
+            query
+                = "SELECT `ip`"
+                + ", SUM(cnt) AS total"
+                + " FROM ip_activity_counts"
+                + " WHERE minute >= ? AND minute < ?"
+                + " GROUP BY ip"
+                + " HAVING total > ?";
+        } else {
+            query
+                = "SELECT `ip`"
+                + ", COUNT(*) AS total"
+                + " FROM ip_activity_logs"
+                + " WHERE date >= ? AND date < ?"
+                + " GROUP BY ip"
+                + " HAVING total > ?";
+        }
+
+        IpCountMap map = new IpCountMap();
 
-            ps.setString(1, ip);
+        try (Connection conn = dataSource.getConnection();
+            PreparedStatement ps = conn.prepareStatement(query)) {
+
+            ps.setObject(1, LogEntry.formatter.format(startDate));
+            ps.setObject(2, LogEntry.formatter.format(endDate));
+            ps.setInt(3, threshold);
 
             // process the results
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()) {
-                LogEntry item = new LogEntry();
-                item.date = rs.getObject("date", LocalDateTime.class);
-                item.ip = rs.getString("ip");
-                item.request = rs.getString("request");
-                item.setStatus(rs.getInt("status"));
-                item.userAgent = rs.getString("user_agent");
-
-                list.add(item);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    IpAddress ip = IpAddress.fromBytes(rs.getBytes("ip"));
+                    int cnt = rs.getInt("total");
+                    map.add(ip.high, ip.low, cnt);
+                }
             }
-            rs.close();
-            ps.close();
         } catch (SQLException e) {
             throw new SQLException("Unable to select IPs at findIPs().", e);
         }
 
-        return list;
+        return map;
     }
 
     /**
-     * Save given list of LongEntry items to database
+     * Wait for count query of a sub-range to complete
      *
-     * @param list List of LogEntry items
+     * @param part Sub-range query
+     * @return Requests count of each IP within sub-range
+     * @throws SQLException If query failed or waiting was interrupted
      */
-    public void saveLogEntries(List<LogEntry> list)
+    private static IpCountMap awaitPart(Future<IpCountMap> part)
         throws SQLException
     {
         try {
-            Connection conn = DriverManager.getConnection(Config.JDBC_URL, Config.DB_USERNAME, Config.DB_PASSWORD);
-
-            conn.setAutoCommit(false);
-            PreparedStatement ps = conn.prepareStatement(
-                "INSERT INTO ip_activity_logs (date, ip, request, status, user_agent) VALUES (?, INET6_ATON(?), ?, ?, ?)"
-            );
-            for (LogEntry item : list) {
-                ps.setObject(1, item.getFormattedDate());
-                ps.setString(2, item.ip);
-                ps.setString(3, item.request);
-                ps.setInt(4, item.getStatus());
-                ps.setString(5, item.userAgent);
-
-                ps.addBatch();
+            return part.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for IPs to be selected.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
             }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Unable to select IPs.", cause);
+        }
+    }
 
-            ps.executeBatch();
-            conn.commit();
-            ps.close();
-        } catch (SQLException e) {
-            throw new SQLException("Unable to insert list of LogEntry items to database.", e);
+    /**
+     * Split given date range into at most given number of sub-ranges of about the same length
+     *
+     * @param startDate Date range start, inclusive
+     * @param endDate Date range end, exclusive
+     * @param parts Max number of sub-ranges
+     * @param minuteAligned If true, sub-ranges start and end on a minute, so that they can still use rollup table
+     * @return Sorted sub-range boundaries, from startDate to endDate
+     */
+    static List<LocalDateTime> splitDateRange(
+        LocalDateTime startDate, LocalDateTime endDate, int parts, boolean minuteAligned
+    )
+    {
+        long unitMillis = minuteAligned ? 60_000 : 1;
+        long start = TimestampParser.toEpochMillis(startDate);
+        long units = (TimestampParser.toEpochMillis(endDate) - start) / unitMillis;
+        long step = Math.max((units + parts - 1) / parts, 1);
+
+        List<LocalDateTime> boundaries = new ArrayList<>();
+        boundaries.add(startDate);
+        for (long unit = step; unit < units; unit += step) {
+            boundaries.add(TimestampParser.toLocalDateTime(start + unit * unitMillis));
+        }
+        if (endDate.isAfter(startDate)) {
+            boundaries.add(endDate);
         }
+
+        return boundaries;
     }
 
     /**
-     * Find IPs that made more than a certain number of requests for a given time period
+     * Find IPs that made more than a certain number of requests for each of given windows at once. Requests are
+     * grouped by IP and by segment between window boundaries in a single query, so e.g. every hour of a day costs one
+     * range scan instead of 24. Like the single window query, it reads ip_activity_counts rollup table if all window
+     * boundaries are on a minute.
      *
-     * @param startDate Date range start
-     * @param duration Is used to calculate date range end value
-     * @param threshold Look for IPs having more requests than given threshold in calculated date range/interval
-     * @return List of IPs having more than given threshold requests for calculated (based on StartDate and duration)
-     * date interval
+     * @param windows Windows to evaluate, e.g. ThresholdWindow.every()
+     * @return Map of window to IPs having more than its threshold requests and their requests count, in order windows
+     * were given
      */
-    public Map<String, Integer> findAboveThresholdIPs(LocalDateTime startDate, Duration duration, int threshold)
+    public Map<ThresholdWindow, IpCountMap> findAboveThresholdIPCounts(List<ThresholdWindow> windows)
         throws SQLException
     {
-        LocalDateTime endDate = getEndDate(startDate, duration);
+        return metrics.timeQuery(() -> queryAboveThresholdIPCounts(windows));
+    }
 
-        String query
-            = "SELECT INET6_NTOA(`ip`) AS ip"
-            + ", COUNT(*) AS cnt"
-            + " FROM ip_activity_logs"
-            + " WHERE date >= ? AND date < ?"
-            + " GROUP BY ip"
-            + " HAVING cnt > ?";
+    private Map<ThresholdWindow, IpCountMap> queryAboveThresholdIPCounts(List<ThresholdWindow> windows)
+        throws SQLException
+    {
+        MultiWindowCounter counter = newMultiWindowCounter(windows);
+        List<LocalDateTime> boundaries = counter.getBoundaries();
+        if (boundaries.size() < 2) {
+            return counter.getAboveThresholdIPCounts();
+        }
 
-        Map<String, Integer> map = new HashMap<>();
+        boolean rollup = true;
+        for (LocalDateTime date : boundaries) {
+            rollup &= isRollupAligned(date);
+        }
+        String dateColumn = rollup ? "minute" : "date";
 
-        try {
-            Connection conn = DriverManager.getConnection(Config.JDBC_URL, Config.DB_USERNAME, Config.DB_PASSWORD);
-            PreparedStatement ps = conn.prepareStatement(query);
+        // segment of a row is the number of inner boundaries not after its date
+        String segment = "0";
+        if (boundaries.size() > 2) {
+            StringBuilder sb = new StringBuilder("CASE");
+            for (int i = 1; i < boundaries.size() - 1; i++) {
+                sb.append(" WHEN ").append(dateColumn).append(" < ? THEN ").append(i - 1);
+            }
+            segment = sb.append(" ELSE ").append(boundaries.size() - 2).append(" END").toString();
+        }
 
-            ps.setObject(1, LogEntry.formatter.format(startDate));
-            ps.setObject(2, LogEntry.formatter.format(endDate));
-            ps.setInt(3, threshold);
+        String query
+            = "SELECT `ip`"
+            + ", " + segment + " AS segment"
+            + (rollup ? ", SUM(cnt) AS total" : ", COUNT(*) AS total")
+            + (rollup ? " FROM ip_activity_counts" : " FROM ip_activity_logs")
+            + " WHERE " + dateColumn + " >= ? AND " + dateColumn + " < ?"
+            + " GROUP BY ip, segment";
+
+        try (Connection conn = dataSource.getConnection();
+            PreparedStatement ps = conn.prepareStatement(query)) {
+
+            int param = 1;
+            for (int i = 1; i < boundaries.size() - 1; i++) {
+                ps.setObject(param++, LogEntry.formatter.format(boundaries.get(i)));
+            }
+            ps.setObject(param++, LogEntry.formatter.format(boundaries.get(0)));
+            ps.setObject(param, LogEntry.formatter.format(boundaries.get(boundaries.size() - 1)));
 
             // process the results
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()) {
-                String ip = rs.getString("ip");
-                int cnt = rs.getInt("cnt");
-                map.put(ip, cnt);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    IpAddress ip = IpAddress.fromBytes(rs.getBytes("ip"));
+                    counter.add(rs.getInt("segment"), ip.high, ip.low, rs.getInt("total"));
+                }
             }
-            rs.close();
-            ps.close();
         } catch (SQLException e) {
             throw new SQLException("Unable to select IPs at findIPs().", e);
         }
 
-        return map;
+        return counter.getAboveThresholdIPCounts();
+    }
+
+    /**
+     * Create in-memory counterpart of findAboveThresholdIPCounts(List). Pass it as handler to one of parse() methods,
+     * then get above-threshold IPs of each window from it without querying the database.
+     *
+     * @param windows Windows to count requests for
+     * @return Counter of requests per IP in each window
+     */
+    public MultiWindowCounter newMultiWindowCounter(List<ThresholdWindow> windows)
+    {
+        List<LocalDateTime> endDates = new ArrayList<>(windows.size());
+        for (ThresholdWindow window : windows) {
+            endDates.add(getEndDate(window.getStartDate(), window.getDuration()));
+        }
+
+        return new MultiWindowCounter(windows, endDates);
+    }
+
+    /**
+     * Create in-memory counterpart of findAboveThresholdIPs(). Pass it as handler to one of parse() methods, then get
+     * above-threshold IPs of parsed log file from it without querying the database.
+     *
+     * @param startDate Date range start
+     * @param duration Is used to calculate date range end value
+     * @param threshold Look for IPs having more requests than given threshold in calculated date range/interval
+     * @return Counter of requests per IP in calculated date range
+     */
+    public ThresholdCounter newThresholdCounter(LocalDateTime startDate, Duration duration, int threshold)
+    {
+        return new ThresholdCounter(startDate, getEndDate(startDate, duration), threshold);
+    }
+
+    /**
+     * Create bounded-memory, approximate counterpart of newThresholdCounter() for date ranges with huge numbers of
+     * distinct IPs. Pass it as handler to one of parse() methods, then pass its verifier to parse() of the same log
+     * file again to get exact counts of above-threshold IPs.
+     *
+     * @param startDate Date range start
+     * @param duration Is used to calculate date range end value
+     * @param threshold Look for IPs having more requests than given threshold in calculated date range/interval
+     * @param capacity Max number of IPs tracked, see SpaceSavingTopK
+     * @param epsilon Max overcount of sketch relative to total count of date range, see CountMinSketch
+     * @return Counter of candidate above-threshold IPs in calculated date range
+     */
+    public HeavyHitterCounter newHeavyHitterCounter(
+        LocalDateTime startDate, Duration duration, int threshold, int capacity, double epsilon
+    )
+    {
+        return new HeavyHitterCounter(
+            startDate, getEndDate(startDate, duration), threshold, capacity, epsilon, Config.SKETCH_DELTA
+        );
     }
 
     /**
-     * Log/save to DB blocked IPs from a given ipList with comments on why they are blocked
+     * Log/save to DB blocked IPs from a given ipList with comments on why they are blocked.
+     * IPs are stored in binary form of IpAddress, the same as logBlockedIPs(IpCountMap, ...) stores them.
      *
      * @param ipList List of blocked IPs
      * @param startDate Starting date IPs were checked against
      * @param duration Duration type used
      * @param threshold Threshold used to identify if IP is to-be-blocked
+     * @throws IllegalArgumentException If an IP is not a valid IP address
      */
     public void logBlockedIPs(Map<String, Integer> ipList, LocalDateTime startDate, Duration duration, int threshold)
         throws SQLException
     {
-        try {
-            Connection conn = DriverManager.getConnection(Config.JDBC_URL, Config.DB_USERNAME, Config.DB_PASSWORD);
+        try (Connection conn = dataSource.getConnection();
+            PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO blocked_ips (ip, reason) VALUES (?, ?)"
+            )) {
 
             conn.setAutoCommit(false);
-            PreparedStatement ps = conn.prepareStatement(
-                "INSERT INTO blocked_ips (ip, reason) VALUES (INET6_ATON(?), ?)"
-            );
 
-            LocalDateTime endDate = getEndDate(startDate, duration);
             for (Map.Entry<String, Integer> entry : ipList.entrySet()) {
                 String ip = entry.getKey();
                 int cnt = entry.getValue();
-                String reason = duration.toString().toLowerCase() + " threshold (" + threshold + ") crossed "
-                    + "(" + cnt + ") in the following dates range: "
-                    + LogEntry.formatter.format(startDate) + " - " + LogEntry.formatter.format(endDate);
 
-                ps.setString(1, ip);
-                ps.setString(2, reason);
+                ps.setBytes(1, IpAddress.parse(ip).toBytes());
+                ps.setString(2, getBlockReason(cnt, startDate, duration, threshold));
 
                 ps.addBatch();
             }
 
             ps.executeBatch();
             conn.commit();
-            ps.close();
+            metrics.addBlockedIPs(ipList.size());
+        } catch (SQLException e) {
+            throw new SQLException("Unable to insert list of blocked IPs to database.", e);
+        }
+    }
+
+    /**
+     * Log/save to DB blocked IPs from a given map with comments on why they are blocked.
+     * IPs are written in binary form directly, without INET6_ATON() conversion of their text.
+     *
+     * @param ipCounts Blocked IPs and their requests count
+     * @param startDate Starting date IPs were checked against
+     * @param duration Duration type used
+     * @param threshold Threshold used to identify if IP is to-be-blocked
+     */
+    public void logBlockedIPs(IpCountMap ipCounts, LocalDateTime startDate, Duration duration, int threshold)
+        throws SQLException
+    {
+        try (Connection conn = dataSource.getConnection();
+            PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO blocked_ips (ip, reason) VALUES (?, ?)"
+            )) {
+
+            conn.setAutoCommit(false);
+
+            SQLException[] error = new SQLException[1];
+            ipCounts.forEach((long high, long low, int cnt) -> {
+                try {
+                    ps.setBytes(1, IpAddress.toBytes(high, low));
+                    ps.setString(2, getBlockReason(cnt, startDate, duration, threshold));
+
+                    ps.addBatch();
+                } catch (SQLException e) {
+                    error[0] = e;
+                }
+            });
+            if (error[0] != null) {
+                throw error[0];
+            }
+
+            ps.executeBatch();
+            conn.commit();
+            metrics.addBlockedIPs(ipCounts.size());
         } catch (SQLException e) {
             throw new SQLException("Unable to insert list of blocked IPs to database.", e);
         }
     }
 
+    /**
+     * Build comment on why IP is blocked
+     *
+     * @param cnt Number of requests IP made
+     * @param startDate Starting date IP was checked against
+     * @param duration Duration type used
+     * @param threshold Threshold used to identify if IP is to-be-blocked
+     * @return Block reason text
+     */
+    protected String getBlockReason(int cnt, LocalDateTime startDate, Duration duration, int threshold)
+    {
+        LocalDateTime endDate = getEndDate(startDate, duration);
+
+        return duration.toString().toLowerCase() + " threshold (" + threshold + ") crossed "
+            + "(" + cnt + ") in the following dates range: "
+            + LogEntry.formatter.format(startDate) + " - " + LogEntry.formatter.format(endDate);
+    }
+
     /**
      * Convert string date argument to LocalDateTime object
      *
@@ -256,6 +1453,75 @@ public class ParserModel
         return LocalDateTime.parse(dateStr, formatter);
     }
 
+    /**
+     * Create budget of malformed lines counting lines from given line on, also if parsing is strict. Malformed lines
+     * are written to reject file, if any.
+     *
+     * @param firstLine Number of lines preceding the part of the file to parse, e.g. ingested by previous runs
+     * @return Budget to close once parsing is done
+     * @throws IllegalArgumentException If reject file can not be created
+     */
+    public ParseErrorBudget newErrorBudget(long firstLine)
+    {
+        return new ParseErrorBudget(maxErrorRate, getRejectWriter(), null, firstLine);
+    }
+
+    /**
+     * Get writer of malformed lines, opened on the first use and shared by all parse calls of this model, so that
+     * rows of previous calls are kept
+     *
+     * @return Writer or null if parsing is strict or reject file is not set
+     * @throws IllegalArgumentException If reject file can not be created
+     */
+    private synchronized RejectWriter getRejectWriter()
+    {
+        if (rejects == null && rejectFile != null && maxErrorRate > 0) {
+            rejects = RejectWriter.open(rejectFile);
+        }
+
+        return rejects;
+    }
+
+    /**
+     * Create budget of malformed lines for a single parse call
+     *
+     * @param header File path written before malformed lines if a set of files is parsed, otherwise null
+     * @return Budget or null if parsing is strict
+     * @throws IllegalArgumentException If reject file can not be created
+     */
+    private ParseErrorBudget newErrorBudget(String header)
+    {
+        return maxErrorRate > 0 ? new ParseErrorBudget(maxErrorRate, getRejectWriter(), header) : null;
+    }
+
+    /**
+     * Check if given log file is compressed
+     *
+     * @param filePath Full path to log file
+     * @return true if file is gzip or zstd compressed
+     */
+    private static boolean isCompressed(String filePath)
+    {
+        try {
+            return LogFileInput.detect(Paths.get(filePath)) != LogFileInput.Compression.NONE;
+        } catch (IOException e) {
+            throw new IllegalArgumentException(
+                "Unable to read file for given path (" + filePath + "). Please make sure it exists and is readable.", e
+            );
+        }
+    }
+
+    /**
+     * Check if given date can be used as a boundary of ip_activity_counts rollup table query
+     *
+     * @param date Date range boundary
+     * @return true if date is at the start of a minute
+     */
+    protected boolean isRollupAligned(LocalDateTime date)
+    {
+        return date.getSecond() == 0 && date.getNano() == 0;
+    }
+
     /**
      * Calculate end-date by given start-date and duration
      *
@@ -265,6 +1531,6 @@ public class ParserModel
      */
     protected LocalDateTime getEndDate(LocalDateTime startDate, Duration duration)
     {
-        return startDate.plusMinutes(duration.minutes);
+        return startDate.plusSeconds(duration.seconds);
     }
 }
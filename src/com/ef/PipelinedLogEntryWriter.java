@@ -0,0 +1,179 @@
+package com.ef;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs given sink on a separate thread, so that parsing of the next chunks overlaps with writing of the previous ones.
+ * Chunks are passed through a bounded queue: parser blocks when writer falls behind, so memory stays bounded.
+ */
+public class PipelinedLogEntryWriter implements LogEntrySink
+{
+
+    /**
+     * Marks the end of chunks, compared by identity
+     */
+    private static final List<LogEntry> END = Collections.emptyList();
+
+    private final LogEntrySink sink;
+    private final BlockingQueue<List<LogEntry>> queue;
+    private final Thread writer;
+    private volatile Throwable error;
+    private volatile boolean aborted;
+    private boolean closed;
+
+    /**
+     * @param sink Sink to write chunks to on writer thread
+     * @param capacity Max number of chunks waiting to be written
+     */
+    public PipelinedLogEntryWriter(LogEntrySink sink, int capacity)
+    {
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+
+        writer = new Thread(this::write, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queue given chunk for writing, waiting while the queue is full
+     *
+     * @param entries Chunk of LogEntry items
+     * @throws SQLException If writing of previous chunks has failed
+     */
+    @Override
+    public void handle(List<LogEntry> entries)
+        throws SQLException
+    {
+        if (closed) {
+            throw new IllegalStateException("Writer is closed.");
+        }
+
+        enqueue(entries);
+    }
+
+    /**
+     * Wait for all queued chunks to be written and close the sink
+     *
+     * @throws SQLException If writing has failed
+     */
+    @Override
+    public void close()
+        throws SQLException
+    {
+        if (!closed) {
+            closed = true;
+
+            try {
+                enqueue(END);
+            } finally {
+                try {
+                    writer.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for log entries to be written.", e);
+                }
+            }
+        }
+
+        checkError();
+    }
+
+    /**
+     * Drop queued chunks, wait for the chunk being written and abort the sink
+     *
+     * @throws SQLException If sink fails to abort. Writing errors reported before are not thrown again.
+     */
+    @Override
+    public void abort()
+        throws SQLException
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        aborted = true;
+
+        Throwable reported = error;
+        queue.clear();
+        try {
+            // writer thread which has failed is gone, it has aborted the sink already
+            while (error == null && !queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                queue.clear();
+            }
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for log entries to be written.", e);
+        }
+
+        if (error != reported) {
+            checkError();
+        }
+    }
+
+    private void enqueue(List<LogEntry> entries)
+        throws SQLException
+    {
+        checkError();
+
+        try {
+            while (!queue.offer(entries, 100, TimeUnit.MILLISECONDS)) {
+                checkError();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for log entries to be written.", e);
+        }
+    }
+
+    private void checkError()
+        throws SQLException
+    {
+        Throwable e = error;
+        if (e instanceof SQLException) {
+            throw new SQLException(e.getMessage(), e);
+        }
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e != null) {
+            throw new IllegalStateException("Unable to write log entries.", e);
+        }
+    }
+
+    /**
+     * Writer thread loop
+     */
+    private void write()
+    {
+        try {
+            List<LogEntry> entries;
+            while ((entries = queue.take()) != END) {
+                if (!aborted) {
+                    sink.handle(entries);
+                }
+            }
+
+            if (aborted) {
+                sink.abort();
+            } else {
+                sink.close();
+            }
+        } catch (Throwable e) {
+            error = e;
+            try {
+                sink.abort();
+            } catch (Throwable ignored) {
+                // the first error is reported
+            }
+            // unblock close() waiting to put END
+            queue.clear();
+        }
+    }
+}
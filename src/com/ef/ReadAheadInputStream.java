@@ -0,0 +1,198 @@
+package com.ef;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads given stream ahead on a separate thread, so that reading it (e.g. decompressing a log file) overlaps with
+ * processing what was read. Blocks are passed through a bounded queue, so at most blocks * blockSize bytes are read
+ * ahead. Errors of the source stream are thrown by read() once all bytes read before them are consumed.
+ */
+public class ReadAheadInputStream extends InputStream
+{
+
+    public static final int BLOCK_SIZE = 1024 * 1024;
+    public static final int BLOCKS = 4;
+
+    private static final byte[] END = new byte[0];
+
+    private final InputStream source;
+    private final BlockingQueue<byte[]> queue;
+    private final Thread reader;
+    private volatile IOException error;
+
+    private byte[] block;
+    private int position;
+    private volatile boolean closed;
+
+    /**
+     * @param source Stream to read ahead, closed when this stream is closed
+     * @param name Name of reading thread
+     */
+    public ReadAheadInputStream(InputStream source, String name)
+    {
+        this(source, name, BLOCK_SIZE, BLOCKS);
+    }
+
+    /**
+     * @param source Stream to read ahead, closed when this stream is closed
+     * @param name Name of reading thread
+     * @param blockSize Number of bytes passed to the consumer at once
+     * @param blocks Max number of blocks read ahead
+     */
+    ReadAheadInputStream(InputStream source, String name, int blockSize, int blocks)
+    {
+        this.source = source;
+        this.queue = new ArrayBlockingQueue<>(blocks);
+
+        reader = new Thread(() -> readAhead(blockSize), name);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @Override
+    public int read()
+        throws IOException
+    {
+        if (!nextBlock()) {
+            return -1;
+        }
+
+        return block[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len)
+        throws IOException
+    {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextBlock()) {
+            return -1;
+        }
+
+        int n = Math.min(len, block.length - position);
+        System.arraycopy(block, position, b, off, n);
+        position += n;
+
+        return n;
+    }
+
+    @Override
+    public int available()
+    {
+        return block == null ? 0 : block.length - position;
+    }
+
+    /**
+     * Stop reading ahead and close source stream
+     *
+     * @throws IOException If source stream fails to close
+     */
+    @Override
+    public void close()
+        throws IOException
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        reader.interrupt();
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            source.close();
+        }
+    }
+
+    /**
+     * Make sure current block has unread bytes, taking the next block from the queue if needed
+     *
+     * @return false at the end of source stream
+     * @throws IOException If source stream failed or this stream is closed
+     */
+    private boolean nextBlock()
+        throws IOException
+    {
+        if (closed) {
+            throw new IOException("Stream is closed.");
+        }
+
+        while (block == null || position == block.length) {
+            if (block == END) {
+                return false;
+            }
+
+            try {
+                block = queue.take();
+                position = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for stream to be read.");
+            }
+
+            if (block == END && error != null) {
+                throw error;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Read source stream into blocks until its end, an error or until this stream is closed. Runs on reader thread.
+     * End marker is queued however reading ends, so the consumer never waits for a reader that is gone.
+     *
+     * @param blockSize Number of bytes of each block
+     */
+    private void readAhead(int blockSize)
+    {
+        IOException failure = null;
+        try {
+            while (failure == null) {
+                byte[] buffer = new byte[blockSize];
+                int filled = 0;
+                int n = 0;
+                try {
+                    while (filled < blockSize && (n = source.read(buffer, filled, blockSize - filled)) >= 0) {
+                        filled += n;
+                    }
+                } catch (IOException e) {
+                    // bytes read before the error are delivered first
+                    failure = e;
+                } catch (RuntimeException | Error e) {
+                    // e.g. decoder rejecting corrupt input with an unchecked exception
+                    failure = new IOException("Unable to read stream. " + e, e);
+                }
+
+                if (filled > 0) {
+                    queue.put(filled == blockSize ? buffer : Arrays.copyOf(buffer, filled));
+                }
+                if (n < 0) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed by the consumer, nobody waits for the end
+        } catch (RuntimeException | Error e) {
+            failure = new IOException("Unable to read stream. " + e, e);
+        } finally {
+            error = failure;
+            if (!closed) {
+                try {
+                    queue.put(END);
+                } catch (InterruptedException e) {
+                    // closed by the consumer while waiting for space
+                }
+            }
+        }
+    }
+}
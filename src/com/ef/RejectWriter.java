@@ -0,0 +1,111 @@
+package com.ef;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes malformed lines skipped by lenient parsing to reject file as "line number, tab, reason, tab, line" rows,
+ * see ParseErrorBudget. Rows of a set of files follow a "# file path" line, which is repeated whenever rows of files
+ * parsed concurrently interleave. Shared by threads parsing concurrently.
+ */
+public class RejectWriter implements AutoCloseable
+{
+
+    private final Writer out;
+    private final String name;
+
+    /**
+     * Header of the last row written, to know when it has to be written again
+     */
+    private String lastHeader;
+
+    /**
+     * @param out Writer to write rows to, closed when this writer is closed
+     * @param name Name of reject file, for error messages
+     */
+    RejectWriter(Writer out, String name)
+    {
+        this.out = out;
+        this.name = name;
+    }
+
+    /**
+     * Create writer of given reject file
+     *
+     * @param path File to write, appended to if exists, so that rows of previous runs are kept
+     * @return Writer
+     * @throws IllegalArgumentException If file can not be created
+     */
+    public static RejectWriter open(Path path)
+    {
+        try {
+            Writer out = Files.newBufferedWriter(
+                path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND
+            );
+            return new RejectWriter(out, path.toString());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to write reject file (" + path + ").", e);
+        }
+    }
+
+    /**
+     * Write a row of malformed line
+     *
+     * @param header File path the line belongs to, or null if a single file is parsed
+     * @param lineNumber Line number, starting at 1 at the start of the file
+     * @param reason Reason line is malformed
+     * @param line Line text
+     * @throws IllegalArgumentException If file can not be written
+     */
+    public synchronized void write(String header, long lineNumber, String reason, String line)
+    {
+        try {
+            if (header != null && !header.equals(lastHeader)) {
+                out.write("# " + header + "\n");
+                lastHeader = header;
+            }
+
+            out.write(Long.toString(lineNumber));
+            out.write('\t');
+            out.write(String.valueOf(reason));
+            out.write('\t');
+            out.write(line);
+            out.write('\n');
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to write reject file (" + name + ").", e);
+        }
+    }
+
+    /**
+     * Write buffered rows to reject file, e.g. once a parse call is done
+     *
+     * @throws IllegalArgumentException If file can not be written
+     */
+    public synchronized void flush()
+    {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to write reject file (" + name + ").", e);
+        }
+    }
+
+    /**
+     * Flush and close reject file
+     *
+     * @throws IllegalArgumentException If file can not be written
+     */
+    @Override
+    public synchronized void close()
+    {
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to write reject file (" + name + ").", e);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.ef;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Detects IPs crossing a threshold within a sliding window of given duration while log entries arrive, e.g. when
+ * following a growing log file. Requests are counted per IP in time buckets (one minute long, or shorter if window
+ * length is not a whole number of minutes); window counts are kept up to date by adding new requests and subtracting
+ * buckets which slide out of the window, so nothing is recounted or re-queried.
+ *
+ * Window ends at the bucket of the latest entry seen so far (log time, not wall-clock time). Entries older than the
+ * window are ignored. Each IP is reported once when it crosses the threshold and can be reported again only after its
+ * count drops back to the threshold.
+ */
+public class SlidingWindowDetector implements LogEntryHandler
+{
+
+    private static final long SECONDS_PER_MINUTE = 60;
+
+    private final int threshold;
+    private final ThresholdListener listener;
+
+    /**
+     * Length of a bucket, the greatest common divisor of window length and a minute
+     */
+    private final long bucketMillis;
+
+    /**
+     * Number of buckets within window
+     */
+    private final int bucketCount;
+
+    /**
+     * Ring of per-bucket counts, bucket number b is at index b % bucketCount
+     */
+    private final IpCountMap[] buckets;
+    private final long[] bucketNumbers;
+
+    private final IpCountMap window = new IpCountMap();
+    private final IpCountMap reported = new IpCountMap();
+    private final long[] parsed = new long[2];
+
+    private long newestBucket = Long.MIN_VALUE;
+    private long lateCount;
+
+    /**
+     * @param duration Window duration
+     * @param threshold Report IPs having more requests than given threshold within window
+     * @param listener Receives IPs crossing threshold
+     */
+    public SlidingWindowDetector(Duration duration, int threshold, ThresholdListener listener)
+    {
+        this.threshold = threshold;
+        this.listener = listener;
+
+        long bucketSeconds = gcd(duration.seconds, SECONDS_PER_MINUTE);
+        bucketMillis = bucketSeconds * 1000;
+        bucketCount = (int) (duration.seconds / bucketSeconds);
+
+        buckets = new IpCountMap[bucketCount];
+        bucketNumbers = new long[bucketCount];
+    }
+
+    /**
+     * Count requests of given entries, reporting IPs which cross threshold
+     *
+     * @param entries Chunk of parsed LogEntry items
+     * @throws SQLException If listener fails
+     */
+    @Override
+    public void handle(List<LogEntry> entries)
+        throws SQLException
+    {
+        if (entries instanceof LogEntryBatch) {
+            LogEntryBatch batch = (LogEntryBatch) entries;
+            for (int i = 0; i < batch.size(); i++) {
+                count(batch.getEpochMillis(i), batch.getIpHigh(i), batch.getIpLow(i));
+            }
+            return;
+        }
+
+        for (LogEntry item : entries) {
+            IpAddress.parse(item.ip, parsed);
+            count(TimestampParser.toEpochMillis(item.date), parsed[0], parsed[1]);
+        }
+    }
+
+    /**
+     * Count single request, reporting its IP if it crosses threshold
+     *
+     * @param epochMillis Request date as milliseconds since epoch (UTC)
+     * @param high Upper 64 bits of address
+     * @param low Lower 64 bits of address
+     * @throws SQLException If listener fails
+     */
+    private void count(long epochMillis, long high, long low)
+        throws SQLException
+    {
+        long bucket = Math.floorDiv(epochMillis, bucketMillis);
+
+        if (bucket > newestBucket) {
+            slideTo(bucket);
+        } else if (bucket <= newestBucket - bucketCount) {
+            lateCount++;
+            return;
+        }
+
+        int slot = (int) Math.floorMod(bucket, (long) bucketCount);
+        if (buckets[slot] == null) {
+            buckets[slot] = new IpCountMap();
+            bucketNumbers[slot] = bucket;
+        }
+
+        buckets[slot].add(high, low, 1);
+        int count = window.add(high, low, 1);
+
+        if (count > threshold && reported.get(high, low) == 0) {
+            reported.add(high, low, 1);
+            listener.crossed(high, low, count, getWindowStart());
+        }
+    }
+
+    /**
+     * Get current requests count of given IP within window
+     *
+     * @param ip Dotted IPv4 or textual IPv6 address
+     * @return Requests count
+     */
+    public int getCount(CharSequence ip)
+    {
+        return window.get(ip);
+    }
+
+    /**
+     * Get start of current window
+     *
+     * @return Window start or null if no entries were handled yet
+     */
+    public LocalDateTime getWindowStart()
+    {
+        if (newestBucket == Long.MIN_VALUE) {
+            return null;
+        }
+
+        return TimestampParser.toLocalDateTime((newestBucket - bucketCount + 1) * bucketMillis);
+    }
+
+    /**
+     * Get number of entries ignored because they were older than window
+     *
+     * @return Late entries count
+     */
+    public long getLateCount()
+    {
+        return lateCount;
+    }
+
+    /**
+     * Move window end to given bucket, subtracting buckets which are no longer within window
+     *
+     * @param bucket New newest bucket
+     */
+    private void slideTo(long bucket)
+    {
+        if (newestBucket != Long.MIN_VALUE) {
+            long expiredTo = Math.min(newestBucket, bucket - bucketCount);
+            for (long b = newestBucket - bucketCount + 1; b <= expiredTo; b++) {
+                int slot = (int) Math.floorMod(b, (long) bucketCount);
+                if (buckets[slot] != null && bucketNumbers[slot] == b) {
+                    expire(buckets[slot]);
+                    buckets[slot] = null;
+                }
+            }
+        }
+
+        newestBucket = bucket;
+    }
+
+    /**
+     * Subtract given bucket from window counts
+     *
+     * @param bucket Expired bucket
+     */
+    private void expire(IpCountMap bucket)
+    {
+        bucket.forEach((long high, long low, int count) -> {
+            if (window.add(high, low, -count) <= threshold && reported.get(high, low) > 0) {
+                reported.add(high, low, -1);
+            }
+        });
+    }
+
+    private static long gcd(long a, long b)
+    {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    /**
+     * Receives IPs crossing threshold
+     */
+    @FunctionalInterface
+    public interface ThresholdListener
+    {
+
+        /**
+         * @param high Upper 64 bits of address
+         * @param low Lower 64 bits of address
+         * @param count Requests count within window
+         * @param windowStart Window start, window end is windowStart plus duration
+         * @throws SQLException
+         */
+        void crossed(long high, long low, int count, LocalDateTime windowStart)
+            throws SQLException;
+    }
+}
@@ -0,0 +1,200 @@
+package com.ef;
+
+/**
+ * Space-Saving summary of the most requesting IPs, keyed by the two longs of IpAddress. Tracks at most capacity IPs:
+ * an untracked IP replaces the tracked IP having the lowest count and inherits that count as its possible overcount.
+ * So memory is fixed, tracked counts never undercount, and every IP having more than total / capacity requests is
+ * guaranteed to be tracked.
+ */
+public class SpaceSavingTopK
+{
+
+    private final int capacity;
+    private final long[] highs;
+    private final long[] lows;
+    private final int[] counts;
+    private final int[] errors;
+
+    /**
+     * Min-heap of slots by count, and position of each slot in it
+     */
+    private final int[] heap;
+    private final int[] heapPositions;
+
+    /**
+     * Slot of each tracked IP, plus one (IpCountMap drops zero counts)
+     */
+    private final IpCountMap slots;
+    private int size;
+    private long total;
+
+    /**
+     * @param capacity Max number of tracked IPs
+     */
+    public SpaceSavingTopK(int capacity)
+    {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive, actual: " + capacity);
+        }
+
+        this.capacity = capacity;
+        highs = new long[capacity];
+        lows = new long[capacity];
+        counts = new int[capacity];
+        errors = new int[capacity];
+        heap = new int[capacity];
+        heapPositions = new int[capacity];
+        slots = new IpCountMap(capacity);
+    }
+
+    /**
+     * Add given number of requests of given IP
+     *
+     * @param high Upper 64 bits of address
+     * @param low Lower 64 bits of address
+     * @param count Number of requests to add, not negative
+     */
+    public void add(long high, long low, int count)
+    {
+        total += count;
+
+        int slot = slots.get(high, low) - 1;
+        if (slot < 0 && size < capacity) {
+            slot = size++;
+            highs[slot] = high;
+            lows[slot] = low;
+            counts[slot] = count;
+            slots.add(high, low, slot + 1);
+            siftUp(slot, slot);
+            return;
+        }
+
+        if (slot < 0) {
+            // replace the least requesting IP, its count bounds how much the new IP may have been missed
+            slot = heap[0];
+            slots.add(highs[slot], lows[slot], -(slot + 1));
+            errors[slot] = counts[slot];
+            highs[slot] = high;
+            lows[slot] = low;
+            slots.add(high, low, slot + 1);
+        }
+
+        counts[slot] = (int) Math.min((long) counts[slot] + count, Integer.MAX_VALUE);
+        siftDown(heapPositions[slot]);
+    }
+
+    /**
+     * Get upper bound of count of given IP
+     *
+     * @param high Upper 64 bits of address
+     * @param low Lower 64 bits of address
+     * @return Tracked count of IP, or the lowest tracked count (the most an untracked IP may have) if it is not tracked
+     */
+    public int estimate(long high, long low)
+    {
+        int slot = slots.get(high, low) - 1;
+        if (slot >= 0) {
+            return counts[slot];
+        }
+
+        return size < capacity ? 0 : counts[heap[0]];
+    }
+
+    /**
+     * Pass each tracked IP and upper bound of its count to given consumer, in no particular order
+     *
+     * @param consumer Receives IP and count
+     */
+    public void forEach(IpCountMap.IpCountConsumer consumer)
+    {
+        for (int slot = 0; slot < size; slot++) {
+            consumer.accept(highs[slot], lows[slot], counts[slot]);
+        }
+    }
+
+    /**
+     * Get lower bound of count of given tracked IP
+     *
+     * @param high Upper 64 bits of address
+     * @param low Lower 64 bits of address
+     * @return Count minus possible overcount, or 0 if IP is not tracked
+     */
+    public int guaranteedCount(long high, long low)
+    {
+        int slot = slots.get(high, low) - 1;
+
+        return slot >= 0 ? counts[slot] - errors[slot] : 0;
+    }
+
+    /**
+     * Get count above which an IP is guaranteed to be tracked
+     *
+     * @return total / capacity
+     */
+    public long getGuaranteedThreshold()
+    {
+        return total / capacity;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    public long getTotal()
+    {
+        return total;
+    }
+
+    /**
+     * Move given slot up from given heap position until its parent has a lower count
+     */
+    private void siftUp(int slot, int position)
+    {
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (counts[heap[parent]] <= counts[slot]) {
+                break;
+            }
+
+            heap[position] = heap[parent];
+            heapPositions[heap[position]] = position;
+            position = parent;
+        }
+
+        heap[position] = slot;
+        heapPositions[slot] = position;
+    }
+
+    /**
+     * Move heap item at given position down until its children have higher counts
+     */
+    private void siftDown(int position)
+    {
+        int slot = heap[position];
+        while (true) {
+            int child = position * 2 + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) {
+                child++;
+            }
+            if (counts[heap[child]] >= counts[slot]) {
+                break;
+            }
+
+            heap[position] = heap[child];
+            heapPositions[heap[position]] = position;
+            position = child;
+        }
+
+        heap[position] = slot;
+        heapPositions[slot] = position;
+    }
+}
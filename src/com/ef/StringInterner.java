@@ -0,0 +1,112 @@
+package com.ef;
+
+/**
+ * Bounded cache of field values that repeat across log lines (requests, user agents), so that parsing a line returns
+ * the cached String instead of allocating a new one. Values are looked up by content of the line itself, so a hit
+ * allocates nothing.
+ *
+ * Cache is 2-way set associative: a value may only be kept in one of two slots chosen by its hash, and the less
+ * recently used one of them is evicted. Memory is bounded by capacity and MAX_LENGTH no matter how many distinct
+ * values (e.g. hostile unique user agents) are seen; those just keep replacing each other.
+ *
+ * Safe to share between parsing threads without locking: slots hold immutable Strings, and a lost update only costs
+ * a cache miss.
+ */
+public class StringInterner
+{
+
+    /**
+     * Longer values are not cached
+     */
+    public static final int MAX_LENGTH = 512;
+
+    private final String[] slots;
+    private final int mask;
+
+    /**
+     * @param capacity Max number of cached values, rounded up to a power of two
+     */
+    public StringInterner(int capacity)
+    {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Capacity must be at least 2, actual: " + capacity);
+        }
+
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        slots = new String[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Get String of given range of chars, cached one if possible
+     *
+     * @param text Text holding value
+     * @param from Value start index, inclusive
+     * @param to Value end index, exclusive
+     * @return Value
+     */
+    public String intern(CharSequence text, int from, int to)
+    {
+        int length = to - from;
+        if (length > MAX_LENGTH) {
+            return text.subSequence(from, to).toString();
+        }
+
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                // bytes of ByteSequence are not chars of its decoded String beyond ASCII, so they can not be compared
+                return text.subSequence(from, to).toString();
+            }
+            hash = 31 * hash + c;
+        }
+        hash ^= hash >>> 16;
+
+        int first = hash & mask;
+        int second = first ^ 1;
+
+        String value = slots[first];
+        if (matches(value, text, from, length)) {
+            return value;
+        }
+
+        value = slots[second];
+        if (matches(value, text, from, length)) {
+            // keep recently used value in the first slot, so the other one is evicted next
+            slots[second] = slots[first];
+            slots[first] = value;
+            return value;
+        }
+
+        value = text.subSequence(from, to).toString();
+        slots[second] = slots[first];
+        slots[first] = value;
+
+        return value;
+    }
+
+    /**
+     * Check if given cached value has the same chars as given range
+     *
+     * @param value Cached value or null
+     * @param text Text holding range
+     * @param from Range start index
+     * @param length Range length
+     * @return true if chars are the same
+     */
+    private static boolean matches(String value, CharSequence text, int from, int length)
+    {
+        if (value == null || value.length() != length) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) != text.charAt(from + i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
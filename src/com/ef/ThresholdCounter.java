@@ -0,0 +1,80 @@
+package com.ef;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory alternative to ParserModel.findAboveThresholdIPs(): counts requests per IP for a given date range while
+ * log file is being parsed, so no database is needed to find above-threshold IPs of a log file.
+ */
+public class ThresholdCounter implements LogEntryHandler
+{
+
+    private final LocalDateTime startDate;
+    private final LocalDateTime endDate;
+    private final long startMillis;
+    private final long endMillis;
+    private final int threshold;
+    private final IpCountMap counts = new IpCountMap();
+
+    /**
+     * @param startDate Date range start, inclusive
+     * @param endDate Date range end, exclusive
+     * @param threshold Look for IPs having more requests than given threshold in given date range
+     */
+    public ThresholdCounter(LocalDateTime startDate, LocalDateTime endDate, int threshold)
+    {
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.startMillis = TimestampParser.toEpochMillis(startDate);
+        this.endMillis = TimestampParser.toEpochMillis(endDate);
+        this.threshold = threshold;
+    }
+
+    /**
+     * Count requests of given entries which are within the date range
+     *
+     * @param entries Chunk of parsed LogEntry items
+     */
+    @Override
+    public void handle(List<LogEntry> entries)
+    {
+        if (entries instanceof LogEntryBatch) {
+            LogEntryBatch batch = (LogEntryBatch) entries;
+            for (int i = 0; i < batch.size(); i++) {
+                long millis = batch.getEpochMillis(i);
+                if (millis >= startMillis && millis < endMillis) {
+                    counts.add(batch.getIpHigh(i), batch.getIpLow(i), 1);
+                }
+            }
+            return;
+        }
+
+        for (LogEntry item : entries) {
+            if (!item.date.isBefore(startDate) && item.date.isBefore(endDate)) {
+                counts.increment(item.ip);
+            }
+        }
+    }
+
+    /**
+     * Get IPs having more than threshold requests among all entries handled so far
+     *
+     * @return Map of IP to its requests count, same as ParserModel.findAboveThresholdIPs() returns
+     */
+    public Map<String, Integer> getAboveThresholdIPs()
+    {
+        return getAboveThresholdIPCounts().toMap();
+    }
+
+    /**
+     * Get IPs having more than threshold requests among all entries handled so far
+     *
+     * @return Map of IP to its requests count, same as ParserModel.findAboveThresholdIPCounts() returns
+     */
+    public IpCountMap getAboveThresholdIPCounts()
+    {
+        return counts.aboveThreshold(threshold);
+    }
+}
@@ -0,0 +1,93 @@
+package com.ef;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Single (startDate, duration, threshold) question asked of request logs, e.g. one of many windows evaluated at once
+ * by ParserModel.findAboveThresholdIPCounts(List).
+ */
+public final class ThresholdWindow
+{
+
+    private final LocalDateTime startDate;
+    private final Duration duration;
+    private final int threshold;
+
+    /**
+     * @param startDate Date range start
+     * @param duration Is used to calculate date range end value
+     * @param threshold Look for IPs having more requests than given threshold in calculated date range
+     */
+    public ThresholdWindow(LocalDateTime startDate, Duration duration, int threshold)
+    {
+        this.startDate = Objects.requireNonNull(startDate);
+        this.duration = Objects.requireNonNull(duration);
+        this.threshold = threshold;
+    }
+
+    /**
+     * Create consecutive windows of given duration, the first starting at startDate and the last starting before
+     * endDate, e.g. every hour of a day
+     *
+     * @param startDate Start of the first window
+     * @param endDate No window starts at or after this date
+     * @param duration Duration of each window, also the step between window starts
+     * @param threshold Threshold of each window
+     * @return Windows ordered by start date
+     */
+    public static List<ThresholdWindow> every(
+        LocalDateTime startDate, LocalDateTime endDate, Duration duration, int threshold
+    )
+    {
+        List<ThresholdWindow> windows = new ArrayList<>();
+        for (LocalDateTime date = startDate; date.isBefore(endDate); date = date.plusSeconds(duration.seconds)) {
+            windows.add(new ThresholdWindow(date, duration, threshold));
+        }
+
+        return windows;
+    }
+
+    public LocalDateTime getStartDate()
+    {
+        return startDate;
+    }
+
+    public Duration getDuration()
+    {
+        return duration;
+    }
+
+    public int getThreshold()
+    {
+        return threshold;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ThresholdWindow)) {
+            return false;
+        }
+
+        ThresholdWindow other = (ThresholdWindow) obj;
+        return startDate.equals(other.startDate) && duration.equals(other.duration) && threshold == other.threshold;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(startDate, duration, threshold);
+    }
+
+    @Override
+    public String toString()
+    {
+        return LogEntry.formatter.format(startDate) + " " + duration.toString().toLowerCase() + " > " + threshold;
+    }
+}
@@ -0,0 +1,281 @@
+package com.ef;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.Month;
+import java.time.Year;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Parses log file timestamps having fixed "yyyy-MM-dd HH:mm:ss.SSS" layout (see LogEntry.formatter) by reading digits
+ * at known positions. Consecutive log lines mostly share the same minute, so the date/hour/minute part of the last
+ * parsed timestamp is cached and only seconds and millis are read for the following lines.
+ *
+ * Anything not matching the layout exactly is handed over to LogEntry.formatter, so results and errors are the same
+ * as of LocalDateTime.parse(). Formatting of epoch millis uses the same cache the other way round.
+ */
+public final class TimestampParser
+{
+
+    private static final int LENGTH = 23;
+    private static final int MINUTE_PREFIX_LENGTH = 16;
+
+    /**
+     * Last parsed "yyyy-MM-dd HH:mm" prefix. Immutable, so it is safe to share between parsing threads.
+     */
+    private static volatile Minute lastMinute = new Minute("", null, 0, 0, 0);
+
+    private TimestampParser()
+    {
+    }
+
+    /**
+     * Parse given timestamp
+     *
+     * @param text Timestamp having "yyyy-MM-dd HH:mm:ss.SSS" format
+     * @return LocalDateTime object
+     * @throws DateTimeParseException If text can not be parsed
+     */
+    public static LocalDateTime parse(CharSequence text)
+    {
+        return parse(text, 0, text.length());
+    }
+
+    /**
+     * Parse timestamp located in given range of text
+     *
+     * @param text Text holding timestamp
+     * @param from Timestamp start index, inclusive
+     * @param to Timestamp end index, exclusive
+     * @return LocalDateTime object
+     * @throws DateTimeParseException If timestamp can not be parsed
+     */
+    public static LocalDateTime parse(CharSequence text, int from, int to)
+    {
+        Minute minute = to - from == LENGTH ? findMinute(text, from) : null;
+        int millisOfMinute = minute == null ? -1 : parseMillisOfMinute(text, from);
+        if (millisOfMinute < 0) {
+            return LocalDateTime.parse(text.subSequence(from, to), LogEntry.formatter);
+        }
+
+        int second = millisOfMinute / 1_000;
+        int nanos = millisOfMinute % 1_000 * 1_000_000;
+
+        return LocalDateTime.of(minute.date, LocalTime.of(minute.hour, minute.minute, second, nanos));
+    }
+
+    /**
+     * Parse given timestamp into milliseconds since epoch, reading it as UTC time.
+     * Does not create any objects as long as timestamp has the same minute as previously parsed one.
+     *
+     * @param text Timestamp having "yyyy-MM-dd HH:mm:ss.SSS" format
+     * @return Milliseconds since 1970-01-01 00:00:00.000
+     * @throws DateTimeParseException If text can not be parsed
+     */
+    public static long parseEpochMillis(CharSequence text)
+    {
+        return parseEpochMillis(text, 0, text.length());
+    }
+
+    /**
+     * Parse timestamp located in given range of text into milliseconds since epoch, reading it as UTC time
+     *
+     * @param text Text holding timestamp
+     * @param from Timestamp start index, inclusive
+     * @param to Timestamp end index, exclusive
+     * @return Milliseconds since 1970-01-01 00:00:00.000
+     * @throws DateTimeParseException If timestamp can not be parsed
+     */
+    public static long parseEpochMillis(CharSequence text, int from, int to)
+    {
+        Minute minute = to - from == LENGTH ? findMinute(text, from) : null;
+        int millisOfMinute = minute == null ? -1 : parseMillisOfMinute(text, from);
+        if (millisOfMinute < 0) {
+            return toEpochMillis(LocalDateTime.parse(text.subSequence(from, to), LogEntry.formatter));
+        }
+
+        return minute.epochMillis + millisOfMinute;
+    }
+
+    /**
+     * Convert given date to milliseconds since epoch, reading it as UTC time
+     *
+     * @param date Date to convert
+     * @return Milliseconds since 1970-01-01 00:00:00.000
+     */
+    public static long toEpochMillis(LocalDateTime date)
+    {
+        return date.toEpochSecond(ZoneOffset.UTC) * 1_000 + date.getNano() / 1_000_000;
+    }
+
+    /**
+     * Convert given milliseconds since epoch to date, reading them as UTC time
+     *
+     * @param epochMillis Milliseconds since 1970-01-01 00:00:00.000
+     * @return LocalDateTime object
+     */
+    public static LocalDateTime toLocalDateTime(long epochMillis)
+    {
+        return LocalDateTime.ofEpochSecond(
+            Math.floorDiv(epochMillis, 1_000), (int) Math.floorMod(epochMillis, 1_000L) * 1_000_000, ZoneOffset.UTC
+        );
+    }
+
+    /**
+     * Format given milliseconds since epoch as "yyyy-MM-dd HH:mm:ss.SSS" timestamp, reading them as UTC time.
+     * Only the returned String is created as long as timestamp has the same minute as previously handled one.
+     *
+     * @param epochMillis Milliseconds since 1970-01-01 00:00:00.000
+     * @return Timestamp text, the same as of LogEntry.formatter
+     */
+    public static String format(long epochMillis)
+    {
+        Minute minute = lastMinute;
+        if (minute.prefix.isEmpty() || epochMillis < minute.epochMillis || epochMillis >= minute.epochMillis + 60_000) {
+            LocalDateTime date = toLocalDateTime(epochMillis);
+            String text = LogEntry.formatter.format(date);
+            if (text.length() != LENGTH) {
+                // years beyond 4 digits do not fit the layout
+                return text;
+            }
+
+            minute = new Minute(
+                text.substring(0, MINUTE_PREFIX_LENGTH), date.toLocalDate(), date.getHour(), date.getMinute(),
+                Math.floorDiv(epochMillis, 60_000L) * 60_000
+            );
+            lastMinute = minute;
+        }
+
+        int millisOfMinute = (int) (epochMillis - minute.epochMillis);
+        int second = millisOfMinute / 1_000;
+        int millis = millisOfMinute % 1_000;
+
+        char[] chars = new char[LENGTH];
+        minute.prefix.getChars(0, MINUTE_PREFIX_LENGTH, chars, 0);
+        chars[16] = ':';
+        chars[17] = (char) ('0' + second / 10);
+        chars[18] = (char) ('0' + second % 10);
+        chars[19] = '.';
+        chars[20] = (char) ('0' + millis / 100);
+        chars[21] = (char) ('0' + millis / 10 % 10);
+        chars[22] = (char) ('0' + millis % 10);
+
+        return new String(chars);
+    }
+
+    /**
+     * Get "yyyy-MM-dd HH:mm" part of timestamp starting at given index, from cache if possible
+     *
+     * @param text Text holding timestamp
+     * @param from Timestamp start index
+     * @return Minute or null if timestamp does not match the layout
+     */
+    private static Minute findMinute(CharSequence text, int from)
+    {
+        Minute minute = lastMinute;
+        if (minute.matches(text, from)) {
+            return minute;
+        }
+
+        int year = digits(text, from, 4);
+        int month = digits(text, from + 5, 2);
+        int day = digits(text, from + 8, 2);
+        int hour = digits(text, from + 11, 2);
+        int min = digits(text, from + 14, 2);
+
+        if (year < 1 || month < 1 || month > 12 || day < 1 || day > Month.of(month).length(Year.isLeap(year))
+            || hour < 0 || hour > 23 || min < 0 || min > 59
+            || text.charAt(from + 4) != '-' || text.charAt(from + 7) != '-' || text.charAt(from + 10) != ' '
+            || text.charAt(from + 13) != ':') {
+            // leave invalid or unusual values to the formatter
+            return null;
+        }
+
+        LocalDate date = LocalDate.of(year, month, day);
+        long epochMillis = (date.toEpochDay() * 86_400 + hour * 3_600 + min * 60) * 1_000L;
+
+        minute = new Minute(text.subSequence(from, from + MINUTE_PREFIX_LENGTH).toString(), date, hour, min, epochMillis);
+        lastMinute = minute;
+
+        return minute;
+    }
+
+    /**
+     * Read ":ss.SSS" part of timestamp starting at given index
+     *
+     * @param text Text holding timestamp
+     * @param from Timestamp start index
+     * @return Milliseconds passed since the start of timestamp's minute or -1 if it does not match the layout
+     */
+    private static int parseMillisOfMinute(CharSequence text, int from)
+    {
+        int second = digits(text, from + 17, 2);
+        int millis = digits(text, from + 20, 3);
+
+        if (second < 0 || second > 59 || millis < 0
+            || text.charAt(from + 16) != ':' || text.charAt(from + 19) != '.') {
+            return -1;
+        }
+
+        return second * 1_000 + millis;
+    }
+
+    /**
+     * Read non-negative number of given digits count
+     *
+     * @param text Text to read from
+     * @param from Index of first digit
+     * @param cnt Number of digits
+     * @return Number read or -1 if any of the chars is not a digit
+     */
+    private static int digits(CharSequence text, int from, int cnt)
+    {
+        int value = 0;
+        for (int i = from; i < from + cnt; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+
+        return value;
+    }
+
+    private static final class Minute
+    {
+
+        final String prefix;
+        final LocalDate date;
+        final int hour;
+        final int minute;
+        final long epochMillis;
+
+        Minute(String prefix, LocalDate date, int hour, int minute, long epochMillis)
+        {
+            this.prefix = prefix;
+            this.date = date;
+            this.hour = hour;
+            this.minute = minute;
+            this.epochMillis = epochMillis;
+        }
+
+        boolean matches(CharSequence text, int from)
+        {
+            if (prefix.isEmpty()) {
+                return false;
+            }
+
+            // compare from the end, minutes differ much more often than years
+            for (int i = MINUTE_PREFIX_LENGTH - 1; i >= 0; i--) {
+                if (prefix.charAt(i) != text.charAt(from + i)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.ef;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BulkLogEntryLoaderTest
+{
+
+    @Test
+    public void testWriteRow_whenFieldsHaveSpecialChars_theyAreEscapedForLoadData() throws IOException
+    {
+        LogEntry item = new LogEntry();
+        item.setDate("2017-01-01 00:00:11.763");
+        item.ip = "192.168.234.82";
+        item.request = "GET /a\\b\tc HTTP/1.1";
+        item.setStatus(200);
+        item.userAgent = "line\nbreak";
+
+        StringWriter out = new StringWriter();
+        BulkLogEntryLoader.writeRow(out, item);
+
+        Assert.assertEquals(
+            "2017-01-01 00:00:11.763\t192.168.234.82\tGET /a\\\\b\\tc HTTP/1.1\t200\tline\\nbreak\n", out.toString()
+        );
+    }
+
+    @Test
+    public void testWriteRow_whenIPIsIPv4Mapped_IPv4TextIsWritten() throws IOException
+    {
+        LogEntry item = new LogEntry();
+        item.setDate("2017-01-01 00:00:11.763");
+        item.ip = "::FFFF:192.168.234.82";
+        item.request = "GET / HTTP/1.1";
+        item.setStatus(200);
+        item.userAgent = "swcd";
+
+        StringWriter out = new StringWriter();
+        BulkLogEntryLoader.writeRow(out, item);
+
+        Assert.assertEquals("2017-01-01 00:00:11.763\t192.168.234.82\tGET / HTTP/1.1\t200\tswcd\n", out.toString());
+    }
+
+    @Test
+    public void testWriteRow_whenBatchRowIsWritten_rowIsTheSameAsOfItsView() throws IOException
+    {
+        LogEntryBatch batch = new LogEntryBatch();
+        IpAddress ip = IpAddress.parse("192.168.234.82");
+        batch.add(
+            TimestampParser.parseEpochMillis("2017-01-01 00:00:11.763"), ip.high, ip.low, "GET /a\tb HTTP/1.1", 200,
+            null
+        );
+        ip = IpAddress.parse("2001:db8::1");
+        batch.add(TimestampParser.parseEpochMillis("2017-01-01 00:01:02.003"), ip.high, ip.low, "GET /", 404, "swcd");
+
+        for (int i = 0; i < batch.size(); i++) {
+            StringWriter expected = new StringWriter();
+            BulkLogEntryLoader.writeRow(expected, batch.get(i));
+
+            StringWriter out = new StringWriter();
+            BulkLogEntryLoader.writeRow(out, batch, i);
+
+            Assert.assertEquals(expected.toString(), out.toString());
+        }
+    }
+}
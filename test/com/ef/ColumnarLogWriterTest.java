@@ -0,0 +1,103 @@
+package com.ef;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ColumnarLogWriterTest
+{
+
+    private static TestUtils util;
+
+    @Test
+    public void testParseColumnar_whenParsedFileIsWritten_sameItemsAreReadBackInSameChunks()
+        throws IOException, SQLException
+    {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 25; i++) {
+            content.append("2017-01-01 13:0").append(i % 10).append(":11.").append(100 + i).append('|')
+                .append(i % 5 == 0 ? "2001:db8::" + (i + 1) : "192.168.0." + (i % 3))
+                .append("|\"GET /").append(i % 2).append(" HTTP/1.1\"|").append(200 + i)
+                .append("|\"agent ").append(i % 4).append("\"\n");
+        }
+        File logFile = util.prepareTestFile(content.toString());
+
+        ParserModel parser = new ParserModel();
+        List<LogEntry> expected = parser.parse(logFile.getAbsolutePath());
+
+        File columnarFile = File.createTempFile("parsed", ".eflc");
+        columnarFile.deleteOnExit();
+
+        try (LogEntrySink writer = parser.newColumnarWriter(columnarFile.getAbsolutePath())) {
+            parser.parse(logFile.getAbsolutePath(), 10, writer);
+        }
+
+        List<List<LogEntry>> chunks = new ArrayList<>();
+        parser.parseColumnar(columnarFile.getAbsolutePath(), chunks::add);
+
+        Assert.assertEquals(3, chunks.size());
+        Assert.assertEquals(10, chunks.get(0).size());
+        Assert.assertEquals(5, chunks.get(2).size());
+
+        List<LogEntry> list = new ArrayList<>();
+        chunks.forEach(list::addAll);
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i).toString(), list.get(i).toString());
+        }
+        Assert.assertEquals("2001:db8::6", list.get(5).ip);
+
+        // request and user agent values are stored once per block
+        Assert.assertTrue(Files.size(columnarFile.toPath()) < Files.size(logFile.toPath()));
+    }
+
+    @Test
+    public void testRead_whenValuesAreNullOrNotAscii_theyAreReadBack()
+        throws IOException, SQLException
+    {
+        LogEntry item = new LogEntry();
+        item.setDate("2017-01-01 00:00:11.763");
+        item.ip = "10.0.0.1";
+        item.request = "GET /caf\u00e9 HTTP/1.1";
+        item.setStatus(404);
+        item.userAgent = null;
+
+        List<LogEntry> chunk = new ArrayList<>();
+        chunk.add(item);
+
+        File columnarFile = File.createTempFile("parsed", ".eflc");
+        columnarFile.deleteOnExit();
+
+        try (ColumnarLogWriter writer = new ColumnarLogWriter(columnarFile.toPath())) {
+            writer.handle(chunk);
+            writer.handle(new ArrayList<>());
+            writer.handle(chunk);
+
+            Assert.assertEquals(2, writer.getWrittenCount());
+        }
+
+        List<LogEntry> list = new ArrayList<>();
+        new ColumnarLogReader().read(columnarFile.toPath(), list::addAll);
+
+        Assert.assertEquals(2, list.size());
+        Assert.assertEquals("2017-01-01 00:00:11.763", util.formatter.format(list.get(1).date));
+        Assert.assertEquals("GET /caf\u00e9 HTTP/1.1", list.get(1).request);
+        Assert.assertEquals(404, list.get(1).getStatus());
+        Assert.assertNull(list.get(1).userAgent);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseColumnar_whenFileIsNotColumnar_IllegalArgumentExceptionIsThrown()
+        throws SQLException
+    {
+        File logFile = util.prepareTestFile(
+            "2017-01-01 00:00:11.763|192.168.234.82|\"GET / HTTP/1.1\"|200|\"swcd\""
+        );
+
+        new ParserModel().parseColumnar(logFile.getAbsolutePath(), entries -> { });
+    }
+}
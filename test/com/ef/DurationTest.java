@@ -0,0 +1,58 @@
+package com.ef;
+
+import java.time.LocalDateTime;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DurationTest
+{
+
+    @Test
+    public void testParse_whenNameOrAmountWithUnitIsGiven_durationOfThatLengthIsReturned()
+    {
+        Assert.assertSame(Duration.HOURLY, Duration.parse("hourly"));
+        Assert.assertSame(Duration.DAILY, Duration.parse("DAILY"));
+        Assert.assertSame(Duration.HOURLY, Duration.parse("60m"));
+        Assert.assertSame(Duration.DAILY, Duration.parse("24h"));
+
+        Assert.assertEquals(90, Duration.parse("90s").seconds);
+        Assert.assertEquals(5 * 60, Duration.parse("5m").seconds);
+        Assert.assertEquals(15 * 60, Duration.parse("15M").seconds);
+        Assert.assertEquals(7 * 24 * 60 * 60, Duration.parse("7d").seconds);
+
+        // names are normalized to the largest whole unit
+        Assert.assertEquals("2m", Duration.parse("120s").toString());
+        Assert.assertEquals("90s", Duration.parse("90s").toString());
+        Assert.assertEquals(Duration.parse("5m"), Duration.parse("300s"));
+    }
+
+    @Test
+    public void testParse_whenTextIsNotValidDuration_IllegalArgumentExceptionIsThrown()
+    {
+        String[] invalid = new String[]{"", "m", "5", "0m", "-5m", "5w", "weekly", "1.5h", "99999999999d"};
+
+        for (String text : invalid) {
+            try {
+                Duration.parse(text);
+                Assert.fail("Expected IllegalArgumentException for " + text);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testGetBlockReason_whenCustomDurationIsGiven_reasonHasItsNameAndEndDate()
+    {
+        ParserModel parser = new ParserModel();
+        LocalDateTime startDate = parser.prepareDateArgument("2017-01-01.13:00:00");
+
+        String reason = parser.getBlockReason(250, startDate, Duration.parse("90s"), 200);
+
+        Assert.assertEquals(
+            "90s threshold (200) crossed (250) in the following dates range: "
+                + "2017-01-01 13:00:00.000 - 2017-01-01 13:01:30.000",
+            reason
+        );
+    }
+}
@@ -0,0 +1,53 @@
+package com.ef;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ExpiringLruCacheTest
+{
+
+    private long now;
+
+    @Test
+    public void testGet_whenCacheIsFull_leastRecentlyUsedValueIsEvicted()
+    {
+        ExpiringLruCache<String, Integer> cache = new ExpiringLruCache<>(2, 60, TimeUnit.SECONDS, () -> now);
+
+        cache.put("1.1.1.1", 1);
+        cache.put("2.2.2.2", 2);
+        Assert.assertEquals(Integer.valueOf(1), cache.get("1.1.1.1"));
+
+        cache.put("3.3.3.3", 3);
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertNull(cache.get("2.2.2.2"));
+        Assert.assertEquals(Integer.valueOf(1), cache.get("1.1.1.1"));
+        Assert.assertEquals(Integer.valueOf(3), cache.get("3.3.3.3"));
+    }
+
+    @Test
+    public void testGet_whenTtlHasPassed_valueIsNotReturned()
+    {
+        ExpiringLruCache<String, Integer> cache = new ExpiringLruCache<>(2, 60, TimeUnit.SECONDS, () -> now);
+
+        cache.put("1.1.1.1", 1);
+        now += TimeUnit.SECONDS.toNanos(59);
+        Assert.assertEquals(Integer.valueOf(1), cache.get("1.1.1.1"));
+
+        // reading a value does not extend its lifetime
+        now += TimeUnit.SECONDS.toNanos(1);
+        Assert.assertNull(cache.get("1.1.1.1"));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testPut_whenSizeIsZero_nothingIsCached()
+    {
+        ExpiringLruCache<String, Integer> cache = new ExpiringLruCache<>(0, 60, TimeUnit.SECONDS, () -> now);
+
+        cache.put("1.1.1.1", 1);
+
+        Assert.assertNull(cache.get("1.1.1.1"));
+    }
+}
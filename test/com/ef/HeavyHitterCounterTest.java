@@ -0,0 +1,105 @@
+package com.ef;
+
+import java.time.LocalDateTime;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HeavyHitterCounterTest
+{
+
+    private static TestUtils util;
+
+    @Test
+    public void testCountMinSketch_whenManyIPsAreCounted_estimatesNeverUndercountAndStayWithinBound()
+    {
+        CountMinSketch sketch = new CountMinSketch(0.001, 0.01);
+        IpCountMap exact = new IpCountMap();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100_000; i++) {
+            // a tenth of requests come from 10 IPs, the rest from 50000 IPs
+            long low = i % 10 == 0 ? random.nextInt(10) : 1_000 + random.nextInt(50_000);
+            sketch.add(0, low, 1);
+            exact.add(0, low, 1);
+        }
+
+        Assert.assertEquals(100_000, sketch.getTotal());
+        Assert.assertEquals(2719, sketch.getWidth());
+        Assert.assertEquals(5, sketch.getDepth());
+
+        int[] overBound = {0};
+        exact.forEach((long high, long low, int count) -> {
+            int estimate = sketch.estimate(high, low);
+            Assert.assertTrue(estimate >= count);
+            if (estimate - count > 0.001 * 100_000) {
+                overBound[0]++;
+            }
+        });
+        Assert.assertTrue("IPs over bound: " + overBound[0], overBound[0] <= exact.size() * 0.01);
+    }
+
+    @Test
+    public void testSpaceSaving_whenMoreIPsThanCapacityAreCounted_frequentIPsAreTrackedWithBoundedError()
+    {
+        SpaceSavingTopK topK = new SpaceSavingTopK(100);
+        IpCountMap exact = new IpCountMap();
+        Random random = new Random(7);
+
+        for (int i = 0; i < 50_000; i++) {
+            long low = i % 5 == 0 ? random.nextInt(5) : 100 + random.nextInt(20_000);
+            topK.add(1, low, 1);
+            exact.add(1, low, 1);
+        }
+
+        Assert.assertEquals(100, topK.size());
+        Assert.assertEquals(500, topK.getGuaranteedThreshold());
+
+        // each of 5 frequent IPs has about 2000 requests, far above total / capacity
+        for (long low = 0; low < 5; low++) {
+            int count = exact.get(1, low);
+            Assert.assertTrue(topK.estimate(1, low) >= count);
+            Assert.assertTrue(topK.guaranteedCount(1, low) <= count);
+            Assert.assertTrue(topK.estimate(1, low) - count <= topK.getGuaranteedThreshold());
+        }
+        topK.forEach((long high, long low, int count) -> Assert.assertTrue(count >= exact.get(high, low)));
+    }
+
+    @Test
+    public void testVerifier_whenLogHasManyDistinctIPs_resultIsTheSameAsOfThresholdCounter()
+    {
+        LocalDateTime startDate = new ParserModel().prepareDateArgument("2017-01-01.00:00:00");
+        long startMillis = TimestampParser.toEpochMillis(startDate);
+        Random random = new Random(1);
+
+        LogEntryBatch batch = new LogEntryBatch();
+        for (int i = 0; i < 200_000; i++) {
+            // attackers send 0.5% of requests each, spoofed IPs one or two requests each
+            long low = i % 20 < 2 ? i % 20 : (i % 20 == 2 ? 2 + random.nextInt(3) : 1_000 + random.nextInt(100_000));
+            // some requests fall after the day
+            long millis = startMillis + (i % 100 == 99 ? 86_400_000L : i * 400L);
+            batch.add(millis, 0, low, "GET / HTTP/1.1", 200, "agent");
+        }
+
+        ParserModel parser = new ParserModel();
+        ThresholdCounter exact = parser.newThresholdCounter(startDate, Duration.DAILY, 500);
+        exact.handle(batch);
+
+        HeavyHitterCounter counter = parser.newHeavyHitterCounter(startDate, Duration.DAILY, 500, 1_000, 0.001);
+        counter.handle(batch.slice(0, 100_000));
+        counter.handle(batch.slice(100_000, batch.size()));
+        Assert.assertTrue(counter.isComplete());
+
+        IpCountMap candidates = counter.getCandidates();
+        Assert.assertTrue(candidates.size() >= 5);
+        Assert.assertTrue(candidates.size() < 1_000);
+
+        HeavyHitterCounter.Verifier verifier = counter.newVerifier();
+        verifier.handle(batch);
+
+        IpCountMap expected = exact.getAboveThresholdIPCounts();
+        IpCountMap result = verifier.getAboveThresholdIPCounts();
+        Assert.assertEquals(5, expected.size());
+        Assert.assertEquals(expected.toMap(), result.toMap());
+    }
+}
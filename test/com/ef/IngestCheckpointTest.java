@@ -0,0 +1,194 @@
+package com.ef;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IngestCheckpointTest
+{
+
+    private static final String LINE_FIRST = "2017-01-01 00:00:11.763|192.168.234.82|\"GET / HTTP/1.1\"|200|\"swcd\"\n";
+    private static final String LINE_SECOND = "2017-01-01 00:00:21.164|192.168.169.194|\"GET / HTTP/1.1\"|200|\"agent\"\n";
+    private static final String LINE_THIRD = "2017-01-01 00:00:23.003|192.168.247.138|\"GET / HTTP/1.1\"|200|\"agent\"\n";
+
+    @Test
+    public void testParseFrom_whenLinesAreAppended_onlyNewCompleteLinesAreParsed()
+        throws IOException, SQLException
+    {
+        Path log = TestUtils.prepareTestFile(LINE_FIRST).toPath();
+        Path checkpointFile = newCheckpointFile();
+
+        List<String> ips = ingest(log, checkpointFile);
+        Assert.assertEquals(1, ips.size());
+        Assert.assertEquals("192.168.234.82", ips.get(0));
+
+        // nothing new
+        Assert.assertTrue(ingest(log, checkpointFile).isEmpty());
+
+        // trailing line without line break is still being written, it is left for the next run
+        String partial = LINE_THIRD.substring(0, 30);
+        append(log, LINE_SECOND + partial);
+        ips = ingest(log, checkpointFile);
+        Assert.assertEquals(1, ips.size());
+        Assert.assertEquals("192.168.169.194", ips.get(0));
+
+        append(log, LINE_THIRD.substring(30));
+        ips = ingest(log, checkpointFile);
+        Assert.assertEquals(1, ips.size());
+        Assert.assertEquals("192.168.247.138", ips.get(0));
+
+        IngestCheckpoint checkpoint = IngestCheckpoint.load(checkpointFile);
+        Assert.assertEquals(Files.size(log), checkpoint.getOffset());
+        Assert.assertEquals(3, checkpoint.getResumeLine(log));
+    }
+
+    @Test
+    public void testGetResumeOffset_whenLogFileIsReplacedOrTruncated_returnsZero()
+        throws IOException, SQLException
+    {
+        Path log = TestUtils.prepareTestFile(LINE_FIRST + LINE_SECOND).toPath();
+        Path checkpointFile = newCheckpointFile();
+
+        Assert.assertEquals(2, ingest(log, checkpointFile).size());
+        Assert.assertTrue(IngestCheckpoint.load(checkpointFile).getResumeOffset(log) > 0);
+        Assert.assertEquals(2, IngestCheckpoint.load(checkpointFile).getResumeLine(log));
+
+        // rotated: another file with different content is at the same path
+        Files.write(log, (LINE_THIRD + LINE_FIRST + LINE_SECOND).getBytes(StandardCharsets.US_ASCII));
+        Assert.assertEquals(0, IngestCheckpoint.load(checkpointFile).getResumeOffset(log));
+        Assert.assertEquals(0, IngestCheckpoint.load(checkpointFile).getResumeLine(log));
+        Assert.assertEquals(3, ingest(log, checkpointFile).size());
+
+        // truncated: same first line, but file is shorter than ingested part
+        Files.write(log, LINE_THIRD.getBytes(StandardCharsets.US_ASCII), StandardOpenOption.TRUNCATE_EXISTING);
+        Assert.assertEquals(0, IngestCheckpoint.load(checkpointFile).getResumeOffset(log));
+    }
+
+    @Test
+    public void testFindRotatedFile_whenLogFileIsRotatedToSuffixedFile_rotatedFileIsReturned()
+        throws IOException, SQLException
+    {
+        Path log = TestUtils.prepareTestFile(LINE_FIRST).toPath();
+        Path rotated = log.resolveSibling(log.getFileName() + ".1");
+        rotated.toFile().deleteOnExit();
+        Path checkpointFile = newCheckpointFile();
+
+        Assert.assertEquals(1, ingest(log, checkpointFile).size());
+        Assert.assertNull(IngestCheckpoint.load(checkpointFile).findRotatedFile(log));
+
+        // line appended after the previous run is only in rotated file
+        append(log, LINE_SECOND);
+        Files.move(log, rotated);
+        Files.write(log, LINE_THIRD.getBytes(StandardCharsets.US_ASCII));
+
+        IngestCheckpoint checkpoint = IngestCheckpoint.load(checkpointFile);
+        Assert.assertEquals(0, checkpoint.getResumeOffset(log));
+        Assert.assertEquals(rotated, checkpoint.findRotatedFile(log));
+        Assert.assertEquals(LINE_FIRST.length(), checkpoint.getResumeOffset(rotated));
+
+        // rotated file of another log file is not used
+        Files.write(rotated, LINE_SECOND.getBytes(StandardCharsets.US_ASCII), StandardOpenOption.TRUNCATE_EXISTING);
+        Assert.assertNull(IngestCheckpoint.load(checkpointFile).findRotatedFile(log));
+    }
+
+    @Test
+    public void testParseFrom_whenMaxBytesIsSmallerThanLog_eachRunEndsAtALineEnd()
+        throws IOException, SQLException
+    {
+        Path log = TestUtils.prepareTestFile(LINE_FIRST + LINE_SECOND + LINE_THIRD).toPath();
+        List<String> ips = new ArrayList<>();
+        LogEntryHandler handler = entries -> entries.forEach(item -> ips.add(item.ip));
+        ParserModel parser = new ParserModel();
+
+        // two lines fit into the first run, then a single one
+        long end = parser.parseFrom(log.toString(), 0, LINE_FIRST.length() + LINE_SECOND.length() + 10, 10, 1, true,
+            handler);
+        Assert.assertEquals(LINE_FIRST.length() + LINE_SECOND.length(), end);
+        Assert.assertEquals(2, ips.size());
+
+        // a line longer than max bytes is parsed whole
+        end = parser.parseFrom(log.toString(), end, 10, 10, 1, true, handler);
+        Assert.assertEquals(Files.size(log), end);
+        Assert.assertEquals("192.168.247.138", ips.get(2));
+
+        Assert.assertEquals(end, parser.parseFrom(log.toString(), end, 10, 10, 1, true, entries -> { }));
+    }
+
+    @Test
+    public void testInMemory_whenLogFileHasLines_onlyLinesAppendedLaterAreParsed()
+        throws IOException, SQLException
+    {
+        String partial = LINE_SECOND.substring(0, 30);
+        Path log = TestUtils.prepareTestFile(LINE_FIRST + partial).toPath();
+
+        // partial line is still being written, it is parsed once complete
+        IngestCheckpoint checkpoint = IngestCheckpoint.inMemory(log);
+        Assert.assertEquals(LINE_FIRST.length(), checkpoint.getResumeOffset(log));
+
+        append(log, LINE_SECOND.substring(30) + LINE_THIRD);
+        List<String> ips = new ArrayList<>();
+        long end = new ParserModel().parseFrom(
+            log.toString(), checkpoint.getResumeOffset(log), 10, 1, true,
+            entries -> entries.forEach(item -> ips.add(item.ip))
+        );
+
+        Assert.assertEquals(Files.size(log), end);
+        Assert.assertEquals(2, ips.size());
+        Assert.assertEquals("192.168.169.194", ips.get(0));
+    }
+
+    @Test
+    public void testLoad_whenCheckpointFileDoesNotExist_startsFromBeginning()
+        throws IOException
+    {
+        Path log = TestUtils.prepareTestFile(LINE_FIRST).toPath();
+        Path checkpointFile = newCheckpointFile();
+
+        IngestCheckpoint checkpoint = IngestCheckpoint.load(checkpointFile);
+
+        Assert.assertEquals(0, checkpoint.getOffset());
+        Assert.assertEquals(0, checkpoint.getResumeOffset(log));
+    }
+
+    private static List<String> ingest(Path log, Path checkpointFile)
+        throws IOException, SQLException
+    {
+        IngestCheckpoint checkpoint = IngestCheckpoint.load(checkpointFile);
+        List<String> ips = new ArrayList<>();
+
+        long end = new ParserModel().parseFrom(
+            log.toString(), checkpoint.getResumeOffset(log), 10, 1, true, entries -> {
+                for (LogEntry item : entries) {
+                    ips.add(item.ip);
+                }
+            }
+        );
+        checkpoint.update(log, end, checkpoint.getResumeLine(log) + ips.size());
+
+        return ips;
+    }
+
+    private static Path newCheckpointFile()
+        throws IOException
+    {
+        File file = File.createTempFile("checkpoint", ".properties");
+        file.deleteOnExit();
+        Files.delete(file.toPath());
+
+        return file.toPath();
+    }
+
+    private static void append(Path log, String text)
+        throws IOException
+    {
+        Files.write(log, text.getBytes(StandardCharsets.US_ASCII), StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,86 @@
+package com.ef;
+
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IpCountMapTest
+{
+
+    @Test
+    public void testIpAddress_whenTextIsParsedAndFormattedBack_sameTextAsOfInet6NtoaIsReturned()
+    {
+        String[] ips = new String[]{
+            "192.168.234.82", "0.0.0.0", "255.255.255.255", "::", "::1", "2001:db8::1", "fe80:0:0:1::1",
+            "2001:db8:0:1:1:1:1:1", "1::", "2001:db8::a:0:0:1"
+        };
+
+        for (String ip : ips) {
+            Assert.assertEquals(ip, IpAddress.parse(ip).toString());
+            Assert.assertEquals(ip, IpAddress.fromBytes(IpAddress.parse(ip).toBytes()).toString());
+        }
+
+        Assert.assertEquals("2001:db8::1", IpAddress.parse("2001:0DB8:0000:0000:0000:0000:0000:0001").toString());
+        Assert.assertEquals(IpAddress.parse("1.2.3.4"), IpAddress.parse("::ffff:1.2.3.4"));
+        Assert.assertEquals("1.2.3.4", IpAddress.parse("::ffff:1.2.3.4").toString());
+        Assert.assertEquals(4, IpAddress.parse("::ffff:1.2.3.4").toBytes().length);
+        Assert.assertEquals(4, IpAddress.parse("1.2.3.4").toBytes().length);
+        Assert.assertEquals(16, IpAddress.parse("::1").toBytes().length);
+    }
+
+    @Test
+    public void testIpAddress_whenTextIsNotAnIP_IllegalArgumentExceptionIsThrown()
+    {
+        String[] invalid = new String[]{"", "1.2.3", "1.2.3.256", "1.2.3.4.5", "1:2", "1:::2", "1::2::3", "12345::", ":1"};
+
+        for (String ip : invalid) {
+            try {
+                IpAddress.parse(ip);
+                Assert.fail("Expected exception for " + ip);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testIncrement_whenManyIPsAreCounted_eachCountIsCorrect()
+    {
+        IpCountMap map = new IpCountMap(4);
+
+        for (int i = 0; i < 10_000; i++) {
+            for (int j = 0; j <= i % 3; j++) {
+                map.increment("10." + (i >> 16) + "." + ((i >> 8) & 0xFF) + "." + (i & 0xFF));
+            }
+        }
+        map.increment("2001:db8::1");
+
+        Assert.assertEquals(10_001, map.size());
+        Assert.assertEquals(1, map.get("10.0.0.0"));
+        Assert.assertEquals(3, map.get("10.0.39.14"));
+        Assert.assertEquals(1, map.get("2001:db8::1"));
+        Assert.assertEquals(0, map.get("2001:db8::2"));
+
+        Map<String, Integer> above = map.aboveThreshold(2).toMap();
+        Assert.assertEquals(3_333, above.size());
+        Assert.assertEquals(3, (int) above.get("10.0.0.2"));
+    }
+
+    @Test
+    public void testAdd_whenCountDropsToZero_IPIsRemovedAndOthersAreStillFound()
+    {
+        IpCountMap map = new IpCountMap(4);
+
+        for (int i = 0; i < 1_000; i++) {
+            map.add(0, i, 1);
+        }
+        for (int i = 0; i < 1_000; i += 2) {
+            map.add(0, i, -1);
+        }
+
+        Assert.assertEquals(500, map.size());
+        for (int i = 0; i < 1_000; i++) {
+            Assert.assertEquals(i % 2, map.get(0, i));
+        }
+    }
+}
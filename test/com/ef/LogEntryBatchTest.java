@@ -0,0 +1,98 @@
+package com.ef;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LogEntryBatchTest
+{
+
+    private static TestUtils util;
+
+    @Test
+    public void testAdd_whenItemsAreAdded_viewsHoldSameValues()
+    {
+        LogEntry item = new LogEntry();
+        item.setDate("2017-01-01 00:00:11.763");
+        item.ip = "2001:0DB8::0001";
+        item.request = "GET / HTTP/1.1";
+        item.setStatus(404);
+        item.userAgent = null;
+
+        LogEntryBatch batch = new LogEntryBatch(1);
+        for (int i = 0; i < 40; i++) {
+            batch.add(item);
+        }
+
+        Assert.assertEquals(40, batch.size());
+        Assert.assertEquals(TimestampParser.toEpochMillis(item.date), batch.getEpochMillis(39));
+        Assert.assertEquals(404, batch.getStatus(39));
+
+        LogEntry view = batch.get(39);
+        Assert.assertEquals("2017-01-01 00:00:11.763", view.getFormattedDate());
+        Assert.assertEquals("2001:db8::1", view.ip);
+        Assert.assertSame(item.request, view.request);
+        Assert.assertEquals(404, view.getStatus());
+        Assert.assertNull(view.userAgent);
+
+        LogEntryBatch slice = batch.slice(30, 40);
+        Assert.assertEquals(10, slice.size());
+        Assert.assertEquals(batch.get(35).toString(), slice.get(5).toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAdd_whenStatusIsInvalid_IllegalArgumentExceptionIsThrown()
+    {
+        new LogEntryBatch().add(0, 0, 1, "GET / HTTP/1.1", 1001, null);
+    }
+
+    @Test
+    public void testParse_whenFileIsParsedInChunks_chunksAreBatchesHoldingSameItemsAsParsedList()
+        throws SQLException
+    {
+        File tmpFile = util.prepareTestFile(
+            "2017-01-01 00:00:11.763|192.168.234.82|\"GET / HTTP/1.1\"|200|\"swcd\"\n"
+            + "2017-01-01 00:00:21.164|::ffff:192.168.234.83|\"GET / HTTP/1.1\"|301|\"swcd\"\n"
+            + "2017-01-01 00:00:23.003|2001:db8::1|\"GET /a HTTP/1.1\"|200|\"agent\"\n"
+        );
+
+        ParserModel parser = new ParserModel();
+        List<LogEntry> expected = parser.parse(tmpFile.getAbsolutePath());
+
+        List<List<LogEntry>> chunks = new ArrayList<>();
+        parser.parse(tmpFile.getAbsolutePath(), 2, chunks::add);
+        parser.parseMapped(tmpFile.getAbsolutePath(), 2, chunks::add);
+
+        Assert.assertEquals(4, chunks.size());
+        for (List<LogEntry> chunk : chunks) {
+            Assert.assertTrue(chunk instanceof LogEntryBatch);
+        }
+
+        List<LogEntry> list = new ArrayList<>();
+        chunks.forEach(list::addAll);
+        for (int i = 0; i < list.size(); i++) {
+            LogEntry item = expected.get(i % expected.size());
+            Assert.assertEquals(item.date, list.get(i).date);
+            Assert.assertEquals(item.request, list.get(i).request);
+            Assert.assertEquals(item.getStatus(), list.get(i).getStatus());
+        }
+
+        // IPs of views are canonical
+        Assert.assertEquals("192.168.234.83", list.get(1).ip);
+        Assert.assertEquals("2001:db8::1", list.get(2).ip);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseMapped_whenIpIsInvalid_IllegalArgumentExceptionIsThrown()
+        throws SQLException
+    {
+        File tmpFile = util.prepareTestFile(
+            "2017-01-01 00:00:11.763|192.168.234|\"GET / HTTP/1.1\"|200|\"swcd\""
+        );
+
+        new ParserModel().parseMapped(tmpFile.getAbsolutePath(), 10, entries -> { });
+    }
+}
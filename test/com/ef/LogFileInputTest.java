@@ -0,0 +1,201 @@
+package com.ef;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LogFileInputTest
+{
+
+    private static TestUtils util;
+
+    @Test
+    public void testParse_whenLogFileIsGzipped_itemsAreTheSameAsOfPlainFile() throws Exception
+    {
+        String content = logLines(0, 1_000);
+        File plainFile = util.prepareTestFile(content);
+        Path gzipFile = gzip(content, Files.createTempFile("access", ".log.gz"));
+
+        Assert.assertEquals(LogFileInput.Compression.NONE, LogFileInput.detect(plainFile.toPath()));
+        Assert.assertEquals(LogFileInput.Compression.GZIP, LogFileInput.detect(gzipFile));
+
+        ParserModel parser = new ParserModel();
+        List<LogEntry> expected = parser.parse(plainFile.getAbsolutePath());
+
+        List<LogEntry> list = new ArrayList<>();
+        parser.parse(gzipFile.toString(), 64, list::addAll);
+        Assert.assertEquals(expected.toString(), list.toString());
+
+        // compressed file can not be mapped, it is streamed instead
+        list.clear();
+        parser.parse(gzipFile.toString(), 64, 4, true, list::addAll);
+        Assert.assertEquals(expected.toString(), list.toString());
+
+        try {
+            parser.parseFrom(gzipFile.toString(), 0, 64, 1, true, entries -> { });
+            Assert.fail("Expected compressed file to be rejected");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("can not be ingested incrementally"));
+        }
+    }
+
+    @Test
+    public void testReadAhead_whenSourceIsReadInSmallBlocks_allBytesAndErrorAreDelivered() throws Exception
+    {
+        byte[] bytes = logLines(0, 100).getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new ReadAheadInputStream(new ByteArrayInputStream(bytes), "test", 7, 2)) {
+            byte[] buffer = new byte[10];
+            int n;
+            while ((n = in.read(buffer, 0, buffer.length)) >= 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+        Assert.assertArrayEquals(bytes, out.toByteArray());
+
+        InputStream failing = new InputStream()
+        {
+            private int left = 20;
+
+            @Override
+            public int read() throws IOException
+            {
+                if (left == 0) {
+                    throw new IOException("Unexpected end of ZLIB input stream");
+                }
+                left--;
+                return 'x';
+            }
+        };
+        try (InputStream in = new ReadAheadInputStream(failing, "test", 8, 2)) {
+            for (int i = 0; i < 20; i++) {
+                Assert.assertEquals('x', in.read());
+            }
+            in.read();
+            Assert.fail("Expected source error");
+        } catch (IOException e) {
+            Assert.assertEquals("Unexpected end of ZLIB input stream", e.getMessage());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void testReadAhead_whenDecoderFailsWithUncheckedException_errorIsDeliveredInsteadOfHanging()
+        throws Exception
+    {
+        // aircompressor rejects corrupt zstd input with an unchecked MalformedInputException
+        InputStream decoder = new InputStream()
+        {
+            @Override
+            public int read()
+            {
+                throw new IllegalStateException("Invalid magic prefix");
+            }
+        };
+        try (InputStream in = new ReadAheadInputStream(decoder, "test", 8, 2)) {
+            in.read();
+            Assert.fail("Expected decoder error");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+            Assert.assertEquals("Invalid magic prefix", e.getCause().getMessage());
+        }
+
+        // gzip header is intact, deflate data is not
+        byte[] bytes = Files.readAllBytes(gzip(logLines(0, 1_000), Files.createTempFile("access", ".log.gz")));
+        for (int i = 20; i < bytes.length - 8; i += 7) {
+            bytes[i] ^= 0x5a;
+        }
+        Path corruptFile = Files.createTempFile("corrupt", ".log.gz");
+        corruptFile.toFile().deleteOnExit();
+        Files.write(corruptFile, bytes);
+
+        try {
+            new ParserModel().parse(corruptFile.toString(), 64, entries -> { });
+            Assert.fail("Expected corrupt file to be rejected");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Unable to read file"));
+        }
+    }
+
+    @Test
+    public void testParseFiles_whenGlobMatchesRotatedLogs_allFilesAreParsed() throws Exception
+    {
+        Path dir = Files.createTempDirectory("logs");
+        Files.write(dir.resolve("access.log"), logLines(0, 300).getBytes(StandardCharsets.UTF_8));
+        gzip(logLines(300, 500), dir.resolve("access.log.1.gz"));
+        gzip(logLines(500, 1_200), dir.resolve("access.log.2.gz"));
+        Files.write(dir.resolve("error.log"), "not an access log\n".getBytes(StandardCharsets.UTF_8));
+
+        List<Path> paths = LogFileInput.resolve(dir.resolve("access.log*").toString());
+        Assert.assertEquals(3, paths.size());
+        Assert.assertEquals(dir.resolve("access.log"), paths.get(0));
+
+        List<String> ips = new ArrayList<>();
+        new ParserModel().parseFiles(paths, 50, 2, entries -> {
+            Assert.assertTrue(entries.size() <= 50);
+            for (LogEntry entry : entries) {
+                ips.add(entry.ip);
+            }
+        });
+
+        Assert.assertEquals(1_200, ips.size());
+        Collections.sort(ips);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 1_200; i++) {
+            expected.add(ip(i));
+        }
+        Collections.sort(expected);
+        Assert.assertEquals(expected, ips);
+
+        Assert.assertEquals(3, LogFileInput.resolve(paths.get(0) + ", " + dir.resolve("*.gz") + ",").size());
+        try {
+            LogFileInput.resolve(dir.resolve("*.zst").toString());
+            Assert.fail("Expected pattern matching no files to be rejected");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("No log files match"));
+        }
+
+        for (File file : dir.toFile().listFiles()) {
+            file.delete();
+        }
+        Files.delete(dir);
+    }
+
+    private static String logLines(int from, int to)
+    {
+        StringBuilder content = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            content.append("2017-01-01 00:00:11.763|").append(ip(i))
+                .append("|\"GET / HTTP/1.1\"|200|\"swcd (unknown version) CFNetwork/808.2.16 Darwin/15.6.0\"\n");
+        }
+
+        return content.toString();
+    }
+
+    private static String ip(int i)
+    {
+        return "10.0." + (i / 256) + "." + (i % 256);
+    }
+
+    private static Path gzip(String content, Path path) throws IOException
+    {
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(path))) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        path.toFile().deleteOnExit();
+
+        return path;
+    }
+}
@@ -0,0 +1,83 @@
+package com.ef;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MultiWindowCounterTest
+{
+
+    private static TestUtils util;
+
+    @Test
+    public void testEvery_whenRangeIsNotMultipleOfDuration_lastWindowStartsBeforeEndDate()
+    {
+        LocalDateTime startDate = LocalDateTime.parse("2017-01-01 00:00:00.000", LogEntry.formatter);
+
+        List<ThresholdWindow> windows = ThresholdWindow.every(
+            startDate, startDate.plusHours(23).plusMinutes(30), Duration.HOURLY, 200
+        );
+
+        Assert.assertEquals(24, windows.size());
+        Assert.assertEquals(startDate, windows.get(0).getStartDate());
+        Assert.assertEquals(startDate.plusHours(23), windows.get(23).getStartDate());
+    }
+
+    @Test
+    public void testGetAboveThresholdIPCounts_whenWindowsOverlap_eachWindowMatchesSingleWindowCounter()
+    {
+        List<LogEntry> list = new ArrayList<>();
+
+        LocalDateTime date = LocalDateTime.parse("2017-01-01 00:00:00.000", LogEntry.formatter);
+        for (int i = 0; i < 2000; i++) {
+            list.add(createEntry(date, "192.168.0." + (i % 7)));
+            if (i % 3 == 0) {
+                list.add(createEntry(date, "10.0.0." + (i % 2)));
+            }
+
+            date = date.plusSeconds(97);
+        }
+
+        ParserModel parser = new ParserModel();
+        LocalDateTime startDate = parser.prepareDateArgument("2017-01-01.00:00:00");
+
+        List<ThresholdWindow> windows = ThresholdWindow.every(
+            startDate, startDate.plusDays(2), Duration.HOURLY, 5
+        );
+        windows.add(new ThresholdWindow(startDate.plusMinutes(90), Duration.HOURLY, 3));
+        windows.add(new ThresholdWindow(startDate, Duration.DAILY, 100));
+        windows.add(new ThresholdWindow(startDate.plusHours(13), Duration.DAILY, 50));
+
+        MultiWindowCounter counter = parser.newMultiWindowCounter(windows);
+        counter.handle(list.subList(0, 1000));
+        counter.handle(list.subList(1000, list.size()));
+
+        Map<ThresholdWindow, IpCountMap> result = counter.getAboveThresholdIPCounts();
+
+        Assert.assertEquals(windows, new ArrayList<>(result.keySet()));
+        for (ThresholdWindow window : windows) {
+            ThresholdCounter expected = parser.newThresholdCounter(
+                window.getStartDate(), window.getDuration(), window.getThreshold()
+            );
+            expected.handle(list);
+
+            Assert.assertEquals(window.toString(), expected.getAboveThresholdIPs(), result.get(window).toMap());
+        }
+        Assert.assertEquals(9, result.get(windows.get(windows.size() - 2)).size());
+    }
+
+    private static LogEntry createEntry(LocalDateTime date, String ip)
+    {
+        LogEntry item = new LogEntry();
+        item.setDate(util.formatter.format(date));
+        item.ip = ip;
+        item.request = "GET / HTTP/1.1";
+        item.setStatus(200);
+        item.userAgent = "swcd (unknown version) CFNetwork/808.2.16 Darwin/15.6.0";
+
+        return item;
+    }
+}
@@ -0,0 +1,177 @@
+package com.ef;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParseErrorBudgetTest
+{
+
+    private static TestUtils util;
+
+    private static final String GOOD_LINE =
+        "2017-01-01 00:00:11.763|192.168.234.82|\"GET / HTTP/1.1\"|200|\"swcd (unknown version)\"\n";
+
+    @Test
+    public void testParse_whenParsingIsLenient_badLinesAreSkippedAndWrittenToRejectFile() throws Exception
+    {
+        StringBuilder content = new StringBuilder();
+        for (int i = 1; i <= 1_000; i++) {
+            if (i == 3) {
+                content.append("2017-01-01 00:00:11.763|192.168.234.82|\"GET / HTTP/1.1\"|200\n");
+            } else if (i == 500) {
+                content.append("2017-13-01 00:00:11.763|192.168.234.82|\"GET / HTTP/1.1\"|200|\"swcd\"\n");
+            } else if (i == 999) {
+                content.append("2017-01-01 00:00:11.763|192.168.234.82|\"GET / HTTP/1.1\"|1200|\"swcd\"\n");
+            } else {
+                content.append(GOOD_LINE);
+            }
+        }
+        File tmpFile = util.prepareTestFile(content.toString());
+        Path rejectFile = Files.createTempFile("rejects", ".tsv");
+        rejectFile.toFile().deleteOnExit();
+
+        ParserModel parser = new ParserModel();
+        parser.setMaxErrorRate(0.01);
+        parser.setRejectFile(rejectFile);
+
+        List<LogEntry> list = new ArrayList<>();
+        parser.parse(tmpFile.getAbsolutePath(), 100, list::addAll);
+        Assert.assertEquals(997, list.size());
+        assertRejects(rejectFile, 1);
+
+        // rejects of every parse are appended to the same file
+        list.clear();
+        parser.parseMapped(tmpFile.getAbsolutePath(), 100, list::addAll);
+        Assert.assertEquals(997, list.size());
+        assertRejects(rejectFile, 2);
+
+        // ranges are parsed concurrently, line numbers still count from the start of the file
+        list.clear();
+        try (RejectWriter rejects = RejectWriter.open(rejectFile);
+            ParseErrorBudget errors = new ParseErrorBudget(0.01, rejects, null)) {
+            new ParallelLogParser(parser, 4, false, 1_000, errors).parse(tmpFile.toPath(), 100, list::addAll);
+            Assert.assertEquals(3, errors.getRejectedCount());
+        }
+        Assert.assertEquals(997, list.size());
+        assertRejects(rejectFile, 3);
+    }
+
+    @Test
+    public void testParseFrom_whenBudgetStartsAtFirstLine_rejectsAreNumberedFromStartOfFile() throws Exception
+    {
+        String badLine = "2017-01-01 00:00:11.763|192.168.234.82|\"GET / HTTP/1.1\"|200\n";
+        File tmpFile = util.prepareTestFile(GOOD_LINE + GOOD_LINE + GOOD_LINE + badLine + GOOD_LINE);
+        Path rejectFile = Files.createTempFile("rejects", ".tsv");
+        rejectFile.toFile().deleteOnExit();
+
+        ParserModel parser = new ParserModel();
+        parser.setMaxErrorRate(0.5);
+        parser.setRejectFile(rejectFile);
+
+        // the run starts after the first two lines
+        List<LogEntry> list = new ArrayList<>();
+        try (ParseErrorBudget errors = parser.newErrorBudget(2)) {
+            parser.parseFrom(
+                tmpFile.getAbsolutePath(), 2 * GOOD_LINE.length(), Long.MAX_VALUE, 100, 1, true, errors, list::addAll
+            );
+            Assert.assertEquals(3, errors.getParsedLines());
+        }
+        Assert.assertEquals(2, list.size());
+
+        List<String> rejects = Files.readAllLines(rejectFile, StandardCharsets.UTF_8);
+        Assert.assertEquals(1, rejects.size());
+        Assert.assertTrue(rejects.get(0), rejects.get(0).startsWith("4\t"));
+    }
+
+    @Test
+    public void testParse_whenErrorBudgetIsExceeded_parsingIsAborted() throws Exception
+    {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 2_000; i++) {
+            content.append(i % 50 == 0 ? "malformed line\n" : GOOD_LINE);
+        }
+        File tmpFile = util.prepareTestFile(content.toString());
+
+        ParserModel parser = new ParserModel();
+        parser.setMaxErrorRate(0.01);
+        try {
+            parser.parse(tmpFile.getAbsolutePath(), 100, entries -> { });
+            Assert.fail("Expected parsing to be aborted");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Too many malformed lines: 11 of 501"));
+        }
+
+        // strict parsing fails on the first malformed line
+        parser.setMaxErrorRate(0);
+        try {
+            parser.parse(tmpFile.getAbsolutePath(), 100, entries -> { });
+            Assert.fail("Expected parsing to fail");
+        } catch (IllegalArgumentException e) {
+            Assert.assertFalse(e.getMessage(), e.getMessage().startsWith("Too many malformed lines"));
+        }
+    }
+
+    @Test
+    public void testReject_whenFewLinesAreParsed_budgetCountsAtLeastMinLines()
+    {
+        ParseErrorBudget errors = new ParseErrorBudget(0.002);
+        Exception error = new IllegalArgumentException("bad");
+
+        errors.reject(0, 1, 1, "a", error);
+        errors.reject(0, 2, 2, "b", error);
+        try {
+            errors.reject(0, 3, 3, "c", error);
+            Assert.fail("Expected budget to be exceeded");
+        } catch (IllegalArgumentException e) {
+            Assert.assertSame(error, e.getCause());
+        }
+        Assert.assertEquals(3, errors.getRejectedCount());
+    }
+
+    @Test
+    public void testReject_whenRangesCompleteOutOfOrder_linesAreWrittenOnceTheirNumbersAreKnown()
+    {
+        StringWriter out = new StringWriter();
+        RejectWriter rejects = new RejectWriter(out, "rejects");
+        ParseErrorBudget errors = new ParseErrorBudget(1, rejects, "access.log");
+        Exception error = new IllegalArgumentException("bad");
+
+        errors.addRange(0);
+        errors.addRange(100);
+        errors.addRange(200);
+
+        // the first range is written right away, later ones wait for ranges before them
+        errors.reject(0, 2, 2, "a", error);
+        errors.reject(200, 1, 1, "c", error);
+        errors.rangeParsed(200, 4);
+        errors.reject(100, 3, 3, "b", error);
+        Assert.assertEquals("# access.log\n2\tbad\ta\n", out.toString());
+
+        errors.rangeParsed(0, 5);
+        Assert.assertEquals("# access.log\n2\tbad\ta\n8\tbad\tb\n", out.toString());
+
+        // parsing is aborted before the middle range is finished
+        errors.close();
+        Assert.assertEquals("# access.log\n2\tbad\ta\n8\tbad\tb\n9\tbad\tc\n", out.toString());
+        Assert.assertEquals(3, errors.getRejectedCount());
+    }
+
+    private static void assertRejects(Path rejectFile, int parses) throws Exception
+    {
+        List<String> rejects = Files.readAllLines(rejectFile, StandardCharsets.UTF_8);
+
+        Assert.assertEquals(3 * parses, rejects.size());
+        rejects = rejects.subList(rejects.size() - 3, rejects.size());
+        Assert.assertTrue(rejects.get(0), rejects.get(0).startsWith("3\t"));
+        Assert.assertTrue(rejects.get(1), rejects.get(1).startsWith("500\t"));
+        Assert.assertTrue(rejects.get(2), rejects.get(2).startsWith("999\tHTTP Status is invalid.\t"));
+        Assert.assertTrue(rejects.get(2), rejects.get(2).endsWith("|1200|\"swcd\""));
+    }
+}
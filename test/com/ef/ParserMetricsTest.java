@@ -0,0 +1,130 @@
+package com.ef;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParserMetricsTest
+{
+
+    private static TestUtils util;
+
+    @Test
+    public void testLatencyHistogram_whenLatenciesAreRecorded_percentilesAreWithinBucketBounds()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(1_500_000);
+        }
+        histogram.record(300_000_000);
+
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(300, histogram.getMaxMillis(), 0.001);
+        Assert.assertEquals(4.485, histogram.getMeanMillis(), 0.001);
+
+        // 1.5 ms falls into [1.024, 2.048) ms bucket
+        Assert.assertEquals(2.048, histogram.getPercentileMillis(50), 0.001);
+        Assert.assertEquals(2.048, histogram.getPercentileMillis(99), 0.001);
+        Assert.assertEquals(300, histogram.getPercentileMillis(100), 0.001);
+
+        histogram.reset();
+        Assert.assertEquals(0, histogram.getPercentileMillis(99), 0);
+    }
+
+    @Test
+    public void testParse_whenFileIsParsed_linesReadAndRejectedAreCounted()
+        throws Exception
+    {
+        ParserMetrics metrics = ParserMetrics.getDefault();
+        metrics.register();
+        long read = metrics.getLinesRead();
+        long rejected = metrics.getLinesRejected();
+
+        File goodFile = util.prepareTestFile(
+            "2017-01-01 00:00:11.763|192.168.234.82|\"GET / HTTP/1.1\"|200|\"swcd\"\n"
+            + "2017-01-01 00:00:21.164|192.168.234.83|\"GET / HTTP/1.1\"|200|\"swcd\"\n"
+            + "2017-01-01 00:00:23.003|192.168.234.84|\"GET / HTTP/1.1\"|200|\"swcd\"\n"
+        );
+        new ParserModel().parseMapped(goodFile.getAbsolutePath(), 2, entries -> { });
+
+        File badFile = util.prepareTestFile("2017-01-01 00:00:11.763|192.168.234.82|\"GET / HTTP/1.1\"|200");
+        try {
+            new ParserModel().parse(badFile.getAbsolutePath(), 10, entries -> { });
+            Assert.fail("Expected bad line to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        Assert.assertEquals(3, metrics.getLinesRead() - read);
+        Assert.assertEquals(1, metrics.getLinesRejected() - rejected);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Object linesRead = server.getAttribute(new ObjectName(ParserMetrics.OBJECT_NAME), "LinesRead");
+        Assert.assertEquals(metrics.getLinesRead(), linesRead);
+    }
+
+    @Test
+    public void testParse_whenModelHasOwnMetrics_sharedMetricsAreNotCounted()
+        throws Exception
+    {
+        ParserMetrics shared = ParserMetrics.getDefault();
+        long read = shared.getLinesRead();
+        long rejected = shared.getLinesRejected();
+
+        File file = util.prepareTestFile(
+            "2017-01-01 00:00:11.763|192.168.234.82|\"GET / HTTP/1.1\"|200|\"swcd\"\n"
+            + "2017-01-01 00:00:21.164|192.168.234.83|\"GET / HTTP/1.1\"|200\n"
+            + "2017-01-01 00:00:23.003|192.168.234.84|\"GET / HTTP/1.1\"|200|\"swcd\"\n"
+        );
+        ParserMetrics own = new ParserMetrics();
+        ParserModel parser = new ParserModel();
+        parser.setMaxErrorRate(0.5);
+        parser.setMetrics(own);
+        parser.parse(file.getAbsolutePath(), 10, entries -> { });
+
+        Assert.assertEquals(2, own.getLinesRead());
+        Assert.assertEquals(1, own.getLinesRejected());
+        Assert.assertEquals(read, shared.getLinesRead());
+        Assert.assertEquals(rejected, shared.getLinesRejected());
+    }
+
+    @Test
+    public void testMeter_whenHandlerFails_errorIsPassedOn()
+    {
+        LogEntryHandler handler = new ParserMetrics().meter(entries -> {
+            throw new SQLException("failed");
+        });
+
+        try {
+            handler.handle(new LogEntryBatch());
+            Assert.fail("Expected handler error");
+        } catch (SQLException e) {
+            Assert.assertEquals("failed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testSaveLogEntries_whenModelHasOwnMetrics_rowsAndCommitsAreCountedInThem() throws SQLException
+    {
+        File file = util.prepareTestFile(
+            "2017-01-01 00:00:11.763|192.168.234.82|\"GET / HTTP/1.1\"|200|\"swcd\"\n"
+            + "2017-01-01 00:00:21.164|192.168.234.83|\"GET / HTTP/1.1\"|200|\"swcd\"\n"
+        );
+
+        ParserMetrics metrics = new ParserMetrics();
+        ParserModel parser = new ParserModel();
+        parser.setMetrics(metrics);
+        parser.saveLogEntries(parser.parse(file.getAbsolutePath()));
+        try (LogEntrySink loader = parser.newBulkLoader()) {
+            parser.parse(file.getAbsolutePath(), 10, loader);
+        }
+
+        Assert.assertEquals(4, metrics.getRowsCommitted());
+        Assert.assertEquals(2, metrics.getBatchInsertCount());
+        Assert.assertEquals(2, metrics.getCommitCount());
+    }
+}
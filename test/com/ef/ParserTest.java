@@ -1,6 +1,9 @@
 package com.ef;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
@@ -34,6 +37,7 @@ public class ParserTest
     {
         // clear all table records
         util.executeQuery("TRUNCATE TABLE ip_activity_logs");
+        util.executeQuery("TRUNCATE TABLE ip_activity_counts");
         util.executeQuery("TRUNCATE TABLE blocked_ips");
     }
 
@@ -96,6 +100,83 @@ public class ParserTest
         parser.parse(filePath);
     }
 
+    @Test
+    public void testParse_whenChunkSizeIsSmallerThanFile_handlerReceivesAllItemsInOrderInBoundedChunks() throws SQLException
+    {
+        File tmpFile = util.prepareTestFile(
+            "2017-01-01 00:00:11.763|192.168.234.82|\"GET / HTTP/1.1\"|200|\"swcd (unknown version) CFNetwork/808.2.16 Darwin/15.6.0\"\n"
+            + "2017-01-01 00:00:21.164|192.168.234.83|\"GET / HTTP/1.1\"|200|\"swcd (unknown version) CFNetwork/808.2.16 Darwin/15.6.0\"\n"
+            + "2017-01-01 00:00:23.003|192.168.234.84|\"GET / HTTP/1.1\"|200|\"swcd (unknown version) CFNetwork/808.2.16 Darwin/15.6.0\""
+        );
+        String filePath = tmpFile.getAbsolutePath();
+
+        List<List<LogEntry>> chunks = new ArrayList<>();
+
+        ParserModel parser = new ParserModel();
+        parser.parse(filePath, 2, chunks::add);
+
+        Assert.assertEquals(2, chunks.size());
+        Assert.assertEquals(2, chunks.get(0).size());
+        Assert.assertEquals(1, chunks.get(1).size());
+
+        Assert.assertEquals("192.168.234.82", chunks.get(0).get(0).ip);
+        Assert.assertEquals("192.168.234.83", chunks.get(0).get(1).ip);
+        Assert.assertEquals("192.168.234.84", chunks.get(1).get(0).ip);
+        Assert.assertEquals("2017-01-01 00:00:23.003", util.formatter.format(chunks.get(1).get(0).date));
+    }
+
+    @Test
+    public void testParallelParse_whenFileIsSplitIntoManyRanges_allItemsAreDeliveredInFileOrder() throws Exception
+    {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 1_000; i++) {
+            content.append("2017-01-01 00:00:11.763|10.0.").append(i / 256).append('.').append(i % 256)
+                .append("|\"GET / HTTP/1.1\"|200|\"swcd (unknown version) CFNetwork/808.2.16 Darwin/15.6.0\"\r\n");
+        }
+        File tmpFile = util.prepareTestFile(content.toString());
+
+        List<LogEntry> list = new ArrayList<>();
+
+        ParserModel parser = new ParserModel();
+        new ParallelLogParser(parser, 4, true, 1_000).parse(tmpFile.toPath(), 7, list::addAll);
+
+        Assert.assertEquals(1_000, list.size());
+        for (int i = 0; i < 1_000; i++) {
+            Assert.assertEquals("10.0." + (i / 256) + "." + (i % 256), list.get(i).ip);
+            Assert.assertEquals("swcd (unknown version) CFNetwork/808.2.16 Darwin/15.6.0", list.get(i).userAgent);
+        }
+
+        // unordered mode delivers the same items, in any order
+        List<LogEntry> unordered = new ArrayList<>();
+        new ParallelLogParser(parser, 4, false, 1_000).parse(tmpFile.toPath(), 7, unordered::addAll);
+
+        Assert.assertEquals(1_000, unordered.size());
+    }
+
+    @Test
+    public void testMappedParse_whenFileSpansManyWindows_itemsAreTheSameAsOfStreamParse() throws Exception
+    {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            content.append("2017-01-01 00:0").append(i % 10).append(":11.763|192.168.0.").append(i)
+                .append("|\"GET /cafe HTTP/1.1\"|").append(200 + i).append("|\"agent \"").append(i).append("\"\"\n");
+        }
+        File tmpFile = util.prepareTestFile(content.toString());
+
+        ParserModel parser = new ParserModel();
+        List<LogEntry> expected = parser.parse(tmpFile.getAbsolutePath());
+
+        List<LogEntry> list = new ArrayList<>();
+        new MappedLogReader(parser, 500).parse(tmpFile.toPath(), 10, list::addAll);
+
+        Assert.assertEquals(100, list.size());
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(expected.get(i).toString(), list.get(i).toString());
+        }
+        Assert.assertEquals("GET /cafe HTTP/1.1", list.get(0).request);
+        Assert.assertEquals("agent 7", list.get(7).userAgent);
+    }
+
     @Test
     public void testSaveLogEntries_whenCalledWithListOfEntryLogEntityItems_DataIsSavedToMySQLDatabase() throws SQLException
     {
@@ -110,6 +191,7 @@ public class ParserTest
 
         // clear all table records
         util.executeQuery("TRUNCATE TABLE ip_activity_logs");
+        util.executeQuery("TRUNCATE TABLE ip_activity_counts");
 
         parser.saveLogEntries(list);
 
@@ -150,6 +232,183 @@ public class ParserTest
         Assert.assertEquals("GET / HTTP/1.1", request);
         Assert.assertEquals(200, status);
         Assert.assertEquals("swcd (unknown version) CFNetwork/808.2.16 Darwin/15.6.0", userAgent);
+
+        // both requests are counted in rollup row of their minute
+        rs = util.readDbRows("SELECT minute, INET6_NTOA(`ip`) AS ip, cnt FROM ip_activity_counts");
+
+        Assert.assertTrue(rs.next());
+        Assert.assertEquals("2017-01-01 00:00:00.000", util.formatter.format(rs.getObject("minute", LocalDateTime.class)));
+        Assert.assertEquals("192.168.234.82", rs.getString("ip"));
+        Assert.assertEquals(2, rs.getInt("cnt"));
+        Assert.assertFalse(rs.next());
+    }
+
+    @Test
+    public void testBulkLoader_whenParsedFileIsLoaded_DataIsSavedToMySQLDatabase() throws SQLException
+    {
+        File tmpFile = util.prepareTestFile(
+            "2017-01-01 00:00:11.763|192.168.234.82|\"GET / HTTP/1.1\"|200|\"swcd (unknown version) CFNetwork/808.2.16 Darwin/15.6.0\"\n"
+            + "2017-01-01 00:00:21.164|192.168.234.83|\"GET / HTTP/1.1\"|404|\"swcd (unknown version) CFNetwork/808.2.16 Darwin/15.6.0\""
+        );
+
+        // clear all table records
+        util.executeQuery("TRUNCATE TABLE ip_activity_logs");
+        util.executeQuery("TRUNCATE TABLE ip_activity_counts");
+
+        ParserModel parser = new ParserModel();
+        parser.setCommitInterval(1);
+        try (LogEntrySink loader = parser.newBulkLoader()) {
+            parser.parse(tmpFile.getAbsolutePath(), 10, loader);
+        }
+
+        ResultSet rs = util.readDbRows(
+            "SELECT date, INET6_NTOA(`ip`) AS ip, request, status, user_agent FROM ip_activity_logs ORDER BY id"
+        );
+
+        rs.next();
+        Assert.assertEquals("2017-01-01 00:00:11.763", util.formatter.format(rs.getObject("date", LocalDateTime.class)));
+        Assert.assertEquals("192.168.234.82", rs.getString("ip"));
+        Assert.assertEquals("GET / HTTP/1.1", rs.getString("request"));
+        Assert.assertEquals(200, rs.getInt("status"));
+        Assert.assertEquals("swcd (unknown version) CFNetwork/808.2.16 Darwin/15.6.0", rs.getString("user_agent"));
+
+        rs.next();
+        Assert.assertEquals("192.168.234.83", rs.getString("ip"));
+        Assert.assertEquals(404, rs.getInt("status"));
+
+        Assert.assertFalse(rs.next());
+    }
+
+    @Test
+    public void testBulkLoader_whenItemsSpanManyBatches_allAreSavedInOneTransactionToDb() throws SQLException
+    {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 5; i++) {
+            content.append("2017-01-01 00:00:11.763|192.168.234.").append(i)
+                .append("|\"GET / HTTP/1.1\"|200|\"swcd\"\n");
+        }
+        File tmpFile = util.prepareTestFile(content.toString());
+
+        // clear all table records
+        util.executeQuery("TRUNCATE TABLE ip_activity_logs");
+        util.executeQuery("TRUNCATE TABLE ip_activity_counts");
+
+        ParserModel parser = new ParserModel();
+        parser.setBatchSize(2);
+        try (LogEntrySink loader = parser.newBulkLoader(Integer.MAX_VALUE)) {
+            parser.parse(tmpFile.getAbsolutePath(), 10, loader);
+
+            // rows loaded so far are not committed yet
+            ResultSet rs = util.readDbRows("SELECT COUNT(*) AS cnt FROM ip_activity_logs");
+            rs.next();
+            Assert.assertEquals(0, rs.getInt("cnt"));
+        }
+
+        ResultSet rs = util.readDbRows("SELECT INET6_NTOA(`ip`) AS ip FROM ip_activity_logs ORDER BY id");
+        for (int i = 0; i < 5; i++) {
+            rs.next();
+            Assert.assertEquals("192.168.234." + i, rs.getString("ip"));
+        }
+        Assert.assertFalse(rs.next());
+
+        rs = util.readDbRows("SELECT SUM(cnt) AS cnt FROM ip_activity_counts");
+        rs.next();
+        Assert.assertEquals(5, rs.getInt("cnt"));
+    }
+
+    @Test
+    public void testIngestAccessLog_whenLineIsMalformedAfterCommitInterval_rerunSavesNoDuplicatesToDb() throws Exception
+    {
+        String goodLines = "";
+        for (int i = 0; i < 25; i++) {
+            goodLines += "2017-01-01 00:00:11.763|192.168.234.82|\"GET / HTTP/1.1\"|200|\"swcd\"\n";
+        }
+        String badLine = "2017-01-01 00:00:21.164|192.168.234.83|\"GET / HTTP/1.1\"|200\n";
+        File tmpFile = util.prepareTestFile(goodLines + badLine);
+
+        File checkpointFile = File.createTempFile("checkpoint", ".properties");
+        checkpointFile.deleteOnExit();
+        checkpointFile.delete();
+
+        ParserModel parser = new ParserModel();
+        parser.setCommitInterval(10);
+
+        for (String loader : new String[]{"batch", "bulk"}) {
+            // clear all table records
+            util.executeQuery("TRUNCATE TABLE ip_activity_logs");
+            util.executeQuery("TRUNCATE TABLE ip_activity_counts");
+
+            // follow mode retries the same way
+            for (int run = 0; run < 2; run++) {
+                IngestCheckpoint checkpoint = IngestCheckpoint.load(checkpointFile.toPath());
+                try {
+                    Parser.ingestAccessLog(
+                        parser, tmpFile.getAbsolutePath(), checkpoint, 1, true, loader, entries -> { }
+                    );
+                    Assert.fail("Expected malformed line to fail ingestion");
+                } catch (IllegalArgumentException e) {
+                    // expected
+                }
+                Assert.assertEquals(0, IngestCheckpoint.load(checkpointFile.toPath()).getOffset());
+
+                ResultSet rs = util.readDbRows("SELECT COUNT(*) AS cnt FROM ip_activity_logs");
+                rs.next();
+                Assert.assertEquals(0, rs.getInt("cnt"));
+
+                rs = util.readDbRows("SELECT COALESCE(SUM(cnt), 0) AS cnt FROM ip_activity_counts");
+                rs.next();
+                Assert.assertEquals(0, rs.getInt("cnt"));
+            }
+        }
+
+        // once the line is fixed, every line is saved exactly once
+        Files.write(
+            tmpFile.toPath(), (goodLines + goodLines).getBytes(StandardCharsets.US_ASCII),
+            StandardOpenOption.TRUNCATE_EXISTING
+        );
+        for (int run = 0; run < 2; run++) {
+            IngestCheckpoint checkpoint = IngestCheckpoint.load(checkpointFile.toPath());
+            Parser.ingestAccessLog(parser, tmpFile.getAbsolutePath(), checkpoint, 1, true, "batch", entries -> { });
+        }
+
+        ResultSet rs = util.readDbRows("SELECT COUNT(*) AS cnt FROM ip_activity_logs");
+        rs.next();
+        Assert.assertEquals(50, rs.getInt("cnt"));
+    }
+
+    @Test
+    public void testSaveAccessLog_whenLineIsMalformedAfterParsedChunks_queuedItemsAreNotSavedToDb() throws Exception
+    {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < ParserModel.DEFAULT_CHUNK_SIZE * 2; i++) {
+            content.append("2017-01-01 00:00:11.763|192.168.234.82|\"GET / HTTP/1.1\"|200|\"swcd\"\n");
+        }
+        content.append("2017-01-01 00:00:21.164|192.168.234.83|\"GET / HTTP/1.1\"|200\n");
+        File tmpFile = util.prepareTestFile(content.toString());
+
+        ParserModel parser = new ParserModel();
+
+        for (String loader : new String[]{"batch", "bulk"}) {
+            // clear all table records
+            util.executeQuery("TRUNCATE TABLE ip_activity_logs");
+            util.executeQuery("TRUNCATE TABLE ip_activity_counts");
+
+            try {
+                Parser.saveAccessLog(parser, tmpFile.getAbsolutePath(), 1, true, "stream", null, loader);
+                Assert.fail("Expected malformed line to fail parsing");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+
+            // chunks parsed before malformed line are below commit interval, so nothing is committed
+            ResultSet rs = util.readDbRows("SELECT COUNT(*) AS cnt FROM ip_activity_logs");
+            rs.next();
+            Assert.assertEquals(0, rs.getInt("cnt"));
+
+            rs = util.readDbRows("SELECT COALESCE(SUM(cnt), 0) AS cnt FROM ip_activity_counts");
+            rs.next();
+            Assert.assertEquals(0, rs.getInt("cnt"));
+        }
     }
 
     @Test
@@ -183,6 +442,7 @@ public class ParserTest
 
         // clear all table records
         util.executeQuery("TRUNCATE TABLE ip_activity_logs");
+        util.executeQuery("TRUNCATE TABLE ip_activity_counts");
 
         ParserModel parser = new ParserModel();
         parser.saveLogEntries(list);
@@ -235,6 +495,7 @@ public class ParserTest
 
         // clear all table records
         util.executeQuery("TRUNCATE TABLE ip_activity_logs");
+        util.executeQuery("TRUNCATE TABLE ip_activity_counts");
 
         ParserModel parser = new ParserModel();
         parser.saveLogEntries(list);
@@ -283,6 +544,7 @@ public class ParserTest
 
         // clear all table records
         util.executeQuery("TRUNCATE TABLE ip_activity_logs");
+        util.executeQuery("TRUNCATE TABLE ip_activity_counts");
 
         ParserModel parser = new ParserModel();
         parser.saveLogEntries(list);
@@ -322,6 +584,7 @@ public class ParserTest
 
         // clear all table records
         util.executeQuery("TRUNCATE TABLE ip_activity_logs");
+        util.executeQuery("TRUNCATE TABLE ip_activity_counts");
 
         ParserModel parser = new ParserModel();
         parser.saveLogEntries(list);
@@ -348,6 +611,172 @@ public class ParserTest
         
         result = parser.getRequestsByIP(ipSecond);
         Assert.assertEquals(10, result.size());
+
+        // cached result is a copy
+        result.add(item);
+        Assert.assertEquals(10, parser.getRequestsByIP(ipSecond).size());
+
+        List<List<LogEntry>> chunks = new ArrayList<>();
+        parser.getRequestsByIP(ipFirst, 4, chunks::add);
+
+        Assert.assertEquals(3, chunks.size());
+        Assert.assertEquals(2, chunks.get(2).size());
+        Assert.assertEquals("2017-01-01 13:45:00.164", chunks.get(2).get(1).getFormattedDate());
+        Assert.assertEquals("1.1.1.1", chunks.get(2).get(1).ip);
+    }
+
+    @Test
+    public void testGetRequestsByIP_whenIPv4MappedIPIsGiven_requestsOfIPv4AddressAreReturned() throws SQLException
+    {
+        List<LogEntry> list = new ArrayList<>();
+        LocalDateTime date = LocalDateTime.parse("2017-01-01 13:00:00.164", LogEntry.formatter);
+        for (int i = 0; i < 4; i++) {
+            LogEntry item = new LogEntry();
+            item.setDate(util.formatter.format(date.plusMinutes(i)));
+            // log may hold either form of the same address
+            item.ip = i % 2 == 0 ? "3.3.3.3" : "::ffff:3.3.3.3";
+            item.request = "GET / HTTP/1.1";
+            item.setStatus(200);
+            item.userAgent = "swcd";
+
+            list.add(item);
+        }
+
+        // clear all table records
+        util.executeQuery("TRUNCATE TABLE ip_activity_logs");
+        util.executeQuery("TRUNCATE TABLE ip_activity_counts");
+        util.executeQuery("TRUNCATE TABLE blocked_ips");
+
+        ParserModel parser = new ParserModel();
+        parser.saveLogEntries(list);
+
+        Assert.assertEquals(4, parser.getRequestsByIP("::ffff:3.3.3.3").size());
+        Assert.assertEquals(4, parser.getRequestsByIP("3.3.3.3").size());
+        Assert.assertEquals("3.3.3.3", parser.getRequestsByIP("::ffff:3.3.3.3").get(0).ip);
+
+        Map<String, Integer> blockedIps = new HashMap<>();
+        blockedIps.put("::ffff:3.3.3.3", 4);
+        parser.logBlockedIPs(blockedIps, date, Duration.HOURLY, 3);
+
+        ResultSet rs = util.readDbRows("SELECT INET6_NTOA(`ip`) AS ip FROM blocked_ips");
+        rs.next();
+        Assert.assertEquals("3.3.3.3", rs.getString("ip"));
+    }
+    
+    @Test
+    public void testFindIPs_whenManyWindowsAreGiven_eachWindowMatchesSingleWindowQuery() throws SQLException
+    {
+        LocalDateTime date = LocalDateTime.parse("2017-01-01 00:00:00.000", LogEntry.formatter);
+
+        List<LogEntry> list = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            LogEntry item = new LogEntry();
+            item.setDate(util.formatter.format(date));
+            item.ip = "192.168.70." + (i % 5);
+            item.request = "GET / HTTP/1.1";
+            item.setStatus(200);
+            item.userAgent = "swcd (unknown version) CFNetwork/808.2.16 Darwin/15.6.0";
+
+            list.add(item);
+
+            date = date.plusSeconds(37);
+        }
+
+        // clear all table records
+        util.executeQuery("TRUNCATE TABLE ip_activity_logs");
+        util.executeQuery("TRUNCATE TABLE ip_activity_counts");
+
+        ParserModel parser = new ParserModel();
+        parser.saveLogEntries(list);
+
+        LocalDateTime startDate = parser.prepareDateArgument("2017-01-01.00:00:00");
+        List<ThresholdWindow> windows = ThresholdWindow.every(startDate, startDate.plusDays(1), Duration.HOURLY, 15);
+        windows.add(new ThresholdWindow(startDate.plusMinutes(30), Duration.DAILY, 200));
+
+        Map<ThresholdWindow, IpCountMap> result = parser.findAboveThresholdIPCounts(windows);
+
+        Assert.assertEquals(25, result.size());
+        for (ThresholdWindow window : windows) {
+            Map<String, Integer> expected = parser.findAboveThresholdIPs(
+                window.getStartDate(), window.getDuration(), window.getThreshold()
+            );
+            Assert.assertEquals(window.toString(), expected, result.get(window).toMap());
+        }
+    }
+
+    @Test
+    public void testFindIPs_whenQueryIsSplitIntoSubRanges_resultIsTheSameAsOfSingleQuery() throws SQLException
+    {
+        LocalDateTime date = LocalDateTime.parse("2017-01-01 00:00:00.000", LogEntry.formatter);
+
+        List<LogEntry> list = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            LogEntry item = new LogEntry();
+            item.setDate(util.formatter.format(date));
+            item.ip = "192.168.70." + (i % 7);
+            item.request = "GET / HTTP/1.1";
+            item.setStatus(200);
+            item.userAgent = "swcd (unknown version) CFNetwork/808.2.16 Darwin/15.6.0";
+
+            list.add(item);
+
+            date = date.plusSeconds(29);
+        }
+
+        // clear all table records
+        util.executeQuery("TRUNCATE TABLE ip_activity_logs");
+        util.executeQuery("TRUNCATE TABLE ip_activity_counts");
+
+        ParserModel parser = new ParserModel();
+        parser.saveLogEntries(list);
+
+        ParserModel parallel = new ParserModel();
+        parallel.setQueryThreads(4);
+
+        // minute aligned range uses rollup table, the other one raw rows
+        for (String start : new String[]{"2017-01-01.00:00:00", "2017-01-01.00:00:30"}) {
+            LocalDateTime startDate = parser.prepareDateArgument(start);
+
+            Map<String, Integer> expected = parser.findAboveThresholdIPs(startDate, Duration.DAILY, 420);
+            Assert.assertFalse(expected.isEmpty());
+            Assert.assertEquals(expected, parallel.findAboveThresholdIPs(startDate, Duration.DAILY, 420));
+        }
+    }
+
+    @Test
+    public void testSplitDateRange_whenRangeIsSplit_subRangesCoverRangeAndKeepAlignment()
+    {
+        LocalDateTime startDate = LocalDateTime.parse("2017-01-01 00:00:00.000", LogEntry.formatter);
+
+        List<LocalDateTime> boundaries = ParserModel.splitDateRange(startDate, startDate.plusDays(1), 5, true);
+
+        Assert.assertEquals(6, boundaries.size());
+        Assert.assertEquals(startDate, boundaries.get(0));
+        Assert.assertEquals(startDate.plusDays(1), boundaries.get(5));
+        for (LocalDateTime boundary : boundaries) {
+            Assert.assertEquals(0, boundary.getSecond());
+        }
+
+        // never more sub-ranges than range units
+        boundaries = ParserModel.splitDateRange(startDate, startDate.plusMinutes(2), 8, true);
+        Assert.assertEquals(3, boundaries.size());
+
+        boundaries = ParserModel.splitDateRange(startDate, startDate.plusSeconds(1), 1, false);
+        Assert.assertEquals(2, boundaries.size());
+    }
+
+    @Test
+    public void testFindIPs_whenCalledMoreTimesThanPoolSize_connectionsAreReused() throws SQLException
+    {
+        LocalDateTime startDate = LocalDateTime.parse("2017-01-01 13:00:00.000", LogEntry.formatter);
+
+        ParserModel parser = new ParserModel(new ConnectionPool(Config.JDBC_URL, Config.DB_USERNAME, Config.DB_PASSWORD, 2));
+        for (int i = 0; i < 50; i++) {
+            parser.findAboveThresholdIPs(startDate, Duration.HOURLY, Integer.MAX_VALUE);
+        }
+
+        // would time out waiting for a free connection if any of them was not returned to pool
+        ((ConnectionPool) parser.getDataSource()).close();
     }
     
     @Test
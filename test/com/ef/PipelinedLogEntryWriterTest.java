@@ -0,0 +1,148 @@
+package com.ef;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PipelinedLogEntryWriterTest
+{
+
+    @Test
+    public void testClose_whenManyChunksAreQueued_allChunksAreWrittenInOrderAndSinkIsClosed() throws SQLException
+    {
+        List<LogEntry> written = new ArrayList<>();
+        boolean[] closed = new boolean[1];
+
+        LogEntrySink sink = new LogEntrySink()
+        {
+            @Override
+            public void handle(List<LogEntry> entries)
+            {
+                written.addAll(entries);
+            }
+
+            @Override
+            public void close()
+            {
+                closed[0] = true;
+            }
+
+            @Override
+            public void abort()
+            {
+                Assert.fail("Expected sink to be closed");
+            }
+        };
+
+        List<LogEntry> expected = new ArrayList<>();
+        try (PipelinedLogEntryWriter writer = new PipelinedLogEntryWriter(sink, 2)) {
+            for (int i = 0; i < 100; i++) {
+                LogEntry item = new LogEntry();
+                item.ip = "10.0.0." + i;
+                expected.add(item);
+
+                writer.handle(Collections.singletonList(item));
+            }
+        }
+
+        Assert.assertEquals(expected, written);
+        Assert.assertTrue(closed[0]);
+    }
+
+    @Test(expected = SQLException.class)
+    public void testClose_whenSinkFails_SQLExceptionIsThrown() throws SQLException
+    {
+        LogEntrySink sink = new LogEntrySink()
+        {
+            @Override
+            public void handle(List<LogEntry> entries)
+                throws SQLException
+            {
+                throw new SQLException("Unable to insert list of LogEntry items to database.");
+            }
+
+            @Override
+            public void close()
+            {
+            }
+
+            @Override
+            public void abort()
+            {
+            }
+        };
+
+        try (PipelinedLogEntryWriter writer = new PipelinedLogEntryWriter(sink, 1)) {
+            for (int i = 0; i < 100; i++) {
+                writer.handle(Collections.singletonList(new LogEntry()));
+            }
+        }
+    }
+
+    @Test
+    public void testAbort_whenChunksAreQueued_sinkIsAbortedInsteadOfClosed() throws Exception
+    {
+        List<LogEntry> written = new ArrayList<>();
+        boolean[] closed = new boolean[1];
+        boolean[] aborted = new boolean[1];
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        LogEntrySink sink = new LogEntrySink()
+        {
+            @Override
+            public void handle(List<LogEntry> entries)
+                throws SQLException
+            {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new SQLException(e);
+                }
+                written.addAll(entries);
+            }
+
+            @Override
+            public void close()
+            {
+                closed[0] = true;
+            }
+
+            @Override
+            public void abort()
+            {
+                aborted[0] = true;
+            }
+        };
+
+        PipelinedLogEntryWriter writer = new PipelinedLogEntryWriter(sink, 10);
+        for (int i = 0; i < 5; i++) {
+            writer.handle(Collections.singletonList(new LogEntry()));
+        }
+        started.await();
+
+        // queued chunks are dropped while the first one is being written, abort waits for it
+        Thread aborting = new Thread(() -> {
+            try {
+                writer.abort();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        aborting.start();
+        while (aborting.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        aborting.join();
+
+        Assert.assertEquals(1, written.size());
+        Assert.assertTrue(aborted[0]);
+        Assert.assertFalse(closed[0]);
+    }
+}
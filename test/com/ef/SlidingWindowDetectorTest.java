@@ -0,0 +1,122 @@
+package com.ef;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SlidingWindowDetectorTest
+{
+
+    private static TestUtils util;
+
+    @Test
+    public void testHandle_whenIpCrossesThreshold_reportsItOnceWithWindowStart()
+        throws SQLException
+    {
+        List<String> reported = new ArrayList<>();
+        List<LocalDateTime> windowStarts = new ArrayList<>();
+        SlidingWindowDetector detector = new SlidingWindowDetector(
+            Duration.HOURLY, 3, (long high, long low, int count, LocalDateTime windowStart) -> {
+                reported.add(IpAddress.toString(high, low) + "=" + count);
+                windowStarts.add(windowStart);
+            }
+        );
+
+        LocalDateTime date = LocalDateTime.parse("2017-01-01 13:00:00.000", LogEntry.formatter);
+        for (int i = 0; i < 6; i++) {
+            detector.handle(Collections.singletonList(createEntry(date.plusMinutes(i), "1.1.1.1")));
+        }
+        detector.handle(Collections.singletonList(createEntry(date, "2.2.2.2")));
+
+        Assert.assertEquals(Collections.singletonList("1.1.1.1=4"), reported);
+        Assert.assertEquals(LocalDateTime.parse("2017-01-01 12:04:00.000", LogEntry.formatter), windowStarts.get(0));
+        Assert.assertEquals(6, detector.getCount("1.1.1.1"));
+        Assert.assertEquals(1, detector.getCount("2.2.2.2"));
+    }
+
+    @Test
+    public void testHandle_whenWindowSlides_expiredMinutesAreSubtractedAndIpCanBeReportedAgain()
+        throws SQLException
+    {
+        List<String> reported = new ArrayList<>();
+        SlidingWindowDetector detector = new SlidingWindowDetector(
+            Duration.HOURLY, 2, (long high, long low, int count, LocalDateTime windowStart) -> {
+                reported.add(IpAddress.toString(high, low));
+            }
+        );
+
+        LocalDateTime date = LocalDateTime.parse("2017-01-01 13:00:30.000", LogEntry.formatter);
+        List<LogEntry> list = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            list.add(createEntry(date, "1.1.1.1"));
+        }
+        detector.handle(list);
+        Assert.assertEquals(1, reported.size());
+
+        // 13:59 is still within the hour starting at 13:00
+        detector.handle(Collections.singletonList(createEntry(date.plusMinutes(59), "2.2.2.2")));
+        Assert.assertEquals(3, detector.getCount("1.1.1.1"));
+
+        // 14:00 pushes 13:00 minute out of the window
+        detector.handle(Collections.singletonList(createEntry(date.plusMinutes(60), "2.2.2.2")));
+        Assert.assertEquals(0, detector.getCount("1.1.1.1"));
+        Assert.assertEquals(2, detector.getCount("2.2.2.2"));
+
+        // entries older than window are ignored
+        detector.handle(Collections.singletonList(createEntry(date, "2.2.2.2")));
+        Assert.assertEquals(2, detector.getCount("2.2.2.2"));
+        Assert.assertEquals(1, detector.getLateCount());
+
+        // long gap expires everything, 1.1.1.1 is reported again once it crosses threshold again
+        list = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            list.add(createEntry(date.plusDays(1), "1.1.1.1"));
+        }
+        detector.handle(list);
+        Assert.assertEquals(0, detector.getCount("2.2.2.2"));
+        Assert.assertEquals(3, detector.getCount("1.1.1.1"));
+        Assert.assertEquals(2, reported.size());
+    }
+
+    @Test
+    public void testHandle_whenDurationIsNotWholeMinutes_windowSlidesBySubMinuteBuckets()
+        throws SQLException
+    {
+        List<String> reported = new ArrayList<>();
+        SlidingWindowDetector detector = new SlidingWindowDetector(
+            Duration.parse("90s"), 2, (long high, long low, int count, LocalDateTime windowStart) -> {
+                reported.add(IpAddress.toString(high, low));
+            }
+        );
+
+        LocalDateTime date = LocalDateTime.parse("2017-01-01 13:00:00.000", LogEntry.formatter);
+        detector.handle(Collections.singletonList(createEntry(date, "1.1.1.1")));
+        detector.handle(Collections.singletonList(createEntry(date.plusSeconds(40), "1.1.1.1")));
+        Assert.assertEquals(2, detector.getCount("1.1.1.1"));
+
+        // window of 13:01:30 is [13:00:30, 13:02:00), the first request is out of it
+        detector.handle(Collections.singletonList(createEntry(date.plusSeconds(90), "1.1.1.1")));
+        Assert.assertEquals(2, detector.getCount("1.1.1.1"));
+        Assert.assertEquals(LocalDateTime.parse("2017-01-01 13:00:30.000", LogEntry.formatter), detector.getWindowStart());
+        Assert.assertTrue(reported.isEmpty());
+
+        detector.handle(Collections.singletonList(createEntry(date.plusSeconds(100), "1.1.1.1")));
+        Assert.assertEquals(Collections.singletonList("1.1.1.1"), reported);
+    }
+
+    private static LogEntry createEntry(LocalDateTime date, String ip)
+    {
+        LogEntry item = new LogEntry();
+        item.setDate(util.formatter.format(date));
+        item.ip = ip;
+        item.request = "GET / HTTP/1.1";
+        item.setStatus(200);
+        item.userAgent = "swcd (unknown version) CFNetwork/808.2.16 Darwin/15.6.0";
+
+        return item;
+    }
+}
@@ -0,0 +1,78 @@
+package com.ef;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StringInternerTest
+{
+
+    private static TestUtils util;
+
+    @Test
+    public void testIntern_whenSameValueRepeats_sameStringInstanceIsReturned()
+    {
+        StringInterner interner = new StringInterner(16);
+
+        String first = interner.intern("|\"GET / HTTP/1.1\"|", 2, 16);
+        String second = interner.intern("xx\"GET / HTTP/1.1\"", 3, 17);
+
+        Assert.assertEquals("GET / HTTP/1.1", first);
+        Assert.assertSame(first, second);
+    }
+
+    @Test
+    public void testIntern_whenManyDistinctValuesAreSeen_valuesAreStillCorrectAndCacheKeepsWorking()
+    {
+        StringInterner interner = new StringInterner(16);
+
+        for (int i = 0; i < 10_000; i++) {
+            String value = "unique agent " + i;
+            Assert.assertEquals(value, interner.intern(value, 0, value.length()));
+            Assert.assertEquals("agent", interner.intern("agent", 0, 5));
+        }
+
+        // value used again right away is still cached
+        String hot = interner.intern("agent", 0, 5);
+        Assert.assertSame(hot, interner.intern("agent", 0, 5));
+
+        // long values are not cached
+        String line = "|" + String.join("", Collections.nCopies(StringInterner.MAX_LENGTH + 1, "a"));
+        String first = interner.intern(line, 1, line.length());
+        Assert.assertFalse(first == interner.intern(line, 1, line.length()));
+    }
+
+    @Test
+    public void testIntern_whenBytesAreNotAscii_decodedValueIsReturned()
+    {
+        StringInterner interner = new StringInterner(16);
+
+        // chars of cached "\u00c3\u00a9" would match UTF-8 bytes of "\u00e9" if bytes were compared to chars
+        String decoded = "\u00c3\u00a9";
+        interner.intern(decoded, 0, decoded.length());
+
+        byte[] bytes = "\u00e9".getBytes(StandardCharsets.UTF_8);
+        ByteSequence sequence = new ByteSequence().reset(ByteBuffer.wrap(bytes), 0, bytes.length);
+
+        Assert.assertEquals("\u00e9", interner.intern(sequence, 0, sequence.length()));
+    }
+
+    @Test
+    public void testParse_whenUserAgentRepeats_itemsShareTheSameString()
+    {
+        File tmpFile = util.prepareTestFile(
+            "2017-01-01 00:00:11.763|192.168.234.82|\"GET / HTTP/1.1\"|200|\"swcd (unknown version) CFNetwork/808.2.16 Darwin/15.6.0\"\n"
+            + "2017-01-01 00:00:21.164|192.168.234.83|\"GET / HTTP/1.1\"|200|\"swcd (unknown version) CFNetwork/808.2.16 Darwin/15.6.0\""
+        );
+
+        List<LogEntry> list = new ParserModel().parse(tmpFile.getAbsolutePath());
+
+        Assert.assertSame(list.get(0).request, list.get(1).request);
+        Assert.assertSame(list.get(0).userAgent, list.get(1).userAgent);
+        Assert.assertEquals("swcd (unknown version) CFNetwork/808.2.16 Darwin/15.6.0", list.get(1).userAgent);
+    }
+}
@@ -0,0 +1,67 @@
+package com.ef;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ThresholdCounterTest
+{
+
+    private static TestUtils util;
+
+    @Test
+    public void testGetAboveThresholdIPs_whenEntriesAreOnBothSidesOfRange_onlyInRangeEntriesAreCounted()
+    {
+        String ipFirst = "1.1.1.1";
+        String ipSecond = "2.2.2.2";
+
+        List<LogEntry> list = new ArrayList<>();
+
+        LocalDateTime date = LocalDateTime.parse("2017-01-01 12:59:59.999", LogEntry.formatter);
+        for (int i = 0; i < 200; i++) {
+            list.add(createEntry(date, ipFirst));
+            if (i % 2 == 0) {
+                list.add(createEntry(date, ipSecond));
+            }
+
+            date = date.plusSeconds(20);
+        }
+
+        ParserModel parser = new ParserModel();
+        LocalDateTime startDate = parser.prepareDateArgument("2017-01-01.13:00:00");
+
+        ThresholdCounter counter = parser.newThresholdCounter(startDate, Duration.HOURLY, 100);
+        counter.handle(list.subList(0, 100));
+        counter.handle(list.subList(100, list.size()));
+
+        Map<String, Integer> result = counter.getAboveThresholdIPs();
+
+        // first item is just before range start, 180 items fit into the hour
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals(180, (int) result.get(ipFirst));
+
+        counter = parser.newThresholdCounter(startDate, Duration.DAILY, 50);
+        counter.handle(list);
+
+        result = counter.getAboveThresholdIPs();
+
+        Assert.assertEquals(2, result.size());
+        Assert.assertEquals(199, (int) result.get(ipFirst));
+        Assert.assertEquals(99, (int) result.get(ipSecond));
+    }
+
+    private static LogEntry createEntry(LocalDateTime date, String ip)
+    {
+        LogEntry item = new LogEntry();
+        item.setDate(util.formatter.format(date));
+        item.ip = ip;
+        item.request = "GET / HTTP/1.1";
+        item.setStatus(200);
+        item.userAgent = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/60.0.3112.113 Safari/537.36";
+
+        return item;
+    }
+}
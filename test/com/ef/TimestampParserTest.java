@@ -0,0 +1,76 @@
+package com.ef;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TimestampParserTest
+{
+
+    private static TestUtils util;
+
+    @Test
+    public void testParse_whenConsecutiveTimestampsShareMinute_eachIsParsedCorrectly()
+    {
+        String[] timestamps = new String[]{
+            "2017-01-01 00:00:11.763", "2017-01-01 00:00:59.999", "2017-01-01 00:01:00.000", "2016-02-29 23:59:01.001"
+        };
+
+        for (String timestamp : timestamps) {
+            LocalDateTime expected = LocalDateTime.parse(timestamp, LogEntry.formatter);
+
+            Assert.assertEquals(expected, TimestampParser.parse(timestamp));
+            Assert.assertEquals(timestamp, util.formatter.format(TimestampParser.parse(timestamp)));
+            Assert.assertEquals(TimestampParser.toEpochMillis(expected), TimestampParser.parseEpochMillis(timestamp));
+            Assert.assertEquals(expected, TimestampParser.toLocalDateTime(TimestampParser.parseEpochMillis(timestamp)));
+        }
+    }
+
+    @Test
+    public void testFormat_whenConsecutiveMillisShareMinute_resultIsTheSameAsOfFormatter()
+    {
+        // the last one is in year 10000, beyond the layout
+        long[] millis = new long[]{
+            TimestampParser.parseEpochMillis("2017-01-01 00:00:11.763"),
+            TimestampParser.parseEpochMillis("2017-01-01 00:00:59.999"),
+            TimestampParser.parseEpochMillis("2017-01-01 00:01:00.000"),
+            TimestampParser.parseEpochMillis("2016-02-29 23:59:01.001"),
+            -1, 0, 253_402_300_800_000L
+        };
+
+        for (long epochMillis : millis) {
+            Assert.assertEquals(
+                util.formatter.format(TimestampParser.toLocalDateTime(epochMillis)), TimestampParser.format(epochMillis)
+            );
+        }
+    }
+
+    @Test
+    public void testParse_whenTimestampIsInsideOfLine_onlyGivenRangeIsParsed()
+    {
+        String line = "2017-01-01 00:00:11.763|192.168.234.82";
+
+        Assert.assertEquals("2017-01-01 00:00:11.763", util.formatter.format(TimestampParser.parse(line, 0, 23)));
+    }
+
+    @Test
+    public void testParse_whenDayDoesNotExistInMonth_resultIsTheSameAsOfFormatter()
+    {
+        String timestamp = "2017-02-30 10:00:00.000";
+
+        Assert.assertEquals(LocalDateTime.parse(timestamp, LogEntry.formatter), TimestampParser.parse(timestamp));
+    }
+
+    @Test(expected = DateTimeParseException.class)
+    public void testParse_whenMillisAreMissing_DateTimeParseExceptionIsThrown()
+    {
+        TimestampParser.parse("2017-01-01 00:00:11");
+    }
+
+    @Test(expected = DateTimeParseException.class)
+    public void testParseEpochMillis_whenSecondsAreInvalid_DateTimeParseExceptionIsThrown()
+    {
+        TimestampParser.parseEpochMillis("2017-01-01 00:00:61.000");
+    }
+}